@@ -1,5 +1,6 @@
 package org.pharmgkb.pharmcat;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Files;
@@ -10,7 +11,6 @@
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
-import org.apache.commons.io.FileUtils;
 import org.pharmgkb.common.io.util.CliHelper;
 import org.pharmgkb.pharmcat.haplotype.DefinitionReader;
 import org.pharmgkb.pharmcat.haplotype.NamedAlleleMatcher;
@@ -18,6 +18,7 @@
 import org.pharmgkb.pharmcat.haplotype.model.Result;
 import org.pharmgkb.pharmcat.reporter.Reporter;
 import org.pharmgkb.pharmcat.util.DataManager;
+import org.pharmgkb.pharmcat.util.Reloadable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,12 +28,14 @@
  *
  * @author Ryan Whaley
  */
-public class PharmCAT {
+public class PharmCAT implements Closeable {
   private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-  private static final Pattern sf_inputNamePattern = Pattern.compile("(.*)\\.vcf");
+  private static final Pattern sf_inputNamePattern = Pattern.compile("(.*)\\.vcf(\\.b?gz)?");
 
-  private NamedAlleleMatcher m_namedAlleleMatcher;
-  private Reporter m_reporter;
+  private final Path m_definitionsDir;
+  private final Path m_guidelinesDir;
+  private Reloadable<NamedAlleleMatcher> m_namedAlleleMatcher;
+  private Reloadable<Reporter> m_reporter;
   private Path m_outputDir;
   private boolean m_keepMatcherOutput = false;
   private boolean m_writeJsonReport = false;
@@ -48,6 +51,7 @@ public static void main(String[] args) {
         .addOption("na", "alleles-dir", "directory of named allele definitions (JSON files)", false, "l")
         // controls
         .addOption("k", "keep-matcher-files", "flag to keep the intermediary matcher output files")
+        .addOption("s", "sorted-vcf", "flag to indicate the VCF file is coordinate-sorted, so reading can stop early")
         .addOption("j", "write-report-json", "flag to write a JSON file of the data used to populate the final report");
 
     try {
@@ -80,6 +84,9 @@ public static void main(String[] args) {
       if (cliHelper.hasOption("k")) {
         pharmcat.keepMatcherOutput();
       }
+      if (cliHelper.hasOption("s")) {
+        pharmcat.assumeSortedVcf();
+      }
 
       pharmcat
           .writeJson(cliHelper.hasOption("j"))
@@ -119,12 +126,14 @@ public PharmCAT(@Nonnull Path outputDir, @Nullable Path definitionsDir, @Nullabl
     }
     Preconditions.checkArgument(Files.isDirectory(guidelinesDir), "Not a directory: %s", guidelinesDir);
 
-    DefinitionReader definitionReader = new DefinitionReader();
-    definitionReader.read(definitionsDir);
+    m_definitionsDir = definitionsDir;
+    m_guidelinesDir = guidelinesDir;
 
-    m_namedAlleleMatcher = new NamedAlleleMatcher(definitionReader, true, true)
-        .printWarnings();
-    m_reporter = new Reporter(guidelinesDir);
+    m_namedAlleleMatcher = new Reloadable<>("allele definitions",
+        new NamedAlleleMatcher(readDefinitions(m_definitionsDir), true, true).printWarnings(),
+        current -> current.withDefinitions(readDefinitions(m_definitionsDir)));
+    m_reporter = new Reloadable<>("guideline annotations and gene phenotypes", new Reporter(m_guidelinesDir),
+        current -> new Reporter(m_guidelinesDir));
     setOutputDir(outputDir);
 
     sf_logger.info("Using alleles: {}", definitionsDir);
@@ -136,6 +145,35 @@ public PharmCAT(@Nonnull Path outputDir, @Nullable Path definitionsDir, @Nullabl
     System.out.println(">>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>><<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<");
   }
 
+  private static DefinitionReader readDefinitions(@Nonnull Path definitionsDir) throws IOException {
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(definitionsDir);
+    return definitionReader;
+  }
+
+
+  /**
+   * Reload allele definitions, guideline annotations and the packaged gene phenotypes and incidental alleles when they
+   * change, without having to restart.  Samples that are already being run finish with the data they started with.
+   * <p>
+   * The packaged data can only be watched if it is in a directory (i.e. not inside a jar).
+   */
+  public PharmCAT watchData() throws IOException {
+    m_namedAlleleMatcher.watch(m_definitionsDir);
+    m_reporter.watch(m_guidelinesDir, DataManager.DEFAULT_DEFINITION_DIR.getParent());
+    return this;
+  }
+
+  /**
+   * Stops watching for data changes (see {@link #watchData()}).
+   */
+  @Override
+  public void close() throws IOException {
+    m_namedAlleleMatcher.close();
+    m_reporter.close();
+  }
+
+
   /**
    * Executes the {@link NamedAlleleMatcher} then the {@link Reporter} on the given sample data
    * @param vcfFile the input sample VCF file
@@ -149,27 +187,24 @@ public void execute(@Nonnull Path vcfFile, @Nullable Path astrolabeFile, @Nullab
     sf_logger.info("Run time: " + new Date());
     String fileRoot = makeFileRoot(vcfFile, outputFile);
 
-    Path callFile = m_outputDir.resolve(fileRoot + ".call.json");
-    if (!m_keepMatcherOutput) {
-      callFile.toFile().deleteOnExit();
-    }
+    // stick with the same data for the whole run, even if it gets reloaded
+    NamedAlleleMatcher namedAlleleMatcher = m_namedAlleleMatcher.get();
+    Reporter reporter = m_reporter.get();
 
-    Result result = m_namedAlleleMatcher.call(vcfFile);
-    ResultSerializer resultSerializer = new ResultSerializer();
-    resultSerializer.toJson(result, callFile);
+    Result result = namedAlleleMatcher.call(vcfFile);
+    sf_logger.info("Using allele definitions version {}", result.getMetadata().getDataVersion());
+    sf_logger.info("Using guideline and phenotype data version {}", reporter.getDataVersion());
     if (m_keepMatcherOutput) {
+      ResultSerializer resultSerializer = new ResultSerializer();
+      resultSerializer.toJson(result, m_outputDir.resolve(fileRoot + ".call.json"));
       resultSerializer.toHtml(result, m_outputDir.resolve(fileRoot + ".matcher.html"));
     }
 
-    m_reporter.analyze(callFile, astrolabeFile);
+    reporter.analyze(result, astrolabeFile, namedAlleleMatcher.getDefinitionReader());
 
     Path reportPath = m_outputDir.resolve(fileRoot + ".report.html");
     Path jsonPath = m_writeJsonReport ? m_outputDir.resolve(fileRoot + ".report.json") : null;
-    m_reporter.printHtml(reportPath, fileRoot, jsonPath);
-
-    if (!m_keepMatcherOutput) {
-      FileUtils.deleteQuietly(callFile.toFile());
-    }
+    reporter.printHtml(reportPath, fileRoot, jsonPath);
 
     sf_logger.info("Completed");
   }
@@ -201,6 +236,15 @@ public PharmCAT keepMatcherOutput() {
     return this;
   }
 
+  /**
+   * Expect VCF input to be coordinate-sorted so the matcher can stop reading once all positions of interest have been
+   * passed.
+   */
+  public PharmCAT assumeSortedVcf() {
+    m_namedAlleleMatcher.get().assumeSortedVcf();
+    return this;
+  }
+
   /**
    * Determine whether to write reporter JSON output or not
    * @param doWrite true to create a <code>.report.json</code> file as output
@@ -215,7 +259,7 @@ public PharmCAT writeJson(boolean doWrite) {
    * @return the current Reporter instance
    */
   public Reporter getReporter() {
-    return m_reporter;
+    return m_reporter.get();
   }
 
   /**
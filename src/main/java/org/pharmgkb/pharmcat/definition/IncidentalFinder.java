@@ -1,25 +1,26 @@
 package org.pharmgkb.pharmcat.definition;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.List;
-import java.util.Map;
-import com.google.gson.Gson;
+import javax.annotation.Nonnull;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
 import org.pharmgkb.pharmcat.reporter.model.result.Haplotype;
+import org.pharmgkb.pharmcat.util.DefinitionBundle;
 
 
 /**
  * This class is to help detect "incidental finding" alleles. It reads in the current list of incidental alleles from
  * and included file and exposes a method to detect whether a particular allele in an incidental finding.
+ * <p>
+ * The file is only read once, and the alleles are shared by all instances made with the default constructor.  Code that
+ * needs to pick up changes to the file (e.g. the {@code Reporter}) can {@link #read() read} its own copy instead.
  *
  * @author Ryan Whaley
  */
 public class IncidentalFinder {
+  private static volatile SetMultimap<String, String> s_geneAlleleMap;
 
-  private static final String INCIDENTAL_FILE = "incidental.alleles.json";
-
-  private Map m_geneAlleleMap;
+  private final SetMultimap<String, String> m_geneAlleleMap;
 
   /**
    * public constructor
@@ -27,16 +28,45 @@ public class IncidentalFinder {
    * initializes incidental finding list from a file in the codebase
    */
   public IncidentalFinder() throws Exception {
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(INCIDENTAL_FILE)))) {
+    SetMultimap<String, String> geneAlleleMap = s_geneAlleleMap;
+    if (geneAlleleMap == null) {
+      synchronized (IncidentalFinder.class) {
+        geneAlleleMap = s_geneAlleleMap;
+        if (geneAlleleMap == null) {
+          geneAlleleMap = load();
+          s_geneAlleleMap = geneAlleleMap;
+        }
+      }
+    }
+    m_geneAlleleMap = geneAlleleMap;
+  }
 
-      Gson gson = new Gson();
-      m_geneAlleleMap = gson.fromJson(reader, Map.class);
+  private IncidentalFinder(@Nonnull SetMultimap<String, String> geneAlleleMap) {
+    m_geneAlleleMap = geneAlleleMap;
+  }
 
+  /**
+   * Makes a new {@link IncidentalFinder} with a fresh read of the incidental alleles file, instead of the copy shared
+   * by instances made with the default constructor.
+   */
+  public static @Nonnull IncidentalFinder read() throws IOException {
+    return new IncidentalFinder(readGeneAlleleMap());
+  }
+
+  private static SetMultimap<String, String> load() throws Exception {
+    try {
+      return readGeneAlleleMap();
     } catch (IOException e) {
       throw new Exception("Error reading phenotype definitions", e);
     }
   }
 
+  private static SetMultimap<String, String> readGeneAlleleMap() throws IOException {
+    ImmutableSetMultimap.Builder<String, String> builder = ImmutableSetMultimap.builder();
+    DefinitionBundle.readPackagedIncidentalAlleles().forEach(builder::putAll);
+    return builder.build();
+  }
+
   /**
    * Checks whether the given haplotype is an incidental finding
    *
@@ -48,9 +78,7 @@ public boolean isFinding(Haplotype haplotype) {
       return false;
     }
 
-    List alleles = (List)m_geneAlleleMap.get(haplotype.getGene());
-
-    return alleles != null && alleles.contains(haplotype.getName());
+    return m_geneAlleleMap.containsEntry(haplotype.getGene(), haplotype.getName());
   }
 
 }
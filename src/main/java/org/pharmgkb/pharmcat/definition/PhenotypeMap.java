@@ -1,69 +1,129 @@
 package org.pharmgkb.pharmcat.definition;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import com.google.gson.Gson;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.pharmgkb.pharmcat.UnexpectedStateException;
 import org.pharmgkb.pharmcat.definition.model.GenePhenotype;
 import org.pharmgkb.pharmcat.haplotype.model.GeneCall;
 import org.pharmgkb.pharmcat.haplotype.model.HaplotypeMatch;
+import org.pharmgkb.pharmcat.util.DefinitionBundle;
 
 
 /**
- * This class loads and manages the data from the gene phenotypes file
+ * This class loads and manages the data from the gene phenotypes file.
+ * <p>
+ * The file is only read once and the resulting {@link GenePhenotype} objects are shared (and cannot be modified).  Code
+ * that needs to pick up changes to the file (e.g. the {@code Reporter}) can {@link #readGenePhenotypes() read} its own
+ * copy instead.
+ * Haplotype functions that only come from a sample's calls are added to copies of the affected {@link GenePhenotype}
+ * objects, so many reports can be built at once.
  *
  * @author Ryan Whaley
  */
 public class PhenotypeMap {
+  private static volatile Map<String, GenePhenotype> s_baseGenes;
 
-  private List<GenePhenotype> m_genes;
+  private final Map<String, GenePhenotype> m_genes;
 
   /**
    * public constructor, loads the data from a local file
    */
   public PhenotypeMap(@Nullable List<GeneCall> calls) throws Exception {
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("gene.phenotypes.json")))) {
+    this(getBaseGenes(), calls);
+  }
 
-      Gson gson = new Gson();
-      m_genes = Arrays.asList(gson.fromJson(reader, GenePhenotype[].class));
+  /**
+   * Constructor.
+   *
+   * @param baseGenes the gene phenotypes, as read by {@link #readGenePhenotypes()}
+   * @param calls the sample's calls, whose haplotype functions are added to the gene phenotypes if they are missing
+   */
+  public PhenotypeMap(@Nonnull Map<String, GenePhenotype> baseGenes, @Nullable List<GeneCall> calls) {
+    Preconditions.checkNotNull(baseGenes);
+
+    if (calls == null) {
+      m_genes = baseGenes;
+      return;
+    }
 
-      if (calls != null) {
-        calls.forEach(c -> {
-          String gene = c.getGene();
-          Set<HaplotypeMatch> haplotypematches = c.getHaplotypes();
-          Optional<GenePhenotype> lookupResult = lookup(gene);
+    Map<String, GenePhenotype> overlay = new HashMap<>();
+    calls.forEach(c -> {
+      String gene = c.getGene();
+      GenePhenotype genePhenotype = overlay.getOrDefault(gene, baseGenes.get(gene));
 
-          if (lookupResult.isPresent()) {
-            GenePhenotype genePhenotype = lookupResult.get();
-            for (HaplotypeMatch haplotypeMatch : haplotypematches) {
-              String hap = haplotypeMatch.getName();
-              String newFunction = haplotypeMatch.getFunction();
-              String existingFunction = genePhenotype.lookupHaplotype(hap);
+      if (genePhenotype != null) {
+        for (HaplotypeMatch haplotypeMatch : c.getHaplotypes()) {
+          String hap = haplotypeMatch.getName();
+          String newFunction = haplotypeMatch.getFunction();
+          String existingFunction = genePhenotype.lookupHaplotype(hap);
 
-              if (existingFunction != null && !existingFunction.equalsIgnoreCase(newFunction)) {
-                throw new UnexpectedStateException("Function mismatch for " + gene + " " + hap + " > " + existingFunction + " != " + newFunction);
-              }
-              if (existingFunction == null) {
-                genePhenotype.addHaplotypeFunction(hap, newFunction);
-              }
+          if (existingFunction != null && !existingFunction.equalsIgnoreCase(newFunction)) {
+            throw new UnexpectedStateException("Function mismatch for " + gene + " " + hap + " > " + existingFunction + " != " + newFunction);
+          }
+          if (existingFunction == null && genePhenotype.getHaplotypes() != null) {
+            if (!overlay.containsKey(gene)) {
+              genePhenotype = new GenePhenotype(genePhenotype);
+              overlay.put(gene, genePhenotype);
             }
+            genePhenotype.addHaplotypeFunction(hap, newFunction);
+          }
+        }
+      }
+    });
+
+    if (overlay.isEmpty()) {
+      m_genes = baseGenes;
+    } else {
+      Map<String, GenePhenotype> genes = new LinkedHashMap<>(baseGenes);
+      genes.putAll(overlay);
+      m_genes = genes;
+    }
+  }
+
+  /**
+   * Gets the gene phenotypes from the packaged file, reading it the first time it is needed.
+   */
+  private static Map<String, GenePhenotype> getBaseGenes() throws Exception {
+    Map<String, GenePhenotype> genes = s_baseGenes;
+    if (genes == null) {
+      synchronized (PhenotypeMap.class) {
+        genes = s_baseGenes;
+        if (genes == null) {
+          try {
+            genes = readGenePhenotypes();
+            s_baseGenes = genes;
+          } catch (IOException e) {
+            throw new Exception("Error reading phenotype definitions", e);
           }
-        });
+        }
       }
+    }
+    return genes;
+  }
 
-    } catch (IOException e) {
-      throw new Exception("Error reading phenotype definitions", e);
+  /**
+   * Reads the gene phenotypes from the packaged file, keyed by gene symbol.
+   * The {@link GenePhenotype} objects are frozen so that they can be shared.
+   */
+  public static @Nonnull Map<String, GenePhenotype> readGenePhenotypes() throws IOException {
+    ImmutableMap.Builder<String, GenePhenotype> builder = ImmutableMap.builder();
+    for (GenePhenotype genePhenotype : DefinitionBundle.readPackagedGenePhenotypes()) {
+      builder.put(genePhenotype.getGene(), genePhenotype.freeze());
     }
+    return builder.build();
   }
 
   protected List getGenes() {
-    return m_genes;
+    return ImmutableList.copyOf(m_genes.values());
   }
 
   /**
@@ -71,6 +131,6 @@ protected List getGenes() {
    * @param gene an HGNC gene symbol
    */
   public Optional<GenePhenotype> lookup(String gene) {
-    return m_genes.stream().filter(p -> gene.equals(p.getGene())).findFirst();
+    return Optional.ofNullable(m_genes.get(gene));
   }
 }
@@ -1,10 +1,13 @@
 package org.pharmgkb.pharmcat.definition.model;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 
@@ -57,11 +60,13 @@ public class DefinitionFile {
   @Expose
   @SerializedName("variantAlleles")
   private List<Set<String>> m_variantAlleles;
-  private Map<VariantLocus, Set<String>> m_variantAllelesMap;
+  private volatile Map<VariantLocus, Set<String>> m_variantAllelesMap;
   @Expose
   @SerializedName("namedAlleles")
   private List<NamedAllele> m_namedAlleles;
   private SortedMap<String, VariantLocus> m_rsidMap = new TreeMap<>();
+  // computed by freeze()
+  private String m_contentHash;
 
 
   /**
@@ -233,14 +238,21 @@ public List<Set<String>> getVariantAlleles() {
     return m_variantAlleles;
   }
 
+  public void setVariantAlleles(List<Set<String>> variantAlleles) {
+    m_variantAlleles = variantAlleles;
+    m_variantAllelesMap = null;
+  }
+
   public Set<String> getVariantAlleles(VariantLocus vl) {
-    if (m_variantAllelesMap == null) {
-      m_variantAllelesMap = new HashMap<>();
+    Map<VariantLocus, Set<String>> variantAllelesMap = m_variantAllelesMap;
+    if (variantAllelesMap == null) {
+      variantAllelesMap = new HashMap<>();
       for (int x = 0; x < m_variants.length; x += 1) {
-        m_variantAllelesMap.put(m_variants[x], m_variantAlleles.get(x));
+        variantAllelesMap.put(m_variants[x], m_variantAlleles.get(x));
       }
+      m_variantAllelesMap = variantAllelesMap;
     }
-    return m_variantAllelesMap.get(vl);
+    return variantAllelesMap.get(vl);
   }
 
   public void generateVariantAlleles() {
@@ -254,6 +266,94 @@ public void generateVariantAlleles() {
               .collect(Collectors.toSet())
       );
     }
+    m_variantAllelesMap = null;
+  }
+
+
+  /**
+   * Prevents further changes to this definition's {@link NamedAllele}s and variant alleles, and precomputes lookups, so
+   * that it can be safely shared between threads.
+   * {@link NamedAllele}s must already be initialized.
+   */
+  public void freeze() {
+
+    if (m_variantAlleles == null) {
+      generateVariantAlleles();
+    }
+    m_variantAlleles = Collections.unmodifiableList(m_variantAlleles.stream()
+        .map(Collections::unmodifiableSet)
+        .collect(Collectors.toList()));
+    Map<VariantLocus, Set<String>> variantAllelesMap = new HashMap<>();
+    for (int x = 0; x < m_variants.length; x += 1) {
+      variantAllelesMap.put(m_variants[x], m_variantAlleles.get(x));
+    }
+    m_variantAllelesMap = Collections.unmodifiableMap(variantAllelesMap);
+
+    m_namedAlleles.forEach(NamedAllele::freeze);
+    m_namedAlleles = Collections.unmodifiableList(m_namedAlleles);
+    m_contentHash = calculateContentHash();
+  }
+
+  /**
+   * Gets a hash of everything in this definition that affects calling and reporting: the metadata, the variants, the
+   * variant alleles and each named allele's id, name, function and alleles.
+   * Two definitions with the same content always have the same hash, however they were read.
+   * <p>
+   * This is only available once this definition has been {@link #freeze() frozen}.
+   */
+  public @Nonnull String getContentHash() {
+    Preconditions.checkState(m_contentHash != null, "Allele definition for %s has not been frozen", m_geneSymbol);
+    return m_contentHash;
+  }
+
+  private String calculateContentHash() {
+
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    putString(hasher, m_formatVersion);
+    hasher.putLong(m_modificationDate == null ? -1 : m_modificationDate.getTime());
+    putString(hasher, m_geneSymbol);
+    putString(hasher, m_orientation);
+    putString(hasher, m_chromosome);
+    putString(hasher, m_genomeBuild);
+    putString(hasher, m_refSeqChromosome);
+    putString(hasher, m_refSeqGene);
+    putString(hasher, m_refSeqProtein);
+
+    hasher.putInt(m_variants.length);
+    for (int x = 0; x < m_variants.length; x += 1) {
+      VariantLocus vl = m_variants[x];
+      putString(hasher, vl.getChromosome());
+      hasher.putInt(vl.getPosition());
+      putString(hasher, vl.getRsid());
+      putString(hasher, vl.getChromosomeHgvsName());
+      putString(hasher, vl.getGeneHgvsName());
+      putString(hasher, vl.getType() == null ? null : vl.getType().name());
+      putString(hasher, vl.getReferenceRepeat());
+      Set<String> alleles = new TreeSet<>(m_variantAlleles.get(x));
+      hasher.putInt(alleles.size());
+      alleles.forEach(a -> putString(hasher, a));
+    }
+
+    hasher.putInt(m_namedAlleles.size());
+    for (NamedAllele namedAllele : m_namedAlleles) {
+      putString(hasher, namedAllele.getId());
+      putString(hasher, namedAllele.getName());
+      putString(hasher, namedAllele.getFunction());
+      hasher.putInt(namedAllele.getAlleles().length);
+      for (String allele : namedAllele.getAlleles()) {
+        putString(hasher, allele);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void putString(Hasher hasher, @Nullable String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(value.length())
+          .putString(value, StandardCharsets.UTF_8);
+    }
   }
 
 
@@ -1,9 +1,12 @@
 package org.pharmgkb.pharmcat.definition.model;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
@@ -27,6 +30,37 @@ public class GenePhenotype {
   @Expose
   private List<DiplotypePhenotype> m_diplotypes;
 
+
+  public GenePhenotype() {
+  }
+
+  /**
+   * Copy constructor.  The copy gets its own haplotype map (so functions can be added to it without affecting the
+   * original) but shares the diplotypes of the original.
+   */
+  public GenePhenotype(@Nonnull GenePhenotype other) {
+    m_gene = other.getGene();
+    if (other.getHaplotypes() != null) {
+      m_haplotypes = new HashMap<>(other.getHaplotypes());
+    }
+    m_diplotypes = other.getDiplotypes();
+  }
+
+  /**
+   * Makes this object unmodifiable, so that it can be safely shared.
+   *
+   * @return this object
+   */
+  public GenePhenotype freeze() {
+    if (m_haplotypes != null) {
+      m_haplotypes = Collections.unmodifiableMap(m_haplotypes);
+    }
+    if (m_diplotypes != null) {
+      m_diplotypes = Collections.unmodifiableList(m_diplotypes);
+    }
+    return this;
+  }
+
   /**
    * The HGNC gene symbol
    */
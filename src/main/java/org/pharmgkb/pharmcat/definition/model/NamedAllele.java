@@ -2,13 +2,11 @@
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
@@ -21,6 +19,9 @@
 
 /**
  * A named allele (aka Haplotype, Star Allele, etc.).
+ * <p>
+ * Once {@link #freeze() frozen}, a {@link NamedAllele} can no longer be modified and can be safely shared between
+ * threads.
  *
  * @author Ryan Whaley
  */
@@ -46,7 +47,9 @@ public class NamedAllele implements Comparable<NamedAllele> {
   // generated by initialize()
   private SortedMap<VariantLocus, String> m_alleleMap;
   private int m_score;
-  private Pattern m_permutations;
+  // compiled on demand, the matcher does not need it
+  private volatile Pattern m_permutations;
+  private boolean m_frozen;
 
 
   /**
@@ -81,15 +84,19 @@ public void initialize(@Nonnull VariantLocus[] refVariants) {
     Preconditions.checkNotNull(refVariants);
     Preconditions.checkNotNull(m_alleles);
     Preconditions.checkState(refVariants.length == m_alleles.length);
+    checkNotFrozen();
 
-    m_alleleMap = new TreeMap<>();
+    SortedMap<VariantLocus, String> alleleMap = new TreeMap<>();
+    int score = 0;
     for (int x = 0; x < refVariants.length; x += 1) {
-      m_alleleMap.put(refVariants[x], m_alleles[x]);
+      alleleMap.put(refVariants[x], m_alleles[x]);
       if (m_alleles[x] != null) {
-        m_score++;
+        score++;
       }
     }
-    calculatePermutations(refVariants);
+    m_alleleMap = Collections.unmodifiableSortedMap(alleleMap);
+    m_score = score;
+    m_permutations = null;
   }
 
   /**
@@ -105,6 +112,30 @@ public void initialize(@Nonnull VariantLocus[] refVariants, int score) {
   }
 
 
+  /**
+   * Prevents any further changes to this {@link NamedAllele}.
+   * This must be called after {@link #initialize}.
+   */
+  public NamedAllele freeze() {
+
+    Preconditions.checkState(m_alleleMap != null, "This NamedAllele has not been initialized");
+    if (m_popFreqMap != null) {
+      m_popFreqMap = Collections.unmodifiableMap(m_popFreqMap);
+    }
+    getMissingPositions();
+    m_frozen = true;
+    return this;
+  }
+
+  public boolean isFrozen() {
+    return m_frozen;
+  }
+
+  private void checkNotFrozen() {
+    Preconditions.checkState(!m_frozen, "%s is frozen", m_name);
+  }
+
+
   /**
    * The name of this named allele (e.g. *1, Foo123Bar)
    */
@@ -127,6 +158,7 @@ public String getFunction() {
   }
 
   public void setFunction(String function) {
+    checkNotFrozen();
     m_function = function;
   }
 
@@ -134,7 +166,8 @@ public void setFunction(String function) {
   /**
    * The array of alleles that define this allele.
    *
-   * <em>Note:</em> use this in conjunction with {@link DefinitionFile#getVariants()} to get the name of the variant
+   * <em>Note:</em> use this in conjunction with {@link DefinitionFile#getVariants()} to get the name of the variant.
+   * The returned array must not be modified.
    */
   public String[] getAlleles() {
     return m_alleles;
@@ -176,6 +209,7 @@ public Map<String, String> getPopFreqMap() {
   }
 
   public void setPopFreqMap(Map<String, String> popFreqMap) {
+    checkNotFrozen();
     m_popFreqMap = popFreqMap;
   }
 
@@ -221,15 +255,21 @@ public int hashCode() {
   //-- permutation code --//
 
   public Pattern getPermutations() {
-    return m_permutations;
+    Preconditions.checkState(m_alleleMap != null, "This NamedAllele has not been finalized()");
+    Pattern permutations = m_permutations;
+    if (permutations == null) {
+      permutations = calculatePermutations();
+      m_permutations = permutations;
+    }
+    return permutations;
   }
 
 
-  private void calculatePermutations(VariantLocus[] refVariants) {
+  private Pattern calculatePermutations() {
 
-    List<VariantLocus> sortedRefVariants = Arrays.stream(refVariants).sorted().collect(Collectors.toList());
     StringBuilder builder = new StringBuilder();
-    for (VariantLocus variant : sortedRefVariants) {
+    // allele map is sorted
+    for (VariantLocus variant : m_alleleMap.keySet()) {
       builder.append(variant.getVcfPosition())
           .append(":");
       String allele = m_alleleMap.get(variant);
@@ -247,6 +287,6 @@ private void calculatePermutations(VariantLocus[] refVariants) {
       }
       builder.append(";");
     }
-    m_permutations = Pattern.compile(builder.toString());
+    return Pattern.compile(builder.toString());
   }
 }
@@ -0,0 +1,266 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.definition.model.VariantType;
+
+
+/**
+ * This matches {@link NamedAllele}s against a sample's sequences using bitmasks.
+ * <p>
+ * A sample only has one or two alleles at each position, so each position gets 2 bits: one per sample allele.  A
+ * sequence (i.e. a single strand) sets exactly one of the two bits for every position.  A {@link NamedAllele} sets the
+ * bits for every sample allele it accepts (taking IUPAC codes into account), or both bits if it doesn't define an
+ * allele for the position.  A {@link NamedAllele} matches a sequence if the sequence does not have any bits that are
+ * not in the {@link NamedAllele}'s mask.
+ * <p>
+ * This is equivalent to matching a sequence against {@link NamedAllele#getPermutations()}, without any regex.
+ *
+ * @author Mark Woon
+ */
+public class BitsetMatcher {
+  private static final int sf_bitsPerPosition = 2;
+  // sorted by VCF position
+  private final VariantLocus[] m_positions;
+  private final int[] m_vcfPositions;
+  // one per position: distinct sample alleles
+  private final String[][] m_sampleAlleles;
+  private final int[] m_samplePositions;
+  private final boolean[] m_phased;
+  private final int m_numWords;
+  // one bit per position: set if the sample is heterozygous
+  private final long[] m_heterozygousMask;
+
+
+  public BitsetMatcher(@Nonnull MatchData data) {
+    Preconditions.checkNotNull(data);
+
+    m_positions = Arrays.stream(data.getPositions())
+        .sorted(Comparator.comparingInt(VariantLocus::getVcfPosition))
+        .toArray(VariantLocus[]::new);
+    m_vcfPositions = new int[m_positions.length];
+    m_sampleAlleles = new String[m_positions.length][];
+    m_samplePositions = new int[m_positions.length];
+    m_phased = new boolean[m_positions.length];
+    m_heterozygousMask = new long[(m_positions.length + 63) / 64];
+    for (int x = 0; x < m_positions.length; x += 1) {
+      m_vcfPositions[x] = m_positions[x].getVcfPosition();
+      SampleAllele sampleAllele = data.getSampleAllele(m_vcfPositions[x]);
+      m_samplePositions[x] = sampleAllele.getPosition();
+      m_phased[x] = sampleAllele.isPhased();
+      String a1 = sampleAllele.getAllele1();
+      // permutations use "null" if there is no second allele
+      String a2 = String.valueOf(sampleAllele.getAllele2());
+      if (a1.equals(a2)) {
+        m_sampleAlleles[x] = new String[] { a1 };
+      } else {
+        m_sampleAlleles[x] = new String[] { a1, a2 };
+        setBit(m_heterozygousMask, x);
+      }
+    }
+    m_numWords = (m_positions.length * sf_bitsPerPosition + 63) / 64;
+  }
+
+
+  /**
+   * Gets the number of positions the sample has alleles for.
+   */
+  public int getNumPositions() {
+    return m_positions.length;
+  }
+
+  /**
+   * Gets the sample's distinct alleles at the given position (1 if homozygous, 2 if heterozygous).
+   *
+   * @param idx the index of the position, in VCF position order
+   */
+  public @Nonnull String[] getSampleAlleles(int idx) {
+    return m_sampleAlleles[idx];
+  }
+
+  /**
+   * Gets the sample's (VCF) position for the given position.
+   *
+   * @param idx the index of the position, in VCF position order
+   */
+  public int getSamplePosition(int idx) {
+    return m_samplePositions[idx];
+  }
+
+  /**
+   * Checks if the sample's alleles at the given position are phased.
+   *
+   * @param idx the index of the position, in VCF position order
+   */
+  public boolean isPhased(int idx) {
+    return m_phased[idx];
+  }
+
+
+  /**
+   * Gets the positions at which the sample is heterozygous, one bit per position (in VCF position order).
+   */
+  public @Nonnull long[] getHeterozygousMask() {
+    return m_heterozygousMask;
+  }
+
+
+  /**
+   * Builds the mask of sample alleles accepted by the given {@link NamedAllele}.
+   */
+  public @Nonnull long[] buildMask(@Nonnull NamedAllele haplotype) {
+
+    long[] mask = new long[m_numWords];
+    for (int x = 0; x < m_positions.length; x += 1) {
+      String allele = haplotype.getAllele(m_positions[x]);
+      for (int y = 0; y < m_sampleAlleles[x].length; y += 1) {
+        if (allele == null || accepts(m_positions[x], allele, m_sampleAlleles[x][y])) {
+          setBit(mask, x * sf_bitsPerPosition + y);
+        }
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Checks if a {@link NamedAllele} matches a strand.
+   *
+   * @param strand bit x is set if the strand uses the second sample allele at position x
+   */
+  public boolean matchesStrand(@Nonnull NamedAllele haplotype, @Nonnull long[] strand) {
+
+    for (int x = 0; x < m_positions.length; x += 1) {
+      String allele = haplotype.getAllele(m_positions[x]);
+      if (allele != null) {
+        int alleleIdx = (int)(strand[x >>> 6] >>> (x & 63)) & 1;
+        if (!accepts(m_positions[x], allele, m_sampleAlleles[x][alleleIdx])) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks if an allele from a {@link NamedAllele} definition accepts a sample allele.
+   */
+  private static boolean accepts(@Nonnull VariantLocus variant, @Nonnull String allele, @Nonnull String sampleAllele) {
+
+    if (variant.getType() == VariantType.SNP && allele.length() == 1) {
+      return Iupac.lookup(allele).matches(sampleAllele);
+    }
+    return allele.equals(sampleAllele);
+  }
+
+
+  /**
+   * Encodes a sequence (e.g. {@code "123:A;456:G;"}, as generated by {@link CombinationUtil}).
+   *
+   * @return the encoded sequence, or null if the sequence contains an unknown position or allele
+   */
+  public @Nullable long[] encode(@Nonnull String sequence) {
+
+    long[] bits = new long[m_numWords];
+    int numPositions = 0;
+    int start = 0;
+    while (start < sequence.length()) {
+      int colon = sequence.indexOf(':', start);
+      int semicolon = sequence.indexOf(';', colon);
+      if (colon == -1 || semicolon == -1) {
+        return null;
+      }
+      int vcfPosition = parseInt(sequence, start, colon);
+      int idx = Arrays.binarySearch(m_vcfPositions, vcfPosition);
+      if (idx < 0) {
+        return null;
+      }
+      int alleleIdx = -1;
+      String[] alleles = m_sampleAlleles[idx];
+      for (int y = 0; y < alleles.length; y += 1) {
+        if (alleles[y].length() == semicolon - colon - 1 &&
+            sequence.regionMatches(colon + 1, alleles[y], 0, alleles[y].length())) {
+          alleleIdx = y;
+          break;
+        }
+      }
+      if (alleleIdx == -1) {
+        return null;
+      }
+      setBit(bits, idx * sf_bitsPerPosition + alleleIdx);
+      numPositions += 1;
+      start = semicolon + 1;
+    }
+    if (numPositions != m_positions.length) {
+      return null;
+    }
+    return bits;
+  }
+
+  /**
+   * Decodes a strand encoded as one bit per position (set if the second sample allele is used at that position) into
+   * a sequence (e.g. {@code "123:A;456:G;"}).
+   */
+  public @Nonnull String decode(@Nonnull long[] alleles) {
+
+    StringBuilder builder = new StringBuilder();
+    for (int x = 0; x < m_positions.length; x += 1) {
+      int alleleIdx = (int)(alleles[x >>> 6] >>> (x & 63)) & 1;
+      builder.append(m_samplePositions[x])
+          .append(":")
+          .append(m_sampleAlleles[x][alleleIdx])
+          .append(";");
+    }
+    return builder.toString();
+  }
+
+  private static int parseInt(String string, int start, int end) {
+    int value = 0;
+    for (int x = start; x < end; x += 1) {
+      int digit = string.charAt(x) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+
+  /**
+   * Checks if an encoded sequence matches a {@link NamedAllele}'s mask.
+   */
+  public static boolean matches(@Nonnull long[] mask, @Nullable long[] sequence) {
+
+    if (sequence == null) {
+      return false;
+    }
+    for (int x = 0; x < mask.length; x += 1) {
+      if ((sequence[x] & ~mask[x]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Gets the sample alleles a mask accepts at the given position.
+   *
+   * @param idx the index of the position, in VCF position order
+   * @return bit 0 is set if the first sample allele is accepted, bit 1 is set if the second sample allele is accepted
+   */
+  public static int getAcceptedAlleles(@Nonnull long[] mask, int idx) {
+    int bit = idx * sf_bitsPerPosition;
+    return (int)(mask[bit >>> 6] >>> (bit & 63)) & 3;
+  }
+
+
+  private static void setBit(long[] bits, int idx) {
+    bits[idx >>> 6] |= 1L << (idx & 63);
+  }
+}
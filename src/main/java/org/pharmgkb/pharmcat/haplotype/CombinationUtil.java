@@ -5,6 +5,7 @@
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import javax.annotation.Nonnull;
 import com.google.common.base.Preconditions;
@@ -20,9 +21,25 @@ public class CombinationUtil {
    * Builds permutations for given alleles based on phasing.
    */
   public static Set<String> generatePermutations(@Nonnull List<SampleAllele> alleles) {
+    return generatePermutations(alleles, Long.MAX_VALUE);
+  }
+
+  /**
+   * Builds permutations for given alleles based on phasing.
+   *
+   * @param maxPermutations the maximum number of permutations to generate
+   * @throws ComplexityLimitException if there would be more than {@code maxPermutations} permutations
+   */
+  public static Set<String> generatePermutations(@Nonnull List<SampleAllele> alleles, long maxPermutations) {
     Preconditions.checkNotNull(alleles);
     Preconditions.checkArgument(alleles.size() > 0, "No alleles to generate permutations for");
 
+    long numPermutations = countPermutations(alleles);
+    if (numPermutations > maxPermutations) {
+      throw new ComplexityLimitException("Sample has " + (numPermutations == Long.MAX_VALUE ? "too many" :
+          numPermutations) + " permutations (limit is " + maxPermutations + ")");
+    }
+
     Set<String> rez = generatePermutations(alleles, 0, true, "");
     if (alleles.get(0).isPhased()) {
       rez.addAll(generatePermutations(alleles, 0, false, ""));
@@ -34,6 +51,27 @@ public static Set<String> generatePermutations(@Nonnull List<SampleAllele> allel
   }
 
 
+  /**
+   * Counts the (maximum) number of permutations {@link #generatePermutations(List)} would build, without building them.
+   *
+   * @return the number of permutations, or {@link Long#MAX_VALUE} if there are too many to count
+   */
+  public static long countPermutations(@Nonnull List<SampleAllele> alleles) {
+
+    int numBranches = 0;
+    for (SampleAllele allele : alleles) {
+      if (!allele.isPhased() && !Objects.equals(allele.getAllele1(), allele.getAllele2())) {
+        numBranches += 1;
+      }
+    }
+    if (!alleles.isEmpty() && alleles.get(0).isPhased()) {
+      // both strands
+      numBranches += 1;
+    }
+    return numBranches >= 63 ? Long.MAX_VALUE : 1L << numBranches;
+  }
+
+
   /**
    * Builds permutations for given variants based on phasing.
    */
@@ -0,0 +1,13 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+/**
+ * Exception to throw when calling a gene exceeds a limit set in {@link ComputeBudget}.
+ *
+ * @author Mark Woon
+ */
+public class ComplexityLimitException extends RuntimeException {
+
+  public ComplexityLimitException(String msg) {
+    super(msg);
+  }
+}
@@ -0,0 +1,62 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.concurrent.TimeUnit;
+import com.google.common.base.Preconditions;
+
+
+/**
+ * Limits on how much work may be spent calling diplotypes for a single gene.
+ * <p>
+ * A sample with many unphased heterozygous positions can have an enormous number of possible strands.  When any of
+ * these limits is hit, a {@link ComplexityLimitException} is thrown and the gene is not called.
+ * <p>
+ * By default, nothing is limited.
+ *
+ * @author Mark Woon
+ */
+public class ComputeBudget {
+  private long m_maxPermutations = Long.MAX_VALUE;
+  private long m_maxCandidatePairs = Long.MAX_VALUE;
+  private long m_maxNanos = Long.MAX_VALUE;
+
+
+  /**
+   * Sets the maximum number of sample permutations (i.e. possible strands) to consider.
+   */
+  public ComputeBudget maxPermutations(long maxPermutations) {
+    Preconditions.checkArgument(maxPermutations > 0, "maxPermutations must be greater than 0");
+    m_maxPermutations = maxPermutations;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of candidate haplotype pairs to consider.
+   */
+  public ComputeBudget maxCandidatePairs(long maxCandidatePairs) {
+    Preconditions.checkArgument(maxCandidatePairs > 0, "maxCandidatePairs must be greater than 0");
+    m_maxCandidatePairs = maxCandidatePairs;
+    return this;
+  }
+
+  /**
+   * Sets the maximum amount of (wall-clock) time to spend on a single gene.
+   */
+  public ComputeBudget maxTime(long time, TimeUnit unit) {
+    Preconditions.checkArgument(time > 0, "time must be greater than 0");
+    m_maxNanos = unit.toNanos(time);
+    return this;
+  }
+
+
+  public long getMaxPermutations() {
+    return m_maxPermutations;
+  }
+
+  public long getMaxCandidatePairs() {
+    return m_maxCandidatePairs;
+  }
+
+  public long getMaxNanos() {
+    return m_maxNanos;
+  }
+}
@@ -1,8 +1,12 @@
 package org.pharmgkb.pharmcat.haplotype;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,24 +16,32 @@
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.pharmgkb.pharmcat.definition.model.DefinitionExemption;
 import org.pharmgkb.pharmcat.definition.model.DefinitionFile;
 import org.pharmgkb.pharmcat.definition.model.NamedAllele;
 import org.pharmgkb.pharmcat.definition.model.VariantLocus;
 import org.pharmgkb.pharmcat.util.DataManager;
 import org.pharmgkb.pharmcat.util.DataSerializer;
+import org.pharmgkb.pharmcat.util.DefinitionBundle;
 
 
 /**
  * Read in haplotype definition files.
+ * <p>
+ * Definitions are {@link DefinitionFile#freeze() frozen} as they are read, so once reading is done a
+ * {@link DefinitionReader} can be shared by any number of threads.
  *
  * @author Mark Woon
  */
 public class DefinitionReader {
-  private DataSerializer m_definitionSerializer = new DataSerializer();
+  // only needed (and Gson only gets loaded) if JSON files have to be read
+  private DataSerializer m_definitionSerializer;
   private SortedMap<String, DefinitionFile> m_definitionFiles = new TreeMap<>();
   private Map<String, DefinitionExemption> m_exemptions = new TreeMap<>();
   private String m_genomeBuild;
+  private volatile String m_dataVersion;
 
 
   /**
@@ -53,8 +65,49 @@ public String getGenomeBuild() {
   }
 
 
+  /**
+   * Gets a version string identifying the allele definitions and exemptions that have been read.
+   * <p>
+   * This is the most recent modification date, followed by a hash of the {@link DefinitionFile#getContentHash() content}
+   * of each definition and of the exemptions, so the same data always gets the same version and any change to the data
+   * gets a new one.
+   */
+  public @Nonnull String getDataVersion() {
+    Preconditions.checkState(m_definitionFiles.size() > 0);
+
+    String dataVersion = m_dataVersion;
+    if (dataVersion == null) {
+      Date latest = null;
+      Hasher hasher = Hashing.crc32().newHasher();
+      for (DefinitionFile definitionFile : m_definitionFiles.values()) {
+        hasher.putString(definitionFile.getGeneSymbol(), StandardCharsets.UTF_8)
+            .putString(definitionFile.getContentHash(), StandardCharsets.UTF_8);
+        Date modified = definitionFile.getModificationDate();
+        if (modified != null && (latest == null || modified.after(latest))) {
+          latest = modified;
+        }
+      }
+      for (DefinitionExemption exemption : m_exemptions.values()) {
+        hasher.putString(exemption.getGene(), StandardCharsets.UTF_8)
+            .putString(exemption.getIgnoredAlleles().toString(), StandardCharsets.UTF_8)
+            .putBoolean(exemption.isAllHits())
+            .putBoolean(exemption.isAssumeReference())
+            .putInt(exemption.getExtraPositions().size());
+        for (VariantLocus vl : exemption.getExtraPositions()) {
+          hasher.putString(vl.getChromosome(), StandardCharsets.UTF_8)
+              .putInt(vl.getPosition())
+              .putString(String.valueOf(vl.getRsid()), StandardCharsets.UTF_8);
+        }
+      }
+      dataVersion = (latest == null ? "" : new SimpleDateFormat("yyyy-MM-dd").format(latest) + ".") + hasher.hash();
+      m_dataVersion = dataVersion;
+    }
+    return dataVersion;
+  }
+
+
   public @Nonnull Set<String> getGenes() {
-    return m_definitionFiles.keySet();
+    return Collections.unmodifiableSet(m_definitionFiles.keySet());
   }
 
 
@@ -80,30 +133,69 @@ public String getGenomeBuild() {
 
 
 
+  /**
+   * Reads allele definitions.
+   * <p>
+   * If {@code path} is a directory with an up-to-date {@link DefinitionBundle}, the bundle is read instead of the JSON
+   * files.
+   *
+   * @param path a directory of definition files, a single definition file, or a {@link DefinitionBundle} file
+   */
   public void read(Path path) throws IOException {
 
     if (Files.isDirectory(path)) {
+      DefinitionBundle bundle = DefinitionBundle.forDirectory(path);
+      if (bundle != null) {
+        read(bundle);
+        return;
+      }
       List<Path> files = Files.list(path)
-          .filter(f -> f.toString().endsWith("_translation.json"))
+          .filter(DefinitionBundle::isDefinitionFile)
           .collect(Collectors.toList());
       for (Path file : files) {
         readFile(file);
       }
       readExemptions(path);
+    } else if (path.getFileName().toString().equals(DefinitionBundle.FILE_NAME)) {
+      read(DefinitionBundle.read(path));
     } else {
       readFile(path);
     }
   }
 
+  /**
+   * Reads the allele definitions and exemptions in a {@link DefinitionBundle}.
+   */
+  public void read(@Nonnull DefinitionBundle bundle) {
+
+    bundle.getDefinitionFiles().forEach(this::addDefinitionFile);
+    Set<DefinitionExemption> exemptions = bundle.getExemptions();
+    if (exemptions != null) {
+      addExemptions(exemptions);
+    }
+  }
+
+
+  private DataSerializer getDefinitionSerializer() {
+    if (m_definitionSerializer == null) {
+      m_definitionSerializer = new DataSerializer();
+    }
+    return m_definitionSerializer;
+  }
 
   private void readFile(@Nonnull Path file) throws IOException {
 
     Preconditions.checkNotNull(file);
     Preconditions.checkArgument(Files.isRegularFile(file), "%s is not a file", file);
-    DefinitionFile definitionFile = m_definitionSerializer.deserializeDefinitionsFromJson(file);
+    addDefinitionFile(getDefinitionSerializer().deserializeDefinitionsFromJson(file));
+  }
 
+  private void addDefinitionFile(@Nonnull DefinitionFile definitionFile) {
+
+    definitionFile.freeze();
     String gene = definitionFile.getGeneSymbol();
     m_definitionFiles.put(gene, definitionFile);
+    m_dataVersion = null;
   }
 
 
@@ -118,9 +210,13 @@ public void readExemptions(@Nonnull Path path) throws IOException {
     }
     Preconditions.checkArgument(Files.isRegularFile(file), "Not a file: %s", file);
 
-    Set<DefinitionExemption> exemptions = m_definitionSerializer.deserializeExemptionsFromJson(file);
+    addExemptions(getDefinitionSerializer().deserializeExemptionsFromJson(file));
+  }
+
+  private void addExemptions(@Nonnull Set<DefinitionExemption> exemptions) {
     for (DefinitionExemption de : exemptions) {
       m_exemptions.put(de.getGene().toLowerCase(), de);
     }
+    m_dataVersion = null;
   }
 }
@@ -0,0 +1,176 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import org.pharmgkb.pharmcat.definition.model.DefinitionExemption;
+import org.pharmgkb.pharmcat.definition.model.DefinitionFile;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.haplotype.model.DiplotypeMatch;
+
+
+/**
+ * Caches the {@link DiplotypeMatch}es called for a gene, keyed by the sample's genotype at the gene's positions.
+ * <p>
+ * In a cohort, most samples share one of a handful of genotypes for any given gene, so repeated genotypes only cost a
+ * lookup.  The key covers everything that affects the haplotypes a sample is matched against: the gene, the definition
+ * content, whether missing alleles in definitions are assumed to be reference, the ignored alleles, the (normalized)
+ * alleles and phasing at every position, and the missing and ignored positions.  This makes it safe to share a cache
+ * between matchers with different settings.
+ * <p>
+ * The cache is bounded: once it is full, new genotypes are still called but are no longer cached.
+ *
+ * @author Mark Woon
+ */
+@ThreadSafe
+public class DiplotypeCache {
+  public static final int DEFAULT_MAX_SIZE = 10000;
+  private final int m_maxSize;
+  private final ConcurrentMap<Key, List<DiplotypeMatch>> m_cache = new ConcurrentHashMap<>();
+  private final LongAdder m_hits = new LongAdder();
+  private final LongAdder m_misses = new LongAdder();
+
+
+  public DiplotypeCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maxSize the maximum number of genotypes to cache
+   */
+  public DiplotypeCache(int maxSize) {
+    Preconditions.checkArgument(maxSize > 0, "maxSize must be greater than 0");
+    m_maxSize = maxSize;
+  }
+
+
+  /**
+   * Gets the diplotypes for the sample in the given {@link MatchData}, calling them if they have not been cached.
+   *
+   * @param definitionFile the definition for the gene
+   * @param exemption the exemption for the gene, if any
+   * @param topCandidateOnly true if only the top candidate(s) are being called
+   * @param assumeReference true if missing alleles in definitions are treated as reference
+   * @param caller calls the diplotypes for {@code data}
+   */
+  @Nonnull List<DiplotypeMatch> get(@Nonnull DefinitionFile definitionFile, @Nullable DefinitionExemption exemption,
+      @Nonnull MatchData data, boolean topCandidateOnly, boolean assumeReference,
+      @Nonnull Supplier<List<DiplotypeMatch>> caller) {
+
+    Key key = new Key(definitionFile, exemption, data, topCandidateOnly, assumeReference);
+    List<DiplotypeMatch> matches = m_cache.get(key);
+    if (matches != null) {
+      m_hits.increment();
+      return matches.stream()
+          .map(dm -> new DiplotypeMatch(dm, data))
+          .collect(Collectors.toList());
+    }
+
+    m_misses.increment();
+    matches = caller.get();
+    if (m_cache.size() < m_maxSize) {
+      m_cache.putIfAbsent(key, matches);
+    }
+    return matches;
+  }
+
+
+  /**
+   * Gets the number of times diplotypes were found in the cache.
+   */
+  public long getHitCount() {
+    return m_hits.sum();
+  }
+
+  /**
+   * Gets the number of times diplotypes had to be called.
+   */
+  public long getMissCount() {
+    return m_misses.sum();
+  }
+
+  /**
+   * Gets the number of cached genotypes.
+   */
+  public int size() {
+    return m_cache.size();
+  }
+
+
+  private static class Key {
+    private final String m_gene;
+    private final String m_definitionHash;
+    private final boolean m_topCandidateOnly;
+    private final boolean m_assumeReference;
+    private final Set<String> m_ignoredAlleles;
+    // 2 per position
+    private final String[] m_alleles;
+    private final boolean[] m_phased;
+    private final Set<VariantLocus> m_missingPositions;
+    private final Set<VariantLocus> m_ignoredPositions;
+    private final int m_hashCode;
+
+    Key(DefinitionFile definitionFile, @Nullable DefinitionExemption exemption, MatchData data,
+        boolean topCandidateOnly, boolean assumeReference) {
+      m_gene = definitionFile.getGeneSymbol();
+      m_definitionHash = definitionFile.getContentHash();
+      m_topCandidateOnly = topCandidateOnly;
+      m_assumeReference = assumeReference;
+      m_ignoredAlleles = exemption == null ? ImmutableSet.of() : ImmutableSet.copyOf(exemption.getIgnoredAlleles());
+
+      VariantLocus[] positions = data.getPositions();
+      m_alleles = new String[positions.length * 2];
+      m_phased = new boolean[positions.length];
+      for (int x = 0; x < positions.length; x += 1) {
+        SampleAllele allele = data.getSampleAllele(positions[x].getVcfPosition());
+        m_alleles[x * 2] = allele.getAllele1();
+        m_alleles[x * 2 + 1] = allele.getAllele2();
+        m_phased[x] = allele.isPhased();
+      }
+      m_missingPositions = ImmutableSet.copyOf(data.getMissingPositions());
+      m_ignoredPositions = ImmutableSet.copyOf(data.getIgnoredPositions());
+
+      m_hashCode = Objects.hash(m_gene, m_definitionHash, m_topCandidateOnly, m_assumeReference,
+          m_ignoredAlleles, Arrays.hashCode(m_alleles), Arrays.hashCode(m_phased), m_missingPositions, m_ignoredPositions);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key)o;
+      return m_hashCode == that.m_hashCode &&
+          m_topCandidateOnly == that.m_topCandidateOnly &&
+          m_assumeReference == that.m_assumeReference &&
+          m_ignoredAlleles.equals(that.m_ignoredAlleles) &&
+          Objects.equals(m_gene, that.m_gene) &&
+          m_definitionHash.equals(that.m_definitionHash) &&
+          Arrays.equals(m_alleles, that.m_alleles) &&
+          Arrays.equals(m_phased, that.m_phased) &&
+          m_missingPositions.equals(that.m_missingPositions) &&
+          m_ignoredPositions.equals(that.m_ignoredPositions);
+    }
+
+    @Override
+    public int hashCode() {
+      return m_hashCode;
+    }
+  }
+}
@@ -1,18 +1,21 @@
 package org.pharmgkb.pharmcat.haplotype;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.SortedMap;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.SortedSet;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javax.annotation.Nonnull;
 import org.pharmgkb.pharmcat.definition.model.NamedAllele;
 import org.pharmgkb.pharmcat.haplotype.model.DiplotypeMatch;
+import org.pharmgkb.pharmcat.haplotype.model.EncodedSequence;
 import org.pharmgkb.pharmcat.haplotype.model.HaplotypeMatch;
 
 
@@ -22,167 +25,550 @@
  * @author Mark Woon
  */
 public class DiplotypeMatcher {
+  // how many search steps to take between checking the clock
+  private static final int sf_stepsPerTimeCheck = 1024;
   private MatchData m_dataset;
+  private ComputeBudget m_budget;
+  private long m_startTime;
 
 
   public DiplotypeMatcher(@Nonnull MatchData dataset) {
+    this(dataset, new ComputeBudget());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param budget limits on how much work to do before giving up with a {@link ComplexityLimitException}
+   */
+  public DiplotypeMatcher(@Nonnull MatchData dataset, @Nonnull ComputeBudget budget) {
 
     m_dataset = dataset;
+    m_budget = budget;
   }
 
 
+  /**
+   * Calls diplotypes.
+   *
+   * @return all matching diplotypes, best first
+   */
   public List<DiplotypeMatch> compute() {
+    return compute(false, Integer.MAX_VALUE);
+  }
 
-    // compare sample permutations to haplotypes
-    SortedSet<HaplotypeMatch> matches = comparePermutations();
+  /**
+   * Calls diplotypes, only building as many {@link DiplotypeMatch}es as necessary.
+   *
+   * @param topCandidateOnly true to stop once the score drops below the best score
+   * @param limit the maximum number of diplotypes to return
+   * @return matching diplotypes, best first
+   * @throws ComplexityLimitException if the {@link ComputeBudget} is exceeded
+   */
+  public List<DiplotypeMatch> compute(boolean topCandidateOnly, int limit) {
 
-    if (m_dataset.getPermutations().size() == 1) {
-      return determineHomozygousPairs(matches);
+    List<DiplotypeMatch> matches = new ArrayList<>();
+    Iterator<DiplotypeMatch> it = computeRanked();
+    while (it.hasNext() && matches.size() < limit) {
+      DiplotypeMatch dm = it.next();
+      if (topCandidateOnly && !matches.isEmpty() && dm.getScore() < matches.get(0).getScore()) {
+        break;
+      }
+      matches.add(dm);
     }
-    // find matched pairs
-    return determineHeterozygousPairs(matches);
+    return matches;
   }
 
+  /**
+   * Calls diplotypes, returning them lazily in descending score order.
+   * <p>
+   * The search finds which haplotypes can explain each pair of strands; {@link DiplotypeMatch}es are only built as the
+   * returned iterator is consumed.
+   * <p>
+   * If the sample only has one or two possible strands (i.e. it is homozygous or fully phased), the haplotypes that
+   * match each strand are looked up in the gene's {@link SequenceIndex}.
+   * <p>
+   * Otherwise, instead of enumerating every permutation of the sample's alleles (2<sup>n</sup> for n unphased
+   * heterozygous positions) and matching each of them against every haplotype, this walks the positions one at a time,
+   * tracking which haplotypes can still explain each of the two strands.  A branch is abandoned as soon as either
+   * strand can no longer be explained by any haplotype, so the cost depends on the number of viable candidates rather
+   * than on the number of permutations.
+   *
+   * @throws ComplexityLimitException if the {@link ComputeBudget} is exceeded
+   */
+  public Iterator<DiplotypeMatch> computeRanked() {
+
+    m_startTime = System.nanoTime();
+    BitsetMatcher matcher = new BitsetMatcher(m_dataset);
+    SequenceIndex index = m_dataset.getSequenceIndex();
+    // use same order as pairs are generated in
+    List<NamedAllele> haplotypes = index.getSortedHaplotypes();
+    int numPositions = matcher.getNumPositions();
+    int numWords = (haplotypes.size() + 63) / 64;
+
+    HaplotypeMatch[] haplotypeMatches = new HaplotypeMatch[haplotypes.size()];
+    for (int x = 0; x < haplotypes.size(); x += 1) {
+      haplotypeMatches[x] = new HaplotypeMatch(haplotypes.get(x));
+    }
 
+    int numUnphasedHets = 0;
+    int numPhasedHets = 0;
+    for (int x = 0; x < numPositions; x += 1) {
+      if (matcher.getSampleAlleles(x).length > 1) {
+        if (matcher.isPhased(x)) {
+          numPhasedHets += 1;
+        } else {
+          numUnphasedHets += 1;
+        }
+      }
+    }
+    // permutations only include both strands of phased alleles if first allele is phased
+    boolean hasBothStrands = numPositions > 0 && matcher.isPhased(0);
+
+    Ranking ranking = new Ranking(haplotypeMatches);
+    if (numUnphasedHets == 0 && (numPhasedHets == 0 || !hasBothStrands)) {
+      // only one permutation
+      EncodedSequence seq = new EncodedSequence(matcher, new long[(numPositions + 63) / 64]);
+      long[] candidates = index.find(matcher, new long[(numPositions + 63) / 64]);
+      determineHomozygousPairs(ranking, seq, candidates);
+      checkTime();
+      return ranking;
+    }
 
+    if (numPhasedHets > 0 && !hasBothStrands) {
+      // the complement of a permutation is never a permutation
+      return Collections.emptyIterator();
+    }
 
-  /**
-   * Compares a sample's allele permutations to haplotype definitions and return matches.
-   */
-  protected @Nonnull SortedSet<HaplotypeMatch> comparePermutations() {
+    if (numUnphasedHets == 0) {
+      // fully phased: only two strands
+      EncodedSequence seq1 = new EncodedSequence(matcher, new long[(numPositions + 63) / 64]);
+      EncodedSequence seq2 = seq1.complement();
+      long[] candidates1 = index.find(matcher, new long[(numPositions + 63) / 64]);
+      long[] candidates2 = index.find(matcher, matcher.getHeterozygousMask());
+      if (nextBit(candidates1, 0, haplotypes.size()) != -1 && nextBit(candidates2, 0, haplotypes.size()) != -1) {
+        ranking.record(seq1, candidates1, seq2, candidates2);
+        ranking.record(seq2, candidates2, seq1, candidates1);
+      }
+      checkTime();
 
-    Set<HaplotypeMatch> haplotypeMatches = m_dataset.getHaplotypes().stream()
-        .map(HaplotypeMatch::new)
-        .collect(Collectors.toSet());
+    } else {
+      // <position, sample allele, haplotypes that accept that allele>
+      long[][][] accepts = new long[numPositions][2][numWords];
+      for (int x = 0; x < haplotypes.size(); x += 1) {
+        long[] mask = matcher.buildMask(haplotypes.get(x));
+        for (int y = 0; y < numPositions; y += 1) {
+          int accepted = BitsetMatcher.getAcceptedAlleles(mask, y);
+          if ((accepted & 1) != 0) {
+            setBit(accepts[y][0], x);
+          }
+          if ((accepted & 2) != 0) {
+            setBit(accepts[y][1], x);
+          }
+        }
+      }
 
-    for (String p : m_dataset.getPermutations()) {
-      for (HaplotypeMatch hm : haplotypeMatches) {
-        hm.match(p);
+      Search search = new Search(matcher, accepts, ranking, numWords);
+      search.run(0, 0);
+      if (numPhasedHets > 0) {
+        search.run(0, 1);
       }
     }
-
-    return haplotypeMatches.stream()
-        .filter(h -> !h.getSequences().isEmpty())
-        .collect(Collectors.toCollection(TreeSet::new));
+    return ranking;
   }
 
+
   /**
-   * Determine possible diplotypes given a set of {@link HaplotypeMatch}'s when sample is homozygous at all positions.
-   *
-   * @param haplotypeMatches the matches that were found via {@link #comparePermutations()}
+   * Collects the pairs of strands that were matched and lazily builds {@link DiplotypeMatch}es from them, best first.
+   * <p>
+   * Diplotypes are ranked in {@link DiplotypeMatch#compareTo(DiplotypeMatch)} order, so iteration should only start
+   * once all strands have been recorded.
+   * <p>
+   * Candidate pairs are stored as one row of partners per haplotype.  Each row is walked in the same (score, then
+   * {@link HaplotypeMatch}) order, so merging the rows with a heap that holds at most one entry per haplotype yields the
+   * pairs in score order without having to collect and sort all of them up front.
    */
-  private @Nonnull List<DiplotypeMatch> determineHomozygousPairs(@Nonnull SortedSet<HaplotypeMatch> haplotypeMatches) {
+  private class Ranking implements Iterator<DiplotypeMatch> {
+    private final HaplotypeMatch[] m_haplotypeMatches;
+    private final int m_numWords;
+    // one per pair of strands
+    private final List<EncodedSequence[]> m_sequences = new ArrayList<>();
+    private final List<long[]> m_candidates2 = new ArrayList<>();
+    // haplotype -> indexes (in m_sequences) of the pairs of strands that it matches strand 1 of
+    private final List<List<Integer>> m_strands;
+    // haplotype -> haplotypes it can be paired with (as strand 2)
+    private final long[][] m_partners;
+    private int m_numPairs;
+    // haplotype indexes, best first
+    private int[] m_order;
+    // haplotype -> position in m_order of the next partner to emit
+    private int[] m_cursors;
+    private PriorityQueue<Integer> m_queue;
+
+    Ranking(HaplotypeMatch[] haplotypeMatches) {
+      m_haplotypeMatches = haplotypeMatches;
+      m_numWords = (haplotypeMatches.length + 63) / 64;
+      m_strands = new ArrayList<>(haplotypeMatches.length);
+      for (int x = 0; x < haplotypeMatches.length; x += 1) {
+        m_strands.add(null);
+      }
+      m_partners = new long[haplotypeMatches.length][];
+    }
 
-    String seq = m_dataset.getPermutations().iterator().next();
-    List<DiplotypeMatch> matches = new ArrayList<>();
-    if (haplotypeMatches.size() == 1) {
-      // matched a single haplotype: need to return that as a diplotype
-      HaplotypeMatch hm = haplotypeMatches.first();
-      DiplotypeMatch dm = new DiplotypeMatch(hm, hm, m_dataset);
-      dm.addSequencePair(new String[]{ seq, seq });
-      matches.add(dm);
-    } else {
-      // return all possible pairings of matched haplotypes
-      List<List<HaplotypeMatch>> pairs = CombinationUtil.generatePerfectPairs(haplotypeMatches);
-      for (List<HaplotypeMatch> pair : pairs) {
-        DiplotypeMatch dm = new DiplotypeMatch(pair.get(0), pair.get(1), m_dataset);
-        dm.addSequencePair(new String[]{ seq, seq });
-        matches.add(dm);
+    /**
+     * Records the haplotypes that match a pair of strands.
+     *
+     * @param candidates1 the haplotypes that match {@code seq1}
+     * @param candidates2 the haplotypes that match {@code seq2}
+     */
+    void record(EncodedSequence seq1, long[] candidates1, EncodedSequence seq2, long[] candidates2) {
+
+      int numHaps = m_haplotypeMatches.length;
+      for (int x = nextBit(candidates1, 0, numHaps); x != -1; x = nextBit(candidates1, x + 1, numHaps)) {
+        m_haplotypeMatches[x].addSequence(seq1);
+      }
+      for (int y = nextBit(candidates2, 0, numHaps); y != -1; y = nextBit(candidates2, y + 1, numHaps)) {
+        m_haplotypeMatches[y].addSequence(seq2);
+      }
+      addStrands(seq1, candidates1, seq2, candidates2);
+      for (int x = nextBit(candidates1, 0, numHaps); x != -1; x = nextBit(candidates1, x + 1, numHaps)) {
+        // the mirrored pair gets picked up when seq2 is strand 1
+        addPairs(x, candidates2, x);
       }
     }
-    return matches;
-  }
 
+    void addStrands(EncodedSequence seq1, long[] candidates1, EncodedSequence seq2, long[] candidates2) {
 
+      int idx = m_sequences.size();
+      m_sequences.add(new EncodedSequence[] { seq1, seq2 });
+      m_candidates2.add(candidates2.clone());
+      int numHaps = m_haplotypeMatches.length;
+      for (int x = nextBit(candidates1, 0, numHaps); x != -1; x = nextBit(candidates1, x + 1, numHaps)) {
+        if (m_strands.get(x) == null) {
+          m_strands.set(x, new ArrayList<>());
+        }
+        m_strands.get(x).add(idx);
+      }
+    }
 
-  /**
-   * Determine possible diplotypes given a set of {@link HaplotypeMatch}'s when sample is heterozygous at at least one
-   * position.
-   *
-   * @param haplotypeMatches the matches that were found via {@link #comparePermutations()}
-   */
-  private @Nonnull List<DiplotypeMatch> determineHeterozygousPairs(@Nonnull SortedSet<HaplotypeMatch> haplotypeMatches) {
+    /**
+     * Pairs {@code hap1} with every haplotype in {@code hap2s} whose index is at least {@code from}.
+     */
+    void addPairs(int hap1, long[] hap2s, int from) {
 
-    SortedMap<NamedAllele, HaplotypeMatch> hapMap = new TreeMap<>();
-    for (HaplotypeMatch hm : haplotypeMatches) {
-      hapMap.put(hm.getHaplotype(), hm);
+      if (m_partners[hap1] == null) {
+        m_partners[hap1] = new long[m_numWords];
+      }
+      long[] partners = m_partners[hap1];
+      for (int w = from >>> 6; w < m_numWords; w += 1) {
+        long bits = hap2s[w];
+        if (w == from >>> 6) {
+          bits &= -1L << (from & 63);
+        }
+        m_numPairs += Long.bitCount(bits & ~partners[w]);
+        partners[w] |= bits;
+      }
+      if (m_numPairs > m_budget.getMaxCandidatePairs()) {
+        throw new ComplexityLimitException("More than " + m_budget.getMaxCandidatePairs() + " candidate pairs");
+      }
     }
 
-    // possible pairs from what got matched
-    List<List<NamedAllele>> pairs = CombinationUtil.generatePerfectPairs(hapMap.keySet());
+    private PriorityQueue<Integer> getQueue() {
+
+      if (m_queue == null) {
+        int numHaps = m_haplotypeMatches.length;
+        m_order = IntStream.range(0, numHaps)
+            .boxed()
+            .sorted((a, b) -> {
+              int rez = Integer.compare(m_haplotypeMatches[b].getHaplotype().getScore(),
+                  m_haplotypeMatches[a].getHaplotype().getScore());
+              if (rez != 0) {
+                return rez;
+              }
+              return m_haplotypeMatches[a].compareTo(m_haplotypeMatches[b]);
+            })
+            .mapToInt(Integer::intValue)
+            .toArray();
+        m_cursors = new int[numHaps];
+        m_queue = new PriorityQueue<>(Math.max(1, numHaps), this::compare);
+        for (int x = 0; x < numHaps; x += 1) {
+          if (m_partners[x] != null && advance(x)) {
+            m_queue.add(x);
+          }
+        }
+      }
+      return m_queue;
+    }
 
-    List<DiplotypeMatch> matches = new ArrayList<>();
-    for (List<NamedAllele> pair : pairs) {
-      NamedAllele hap1 = pair.get(0);
-      HaplotypeMatch hm1 = hapMap.get(hap1);
-      if (hm1 == null) {
-        continue;
+    /**
+     * Moves the cursor for {@code hap1} to its next partner.
+     *
+     * @return false if there are no more partners
+     */
+    private boolean advance(int hap1) {
+
+      long[] partners = m_partners[hap1];
+      while (m_cursors[hap1] < m_order.length) {
+        if (isSet(partners, m_order[m_cursors[hap1]])) {
+          return true;
+        }
+        m_cursors[hap1] += 1;
       }
-      NamedAllele hap2 = pair.get(1);
-      HaplotypeMatch hm2 = hapMap.get(hap2);
-      if (hm2 == null) {
-        continue;
+      return false;
+    }
+
+    private int partner(int hap1) {
+      return m_order[m_cursors[hap1]];
+    }
+
+    /**
+     * Compares the current pairs of two rows, in the same order as {@link DiplotypeMatch#compareTo(DiplotypeMatch)}.
+     */
+    private int compare(int row1, int row2) {
+
+      HaplotypeMatch a1 = m_haplotypeMatches[row1];
+      HaplotypeMatch a2 = m_haplotypeMatches[partner(row1)];
+      HaplotypeMatch b1 = m_haplotypeMatches[row2];
+      HaplotypeMatch b2 = m_haplotypeMatches[partner(row2)];
+      int rez = Integer.compare(b1.getHaplotype().getScore() + b2.getHaplotype().getScore(),
+          a1.getHaplotype().getScore() + a2.getHaplotype().getScore());
+      if (rez != 0) {
+        return rez;
+      }
+      rez = a1.compareTo(b1);
+      if (rez != 0) {
+        return rez;
       }
+      return a2.compareTo(b2);
+    }
 
-      if (hap1 == hap2 && hm1.getSequences().size() == 1) {
-        // cannot call homozygous unless more than one sequence matches
-        continue;
+    @Override
+    public boolean hasNext() {
+      return !getQueue().isEmpty();
+    }
+
+    @Override
+    public DiplotypeMatch next() {
+
+      // building matches counts against the time budget too
+      checkTime();
+      Integer row = getQueue().poll();
+      if (row == null) {
+        throw new NoSuchElementException();
+      }
+      int hap1 = row;
+      int hap2 = partner(hap1);
+      m_cursors[hap1] += 1;
+      if (advance(hap1)) {
+        m_queue.add(row);
       }
 
-      Set<String[]> sequencePairs = findSequencePairs(hm1, hm2);
-      if (!sequencePairs.isEmpty()) {
-        DiplotypeMatch dm = new DiplotypeMatch(hm1, hm2, m_dataset);
-        sequencePairs.stream().forEach(dm::addSequencePair);
-        matches.add(dm);
+      DiplotypeMatch dm = new DiplotypeMatch(m_haplotypeMatches[hap1], m_haplotypeMatches[hap2], m_dataset);
+      for (int x : m_strands.get(hap1)) {
+        if (isSet(m_candidates2.get(x), hap2)) {
+          dm.addSequencePair(m_sequences.get(x)[0], m_sequences.get(x)[1]);
+        }
       }
+      return dm;
     }
-    Collections.sort(matches);
-    return matches;
   }
 
 
   /**
-   * Finds valid complementary pairs of sample's alleles for possible diplotype match.
+   * Depth-first search over positions, pairing each strand with its complement.
    */
-  private Set<String[]> findSequencePairs(@Nonnull HaplotypeMatch hm1, @Nonnull HaplotypeMatch hm2) {
+  private class Search {
+    private final BitsetMatcher m_matcher;
+    private final long[][][] m_accepts;
+    private final Ranking m_ranking;
+    private final int m_numPositions;
+    private long m_numPermutations;
+    private long m_numSteps;
+    // one per depth: haplotypes that can still explain strand 1/strand 2
+    private final long[][] m_candidates1;
+    private final long[][] m_candidates2;
+    // bit x is set if the second sample allele is used at position x
+    private final long[] m_alleles1;
+    private final long[] m_alleles2;
+
+    Search(BitsetMatcher matcher, long[][][] accepts, Ranking ranking, int numWords) {
+      m_matcher = matcher;
+      m_ranking = ranking;
+      m_accepts = accepts;
+      m_numPositions = matcher.getNumPositions();
+      m_candidates1 = new long[m_numPositions + 1][numWords];
+      m_candidates2 = new long[m_numPositions + 1][numWords];
+      Arrays.fill(m_candidates1[0], -1);
+      Arrays.fill(m_candidates2[0], -1);
+      m_alleles1 = new long[(m_numPositions + 63) / 64];
+      m_alleles2 = new long[(m_numPositions + 63) / 64];
+    }
 
-    Set<String[]> sequencePairs = new HashSet<>();
-    for (String seq1 : hm1.getSequences()) {
-      for (String seq2 : hm2.getSequences()) {
-        if (isViableComplement(seq1, seq2)) {
-          sequencePairs.add(new String[] { seq1, seq2 });
+    /**
+     * Searches from the given position.
+     *
+     * @param strand which sample allele phased positions use for strand 1
+     */
+    void run(int pos, int strand) {
+
+      if (pos == m_numPositions) {
+        m_numPermutations += 1;
+        if (m_numPermutations > m_budget.getMaxPermutations()) {
+          throw new ComplexityLimitException("More than " + m_budget.getMaxPermutations() + " permutations");
         }
+        record();
+        return;
+      }
+      m_numSteps += 1;
+      if (m_numSteps % sf_stepsPerTimeCheck == 0) {
+        checkTime();
+      }
+      if (m_matcher.getSampleAlleles(pos).length == 1) {
+        step(pos, strand, 0, 0);
+      } else if (m_matcher.isPhased(pos)) {
+        step(pos, strand, strand, 1 - strand);
+      } else {
+        step(pos, strand, 0, 1);
+        step(pos, strand, 1, 0);
+      }
+    }
+
+    private void step(int pos, int strand, int allele1, int allele2) {
+
+      if (and(m_candidates1[pos], m_accepts[pos][allele1], m_candidates1[pos + 1]) &&
+          and(m_candidates2[pos], m_accepts[pos][allele2], m_candidates2[pos + 1])) {
+        setBit(m_alleles1, pos, allele1 == 1);
+        setBit(m_alleles2, pos, allele2 == 1);
+        run(pos + 1, strand);
       }
     }
-    return sequencePairs;
+
+    private void record() {
+      m_ranking.record(new EncodedSequence(m_matcher, m_alleles1.clone()), m_candidates1[m_numPositions],
+          new EncodedSequence(m_matcher, m_alleles2.clone()), m_candidates2[m_numPositions]);
+    }
   }
 
 
+  private void checkTime() {
+    if (System.nanoTime() - m_startTime > m_budget.getMaxNanos()) {
+      throw new ComplexityLimitException("Took more than " + TimeUnit.NANOSECONDS.toMillis(m_budget.getMaxNanos()) +
+          "ms");
+    }
+  }
+
+  private static void setBit(long[] bits, int idx) {
+    bits[idx >>> 6] |= 1L << (idx & 63);
+  }
+
+  private static void setBit(long[] bits, int idx, boolean value) {
+    if (value) {
+      setBit(bits, idx);
+    } else {
+      bits[idx >>> 6] &= ~(1L << (idx & 63));
+    }
+  }
+
+  private static boolean isSet(long[] bits, int idx) {
+    return (bits[idx >>> 6] & (1L << (idx & 63))) != 0;
+  }
+
   /**
-   * Checks whether the two sequences is complementary based on sample alleles.
+   * ANDs {@code a} and {@code b} into {@code rez}.
+   *
+   * @return true if any bits are set
    */
-  private boolean isViableComplement(@Nonnull String sequence1, @Nonnull String sequence2) {
-
-    String[] seq1 = sequence1.split(";");
-    String[] seq2 = sequence2.split(";");
-
-    for (int x = 0; x < seq1.length; x += 1) {
-      String[] s1 = seq1[x].split(":");
-      String[] s2 = seq2[x].split(":");
-      SampleAllele sampleAllele = m_dataset.getSampleAllele(Integer.valueOf(s1[0]));
-      if (sampleAllele.getAllele1().equals(sampleAllele.getAllele2())) {
-        // expecting homozygous
-        if (!s1[1].equals(s2[1])) {
-          return false;
-        }
-      } else {
-        // expecting heterozygous
-        if (s1[1].equals(s2[1])) {
-          return false;
+  private static boolean and(long[] a, long[] b, long[] rez) {
+    long any = 0;
+    for (int x = 0; x < rez.length; x += 1) {
+      rez[x] = a[x] & b[x];
+      any |= rez[x];
+    }
+    return any != 0;
+  }
+
+  /**
+   * Finds the next set bit at or after {@code from}.
+   *
+   * @return the index of the next set bit, or -1 if there isn't one
+   */
+  private static int nextBit(long[] bits, int from, int size) {
+    for (int x = from; x < size; x += 1) {
+      long word = bits[x >>> 6] >>> (x & 63);
+      if (word == 0) {
+        x = (x | 63);
+        continue;
+      }
+      x += Long.numberOfTrailingZeros(word);
+      return x < size ? x : -1;
+    }
+    return -1;
+  }
+
+
+  /**
+   * Compares a sample's allele permutations to haplotype definitions and return matches.
+   * This uses {@link BitsetMatcher} so that each permutation only gets parsed once.
+   *
+   * @throws ComplexityLimitException if the {@link ComputeBudget} is exceeded
+   */
+  protected @Nonnull SortedSet<HaplotypeMatch> comparePermutations() {
+
+    m_startTime = System.nanoTime();
+
+    List<HaplotypeMatch> haplotypeMatches = m_dataset.getHaplotypes().stream()
+        .map(HaplotypeMatch::new)
+        .collect(Collectors.toList());
+
+    BitsetMatcher matcher = new BitsetMatcher(m_dataset);
+    long[][] masks = new long[haplotypeMatches.size()][];
+    for (int x = 0; x < masks.length; x += 1) {
+      masks[x] = matcher.buildMask(haplotypeMatches.get(x).getHaplotype());
+    }
+
+    long numSteps = 0;
+    for (String p : m_dataset.getPermutations(m_budget.getMaxPermutations())) {
+      numSteps += 1;
+      if (numSteps % sf_stepsPerTimeCheck == 0) {
+        checkTime();
+      }
+      long[] sequence = matcher.encode(p);
+      for (int x = 0; x < masks.length; x += 1) {
+        if (BitsetMatcher.matches(masks[x], sequence)) {
+          haplotypeMatches.get(x).addSequence(p);
         }
       }
     }
 
-    return true;
+    return haplotypeMatches.stream()
+        .filter(h -> !h.getSequences().isEmpty())
+        .collect(Collectors.toCollection(TreeSet::new));
+  }
+
+  /**
+   * Determine possible diplotypes when sample is homozygous at all positions.
+   * Every pairing of the haplotypes that match the sample's only sequence is possible.
+   *
+   * @param seq the sample's only sequence
+   * @param candidates the haplotypes that match {@code seq}
+   */
+  private void determineHomozygousPairs(@Nonnull Ranking ranking, @Nonnull EncodedSequence seq,
+      @Nonnull long[] candidates) {
+
+    HaplotypeMatch[] haplotypeMatches = ranking.m_haplotypeMatches;
+    List<Integer> matches = new ArrayList<>();
+    for (int x = nextBit(candidates, 0, haplotypeMatches.length); x != -1;
+         x = nextBit(candidates, x + 1, haplotypeMatches.length)) {
+      haplotypeMatches[x].addSequence(seq);
+      matches.add(x);
+    }
+    // the first haplotype in each pair is the lower one in HaplotypeMatch order
+    matches.sort((a, b) -> haplotypeMatches[a].compareTo(haplotypeMatches[b]));
+    ranking.addStrands(seq, candidates, seq, candidates);
+    long[] partners = candidates.clone();
+    for (int x : matches) {
+      ranking.addPairs(x, partners, 0);
+      setBit(partners, x, false);
+    }
   }
 }
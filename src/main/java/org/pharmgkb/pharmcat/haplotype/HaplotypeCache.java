@@ -0,0 +1,98 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import com.google.common.collect.ImmutableSet;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+
+
+/**
+ * Caches the {@link NamedAllele}s prepared by {@link MatchData#marshallHaplotypes(List)} and
+ * {@link MatchData#defaultMissingAllelesToReference()}, along with their {@link SequenceIndex}.
+ * <p>
+ * The prepared haplotypes only depend on the gene, the positions the sample is missing, the positions that are ignored
+ * and whether missing alleles are treated as reference.  Samples from the same assay are almost always missing the
+ * same positions, so after the first sample the haplotypes (and their index) can be reused instead of being rebuilt.
+ * <p>
+ * Cached {@link NamedAllele}s are shared between samples and must not be modified.
+ *
+ * @author Mark Woon
+ */
+@ThreadSafe
+class HaplotypeCache {
+  private static final int sf_maxSize = 10000;
+  private final ConcurrentMap<Key, SequenceIndex> m_cache = new ConcurrentHashMap<>();
+
+
+  /**
+   * Sets up the haplotypes in the given {@link MatchData}, reusing previously prepared haplotypes if possible.
+   *
+   * @param haplotypes the gene's haplotypes (with ignored named alleles already removed)
+   */
+  void prepare(@Nonnull String gene, @Nonnull MatchData data, @Nonnull List<NamedAllele> haplotypes,
+      boolean assumeReference) {
+
+    Key key = new Key(gene, data.getMissingPositions(), data.getIgnoredPositions(), assumeReference);
+    SequenceIndex cached = m_cache.get(key);
+    if (cached != null) {
+      data.setSequenceIndex(cached);
+      return;
+    }
+
+    data.marshallHaplotypes(haplotypes);
+    if (assumeReference) {
+      data.defaultMissingAllelesToReference();
+    }
+    // don't let a stream of unusual samples grow the cache forever
+    if (m_cache.size() < sf_maxSize) {
+      m_cache.putIfAbsent(key, data.getSequenceIndex());
+    }
+  }
+
+  int size() {
+    return m_cache.size();
+  }
+
+
+  private static class Key {
+    private final String m_gene;
+    private final Set<VariantLocus> m_missingPositions;
+    private final Set<VariantLocus> m_ignoredPositions;
+    private final boolean m_assumeReference;
+    private final int m_hashCode;
+
+    Key(String gene, Set<VariantLocus> missingPositions, Set<VariantLocus> ignoredPositions, boolean assumeReference) {
+      m_gene = gene;
+      m_missingPositions = ImmutableSet.copyOf(missingPositions);
+      m_ignoredPositions = ImmutableSet.copyOf(ignoredPositions);
+      m_assumeReference = assumeReference;
+      m_hashCode = Objects.hash(m_gene, m_missingPositions, m_ignoredPositions, m_assumeReference);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key)o;
+      return m_assumeReference == that.m_assumeReference &&
+          m_gene.equals(that.m_gene) &&
+          m_missingPositions.equals(that.m_missingPositions) &&
+          m_ignoredPositions.equals(that.m_ignoredPositions);
+    }
+
+    @Override
+    public int hashCode() {
+      return m_hashCode;
+    }
+  }
+}
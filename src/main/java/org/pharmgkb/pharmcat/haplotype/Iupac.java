@@ -48,6 +48,13 @@ public String getRegex() {
     return m_pattern.pattern();
   }
 
+  /**
+   * Checks if the given allele is covered by this code.
+   */
+  public boolean matches(@Nonnull String allele) {
+    return m_pattern.matcher(allele).matches();
+  }
+
 
   public static @Nonnull Iupac lookup(@Nonnull String value) {
     Preconditions.checkNotNull(value);
@@ -0,0 +1,156 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import com.google.common.base.Preconditions;
+import org.pharmgkb.common.comparator.ChromosomeNameComparator;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+
+
+/**
+ * This is the registry of all positions of interest.
+ * <p>
+ * Each position is identified by a {@code long} key encoding its chromosome id and VCF position, and each
+ * {@link VariantLocus} is assigned a dense int id (in chromosomal order) that can be used to index into arrays.  This
+ * avoids having to build and hash {@code chr:position} Strings for lookups.
+ * <p>
+ * If more than one {@link VariantLocus} maps to the same VCF position, the first one wins.
+ *
+ * @author Mark Woon
+ */
+@ThreadSafe
+public class LocusRegistry {
+  private static final long sf_emptyKey = -1;
+  private final Map<String, Integer> m_chromosomeIds = new HashMap<>();
+  private final VariantLocus[] m_loci;
+  // open addressing hash table of <key, locus id>
+  private final long[] m_keys;
+  private final int[] m_ids;
+  private final int m_mask;
+
+
+  public LocusRegistry(@Nonnull Collection<VariantLocus> loci) {
+    Preconditions.checkNotNull(loci);
+
+    // first one wins
+    Map<Long, VariantLocus> uniqueLoci = new HashMap<>();
+    for (VariantLocus varLoc : loci) {
+      m_chromosomeIds.putIfAbsent(varLoc.getChromosome(), m_chromosomeIds.size());
+      uniqueLoci.putIfAbsent(encode(m_chromosomeIds.get(varLoc.getChromosome()), varLoc.getVcfPosition()), varLoc);
+    }
+    m_loci = uniqueLoci.values().stream()
+        .sorted(Comparator.comparing(VariantLocus::getChromosome, ChromosomeNameComparator.getComparator())
+            .thenComparingInt(VariantLocus::getVcfPosition))
+        .toArray(VariantLocus[]::new);
+
+    int capacity = Integer.highestOneBit(Math.max(2, m_loci.length) * 2) * 2;
+    m_keys = new long[capacity];
+    m_ids = new int[capacity];
+    m_mask = capacity - 1;
+    Arrays.fill(m_keys, sf_emptyKey);
+    for (int x = 0; x < m_loci.length; x += 1) {
+      put(encode(m_chromosomeIds.get(m_loci[x].getChromosome()), m_loci[x].getVcfPosition()), x);
+    }
+  }
+
+
+  /**
+   * Encodes a chromosome id and position into a single {@code long} key.
+   */
+  public static long encode(int chromosomeId, int position) {
+    return ((long)chromosomeId << 32) | (position & 0xffffffffL);
+  }
+
+  private int slot(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int)(hash ^ (hash >>> 32)) & m_mask;
+  }
+
+  private void put(long key, int id) {
+    int slot = slot(key);
+    while (m_keys[slot] != sf_emptyKey) {
+      slot = (slot + 1) & m_mask;
+    }
+    m_keys[slot] = key;
+    m_ids[slot] = id;
+  }
+
+
+  /**
+   * Gets the id of the given chromosome.
+   *
+   * @return the id of the chromosome, or -1 if there are no positions of interest on it
+   */
+  public int getChromosomeId(@Nullable String chromosome) {
+    Integer id = m_chromosomeIds.get(chromosome);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Gets the id of the locus with the given key (see {@link #encode(int, int)}).
+   *
+   * @return the id of the locus, or -1 if it is not a position of interest
+   */
+  public int lookup(long key) {
+    int slot = slot(key);
+    while (m_keys[slot] != sf_emptyKey) {
+      if (m_keys[slot] == key) {
+        return m_ids[slot];
+      }
+      slot = (slot + 1) & m_mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Gets the id of the locus at the given VCF position.
+   *
+   * @return the id of the locus, or -1 if it is not a position of interest
+   */
+  public int lookup(@Nullable String chromosome, long position) {
+    int chrId = getChromosomeId(chromosome);
+    if (chrId == -1) {
+      return -1;
+    }
+    return lookup(encode(chrId, (int)position));
+  }
+
+  /**
+   * Gets the id of the given {@link VariantLocus}.
+   *
+   * @return the id of the locus, or -1 if it is not a position of interest
+   */
+  public int getId(@Nonnull VariantLocus varLoc) {
+    return lookup(varLoc.getChromosome(), varLoc.getVcfPosition());
+  }
+
+
+  /**
+   * Gets the number of unique positions of interest.
+   */
+  public int size() {
+    return m_loci.length;
+  }
+
+  /**
+   * Gets the {@link VariantLocus} with the given id.
+   */
+  public @Nonnull VariantLocus getLocus(int id) {
+    return m_loci[id];
+  }
+
+  /**
+   * Gets all unique positions of interest, in id (chromosomal) order.
+   */
+  public @Nonnull List<VariantLocus> getLoci() {
+    return Collections.unmodifiableList(Arrays.asList(m_loci));
+  }
+}
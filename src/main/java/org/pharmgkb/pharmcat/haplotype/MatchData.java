@@ -10,6 +10,7 @@
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -44,6 +45,7 @@ public class MatchData {
   @SerializedName("mismatchedAlleles")
   private SortedSet<VariantLocus> m_mismatchedAlleles = new TreeSet<>();
   private List<NamedAllele> m_haplotypes;
+  private SequenceIndex m_sequenceIndex;
   private Set<String> m_permutations;
 
 
@@ -58,6 +60,30 @@ public class MatchData {
    */
   public MatchData(@Nonnull SortedMap<String, SampleAllele> alleleMap, @Nonnull VariantLocus[] allPositions,
       @Nullable SortedSet<VariantLocus> extraPositions, @Nullable SortedSet<VariantLocus> ignoredPositions) {
+    this(vl -> alleleMap.get(vl.getVcfChrPosition()), allPositions, extraPositions, ignoredPositions);
+  }
+
+  /**
+   * Constructor.
+   * Organizes the {@link SampleAllele} data related for the gene of interest.
+   *
+   * @param alleles {@link SampleAllele}s from VCF, indexed by locus id
+   * @param locusRegistry the registry used to assign locus ids
+   * @param allPositions all {@link VariantLocus} positions of interest for the gene
+   * @param extraPositions extra positions to track sample alleles for
+   * @param ignoredPositions ignored positions due to ignored named alleles
+   */
+  public MatchData(@Nonnull SampleAllele[] alleles, @Nonnull LocusRegistry locusRegistry,
+      @Nonnull VariantLocus[] allPositions, @Nullable SortedSet<VariantLocus> extraPositions,
+      @Nullable SortedSet<VariantLocus> ignoredPositions) {
+    this(vl -> {
+      int id = locusRegistry.getId(vl);
+      return id == -1 ? null : alleles[id];
+    }, allPositions, extraPositions, ignoredPositions);
+  }
+
+  private MatchData(@Nonnull Function<VariantLocus, SampleAllele> alleleLookup, @Nonnull VariantLocus[] allPositions,
+      @Nullable SortedSet<VariantLocus> extraPositions, @Nullable SortedSet<VariantLocus> ignoredPositions) {
 
     if (ignoredPositions != null) {
       m_ignoredPositions.addAll(ignoredPositions);
@@ -65,11 +91,10 @@ public MatchData(@Nonnull SortedMap<String, SampleAllele> alleleMap, @Nonnull Va
 
     List<VariantLocus> positions = new ArrayList<>();
     for (VariantLocus variant : allPositions) {
-      String chrPos = variant.getVcfChrPosition();
-      SampleAllele allele = alleleMap.get(chrPos);
+      SampleAllele allele = alleleLookup.apply(variant);
       if (allele == null) {
         m_missingPositions.add(variant);
-        sf_logger.info("Sample has no allele for {}", chrPos);
+        sf_logger.info("Sample has no allele for {}", variant.getVcfChrPosition());
         continue;
       }
       if (m_ignoredPositions.contains(variant)) {
@@ -82,7 +107,7 @@ public MatchData(@Nonnull SortedMap<String, SampleAllele> alleleMap, @Nonnull Va
     m_positions = positions.toArray(new VariantLocus[0]);
     if (extraPositions != null) {
       for (VariantLocus vl : extraPositions) {
-        SampleAllele allele = alleleMap.get(vl.getVcfChrPosition());
+        SampleAllele allele = alleleLookup.apply(vl);
         if (allele != null) {
           m_extraPositions.add(new Variant(vl, allele));
         } else {
@@ -135,11 +160,13 @@ void marshallHaplotypes(List<NamedAllele> allHaplotypes) {
         newHap.setFunction(hap.getFunction());
         newHap.setPopFreqMap(hap.getPopFreqMap());
         newHap.initialize(m_positions);
+        newHap.freeze();
         if (newHap.getScore() > 0) {
           m_haplotypes.add(newHap);
         }
       }
     }
+    m_sequenceIndex = null;
   }
 
 
@@ -174,10 +201,32 @@ void defaultMissingAllelesToReference() {
       fixedHap.setFunction(hap.getFunction());
       fixedHap.setPopFreqMap(hap.getPopFreqMap());
       fixedHap.initialize(m_positions, hap.getScore());
+      fixedHap.freeze();
       updatedHaplotypes.add(fixedHap);
     }
 
     m_haplotypes = updatedHaplotypes;
+    m_sequenceIndex = null;
+  }
+
+  /**
+   * Uses haplotypes that have already been prepared for the same missing and ignored positions.
+   *
+   * @see HaplotypeCache
+   */
+  void setSequenceIndex(@Nonnull SequenceIndex sequenceIndex) {
+    m_haplotypes = sequenceIndex.getHaplotypes();
+    m_sequenceIndex = sequenceIndex;
+  }
+
+  /**
+   * Gets the {@link SequenceIndex} for the haplotypes, building it if necessary.
+   */
+  @Nonnull SequenceIndex getSequenceIndex() {
+    if (m_sequenceIndex == null) {
+      m_sequenceIndex = new SequenceIndex(m_positions, getHaplotypes());
+    }
+    return m_sequenceIndex;
   }
 
 
@@ -195,10 +244,26 @@ public int getNumSampleAlleles() {
 
   /**
    * Gets all permutations of sample alleles at positions of interest.
+   * <p>
+   * There are 2<sup>n</sup> permutations for n unphased heterozygous positions, so these are only generated on demand.
+   * {@link DiplotypeMatcher#compute()} does not need them.
    */
   public @Nonnull Set<String> getPermutations() {
+    return getPermutations(Long.MAX_VALUE);
+  }
+
+  /**
+   * Gets all permutations of sample alleles at positions of interest, as long as there aren't too many.
+   *
+   * @param maxPermutations the maximum number of permutations to allow
+   * @throws ComplexityLimitException if there are more than {@code maxPermutations} permutations
+   */
+  public @Nonnull Set<String> getPermutations(long maxPermutations) {
     if (m_permutations == null) {
-      throw new IllegalStateException("Not initialized - call generateSamplePermutations()");
+      generateSamplePermutations(maxPermutations);
+    } else if (m_permutations.size() > maxPermutations) {
+      throw new ComplexityLimitException("Sample has " + m_permutations.size() + " permutations (limit is " +
+          maxPermutations + ")");
     }
     return m_permutations;
   }
@@ -207,11 +272,21 @@ public int getNumSampleAlleles() {
    * Generate all permutations of sample alleles at positions of interest.
    */
   void generateSamplePermutations() {
+    generateSamplePermutations(Long.MAX_VALUE);
+  }
+
+  /**
+   * Generate all permutations of sample alleles at positions of interest.
+   *
+   * @throws ComplexityLimitException if there would be more than {@code maxPermutations} permutations
+   */
+  void generateSamplePermutations(long maxPermutations) {
 
     m_permutations = CombinationUtil.generatePermutations(
         m_sampleMap.values().stream()
             .sorted()
-            .collect(Collectors.toList())
+            .collect(Collectors.toList()),
+        maxPermutations
     );
   }
 
@@ -231,6 +306,13 @@ void generateSamplePermutations() {
     return m_missingPositions;
   }
 
+  /**
+   * Gets the positions that are ignored because they are only used by ignored named alleles.
+   */
+  @Nonnull Set<VariantLocus> getIgnoredPositions() {
+    return m_ignoredPositions;
+  }
+
   /**
    * Gets the positions that are mismatched from any allele defined for the given gene
    * @return a Set of {@link VariantLocus} objects with mismatched alleles
@@ -1,27 +1,51 @@
 package org.pharmgkb.pharmcat.haplotype;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.SortedSetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.pharmgkb.common.io.util.CliHelper;
 import org.pharmgkb.pharmcat.definition.model.DefinitionExemption;
 import org.pharmgkb.pharmcat.definition.model.NamedAllele;
 import org.pharmgkb.pharmcat.definition.model.VariantLocus;
 import org.pharmgkb.pharmcat.haplotype.model.DiplotypeMatch;
+import org.pharmgkb.pharmcat.haplotype.model.GeneCall;
 import org.pharmgkb.pharmcat.haplotype.model.Result;
 import org.pharmgkb.pharmcat.util.DataManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
@@ -31,12 +55,22 @@
  */
 @ThreadSafe
 public class NamedAlleleMatcher {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   public static final String VERSION = "1.0.0";
+  /**
+   * The {@link GeneCall#getUncalledReason()} used when a gene exceeds the {@link ComputeBudget}.
+   */
+  public static final String UNCALLED_COMPLEXITY = "complexity limit exceeded";
   private DefinitionReader m_definitionReader;
-  private ImmutableMap<String, VariantLocus> m_locationsOfInterest;
+  private LocusRegistry m_locusRegistry;
+  private final HaplotypeCache m_haplotypeCache = new HaplotypeCache();
   private boolean m_assumeReferenceInDefinitions;
   private boolean m_topCandidateOnly;
   private boolean m_printWarnings;
+  private boolean m_assumeSortedVcf;
+  private ExecutorService m_executor;
+  private DiplotypeCache m_diplotypeCache;
+  private ComputeBudget m_computeBudget = new ComputeBudget();
 
 
   /**
@@ -58,7 +92,7 @@ public NamedAlleleMatcher(@Nonnull DefinitionReader definitionReader, boolean as
 
     Preconditions.checkNotNull(definitionReader);
     m_definitionReader = definitionReader;
-    m_locationsOfInterest = calculateLocationsOfInterest(m_definitionReader);
+    m_locusRegistry = calculateLocationsOfInterest(m_definitionReader);
     m_assumeReferenceInDefinitions = assumeReference;
     m_topCandidateOnly = topCandidateOnly;
   }
@@ -69,6 +103,86 @@ public NamedAlleleMatcher printWarnings() {
     return this;
   }
 
+  /**
+   * Expect VCF files to be coordinate-sorted so that reading can stop once all positions of interest have been passed.
+   */
+  public NamedAlleleMatcher assumeSortedVcf() {
+    m_assumeSortedVcf = true;
+    return this;
+  }
+
+  /**
+   * Call genes in parallel using the common {@link ForkJoinPool}.
+   */
+  public NamedAlleleMatcher parallelize() {
+    return parallelize(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Call genes in parallel using the given executor.
+   * The executor is not shut down by this class.
+   */
+  public NamedAlleleMatcher parallelize(@Nonnull ExecutorService executor) {
+    Preconditions.checkNotNull(executor);
+    m_executor = executor;
+    return this;
+  }
+
+  /**
+   * Reuse diplotype calls across samples that have the same genotype for a gene.
+   */
+  public NamedAlleleMatcher cacheDiplotypes() {
+    return cacheDiplotypes(new DiplotypeCache());
+  }
+
+  /**
+   * Reuse diplotype calls across samples that have the same genotype for a gene, using the given cache.
+   */
+  public NamedAlleleMatcher cacheDiplotypes(@Nonnull DiplotypeCache cache) {
+    Preconditions.checkNotNull(cache);
+    m_diplotypeCache = cache;
+    return this;
+  }
+
+  /**
+   * Limit how much work is spent on a single gene.
+   * Genes that exceed the budget are not called, but the rest of the sample still is.
+   */
+  public NamedAlleleMatcher computeBudget(@Nonnull ComputeBudget budget) {
+    Preconditions.checkNotNull(budget);
+    m_computeBudget = budget;
+    return this;
+  }
+
+  /**
+   * Creates a new {@link NamedAlleleMatcher} for different allele definitions, with the same settings as this one.
+   * <p>
+   * The executor, diplotype cache (which is keyed by definition content) and compute budget are shared; everything
+   * derived from the definitions is rebuilt.
+   */
+  public NamedAlleleMatcher withDefinitions(@Nonnull DefinitionReader definitionReader) {
+
+    NamedAlleleMatcher matcher = new NamedAlleleMatcher(definitionReader, m_assumeReferenceInDefinitions,
+        m_topCandidateOnly);
+    matcher.m_printWarnings = m_printWarnings;
+    matcher.m_assumeSortedVcf = m_assumeSortedVcf;
+    matcher.m_executor = m_executor;
+    matcher.m_diplotypeCache = m_diplotypeCache;
+    matcher.m_computeBudget = m_computeBudget;
+    return matcher;
+  }
+
+  public @Nonnull DefinitionReader getDefinitionReader() {
+    return m_definitionReader;
+  }
+
+  /**
+   * Gets the diplotype cache, if diplotype calls are being cached.
+   */
+  public @Nullable DiplotypeCache getDiplotypeCache() {
+    return m_diplotypeCache;
+  }
+
 
   public static void main(String[] args) {
 
@@ -78,6 +192,8 @@ public static void main(String[] args) {
           .addOption("json", "json-out", "file to save results to (in JSON format)", false, "json")
           .addOption("html", "html-out", "file to save results to (in HTML format)", false, "html")
           .addOption("d", "definition-dir", "directory of allele definition files", false, "d")
+          .addOption("s", "sorted", "flag to indicate the VCF file is coordinate-sorted")
+          .addOption("p", "parallel", "flag to call genes in parallel")
           ;
 
       if (!cliHelper.parse(args)) {
@@ -101,6 +217,12 @@ public static void main(String[] args) {
 
       NamedAlleleMatcher namedAlleleMatcher = new NamedAlleleMatcher(definitionReader)
           .printWarnings();
+      if (cliHelper.hasOption("s")) {
+        namedAlleleMatcher.assumeSortedVcf();
+      }
+      if (cliHelper.hasOption("p")) {
+        namedAlleleMatcher.parallelize();
+      }
       Result result = namedAlleleMatcher.call(vcfFile);
 
       ResultSerializer resultSerializer = new ResultSerializer();
@@ -121,81 +243,368 @@ public static void main(String[] args) {
    * Builds a new VCF reader for the given file.
    */
   VcfReader buildVcfReader(Path vcfFile) throws IOException {
-    return new VcfReader(m_locationsOfInterest, vcfFile);
+    return new VcfReader(m_locusRegistry, vcfFile, m_assumeSortedVcf);
+  }
+
+
+  /**
+   * Gets the registry of all locations of interest.
+   */
+  public @Nonnull LocusRegistry getLocusRegistry() {
+    return m_locusRegistry;
   }
 
 
   /**
    * Collects all locations of interest (i.e. positions necessary to make a haplotype call).
-   *
-   * @return a set of {@code <chr:position>} Strings
    */
-  private static ImmutableMap<String, VariantLocus> calculateLocationsOfInterest(DefinitionReader definitionReader) {
+  private static LocusRegistry calculateLocationsOfInterest(DefinitionReader definitionReader) {
 
-    Set<String> data = new HashSet<>();
-    ImmutableMap.Builder<String, VariantLocus> mapBuilder = ImmutableMap.builder();
+    List<VariantLocus> data = new ArrayList<>();
+    for (String gene : definitionReader.getGenes()) {
+      data.addAll(Arrays.asList(definitionReader.getPositions(gene)));
+    }
+    // extra positions go last so that positions from definitions win
     for (String gene : definitionReader.getGenes()) {
-      Arrays.stream(definitionReader.getPositions(gene))
-          .forEach(v -> {
-            String vcp = v.getVcfChrPosition();
-            data.add(vcp);
-            mapBuilder.put(vcp, v);
-          });
       DefinitionExemption exemption = definitionReader.getExemption(gene);
       if (exemption != null) {
-        exemption.getExtraPositions()
-            .forEach(v -> {
-              String vcp = v.getVcfChrPosition();
-              if (!data.contains(vcp)) {
-                data.add(vcp);
-                mapBuilder.put(vcp, v);
-              }
-            });
+        data.addAll(exemption.getExtraPositions());
       }
     }
-    return mapBuilder.build();
+    return new LocusRegistry(data);
   }
 
 
   /**
    * Calls diplotypes for the given VCF file for all genes for which a definition exists.
+   * If the VCF file has more than one sample, only the first sample is called.
    */
   public Result call(@Nonnull Path vcfFile) throws IOException {
 
     VcfReader vcfReader = buildVcfReader(vcfFile);
-    SortedMap<String, SampleAllele> alleles = vcfReader.getAlleleMap();
-    ResultBuilder resultBuilder = new ResultBuilder(m_definitionReader)
-        .forFile(vcfFile, vcfReader.getWarnings().asMap());
+    return callSample(vcfFile, vcfReader, 0);
+  }
+
+
+  /**
+   * Calls diplotypes for a sample held in memory for all genes for which a definition exists.
+   * <p>
+   * The genotypes go through the same normalization as VCF data, so this gives the same result as writing them out to
+   * a VCF file and calling {@link #call(Path)} (except that the result has no input filename).
+   */
+  public Result call(@Nonnull SampleGenotypes genotypes) {
+
+    VcfReader vcfReader = new VcfReader(m_locusRegistry, genotypes);
+    return callSample(null, vcfReader, 0);
+  }
+
+
+  /**
+   * Calls diplotypes for every sample in the given VCF file for all genes for which a definition exists.
+   * <p>
+   * The VCF file is only read once.  Results are computed lazily, in the order samples appear in the VCF file, as the
+   * returned stream is consumed.
+   */
+  public Stream<Result> callSamples(@Nonnull Path vcfFile) throws IOException {
+
+    VcfReader vcfReader = buildVcfReader(vcfFile);
+    return IntStream.range(0, vcfReader.getSampleIds().size())
+        .mapToObj(x -> callSample(vcfFile, vcfReader, x));
+  }
+
+
+  /**
+   * Calls diplotypes for every sample in the given VCF files, using up to {@code parallelism} threads.
+   *
+   * @see #callAll(Stream, int)
+   */
+  public Stream<Result> callAll(@Nonnull Collection<Path> vcfFiles, int parallelism) {
+    return callAll(vcfFiles.stream(), parallelism);
+  }
+
+  /**
+   * Calls diplotypes for every sample in the given VCF files, using up to {@code parallelism} threads.
+   * <p>
+   * Everything derived from the definitions (locus registry, prepared haplotypes and, if enabled, the diplotype cache)
+   * is shared by all samples, so only the VCF file has to be read for each input.
+   * <p>
+   * Results are returned in input order (then in the order samples appear in each VCF file).  Calling is done in the
+   * background, but at most {@code parallelism} files are called (or waiting to be consumed) at any time, so inputs are
+   * only pulled from {@code vcfFiles} as results are consumed.  Consuming the stream blocks until the next result is
+   * available.  Errors reading a VCF file are thrown as {@link UncheckedIOException} when its results are reached.
+   * <p>
+   * The returned stream must be closed (e.g. with try-with-resources), which cancels any remaining work and closes
+   * {@code vcfFiles}.  The worker threads are daemon threads, so a stream that is abandoned without being closed (e.g.
+   * after {@code findFirst()}) won't keep the JVM from exiting, but its threads stay around until then.
+   */
+  public Stream<Result> callAll(@Nonnull Stream<Path> vcfFiles, int parallelism) {
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be greater than 0");
+
+    ExecutorService executor = newCallAllExecutor(parallelism);
+    FileCalls calls = new FileCalls(vcfFiles.iterator(), executor, parallelism);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(calls, Spliterator.ORDERED | Spliterator.NONNULL),
+        false)
+        .flatMap(List::stream)
+        .onClose(executor::shutdownNow)
+        .onClose(vcfFiles::close);
+  }
+
+  /**
+   * Calls diplotypes for every sample in the given VCF files, using up to {@code parallelism} threads.
+   *
+   * @see #callAll(Stream, int, Consumer)
+   */
+  public void callAll(@Nonnull Collection<Path> vcfFiles, int parallelism, @Nonnull Consumer<Result> consumer)
+      throws IOException {
+    callAll(vcfFiles.stream(), parallelism, consumer);
+  }
+
+  /**
+   * Calls diplotypes for every sample in the given VCF files, using up to {@code parallelism} threads.
+   * <p>
+   * Like {@link #callAll(Stream, int)}, except that results are handed to {@code consumer} as soon as each file has
+   * been called (so not necessarily in input order).  {@code consumer} is always called from the calling thread, so it
+   * does not need to be thread-safe.  At most {@code parallelism} files are in flight at any time.
+   *
+   * @throws IOException if any VCF file cannot be read, in which case remaining files are not called
+   */
+  public void callAll(@Nonnull Stream<Path> vcfFiles, int parallelism, @Nonnull Consumer<Result> consumer)
+      throws IOException {
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be greater than 0");
+
+    ExecutorService executor = newCallAllExecutor(parallelism);
+    try {
+      CompletionService<List<Result>> completionService = new ExecutorCompletionService<>(executor);
+      Iterator<Path> it = vcfFiles.iterator();
+      int numInFlight = 0;
+      for (; numInFlight < parallelism && it.hasNext(); numInFlight += 1) {
+        Path vcfFile = it.next();
+        completionService.submit(() -> callFile(vcfFile));
+      }
+      while (numInFlight > 0) {
+        List<Result> results = getResults(completionService.take());
+        numInFlight -= 1;
+        // keep the threads busy while the consumer works
+        if (it.hasNext()) {
+          Path vcfFile = it.next();
+          completionService.submit(() -> callFile(vcfFile));
+          numInFlight += 1;
+        }
+        results.forEach(consumer);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while calling samples", ex);
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+
+  /**
+   * Makes the executor for a {@code callAll} call.
+   * Its threads are daemon threads so that work that is never cleaned up can't keep the JVM from exiting.
+   */
+  private static ExecutorService newCallAllExecutor(int parallelism) {
+    return Executors.newFixedThreadPool(parallelism,
+        new ThreadFactoryBuilder().setDaemon(true).setNameFormat("callAll-%d").build());
+  }
+
+
+  /**
+   * Calls VCF files in the background, keeping up to a fixed number of files in flight, and returns their results in
+   * input order.
+   */
+  private class FileCalls implements Iterator<List<Result>> {
+    private final Iterator<Path> m_vcfFiles;
+    private final ExecutorService m_executor;
+    private final int m_maxInFlight;
+    private final Deque<Future<List<Result>>> m_inFlight = new ArrayDeque<>();
+
+    FileCalls(@Nonnull Iterator<Path> vcfFiles, @Nonnull ExecutorService executor, int maxInFlight) {
+      m_vcfFiles = vcfFiles;
+      m_executor = executor;
+      m_maxInFlight = maxInFlight;
+      fill();
+    }
+
+    private void fill() {
+      while (m_inFlight.size() < m_maxInFlight && m_vcfFiles.hasNext()) {
+        Path vcfFile = m_vcfFiles.next();
+        m_inFlight.add(m_executor.submit(() -> callFile(vcfFile)));
+      }
+      if (!m_vcfFiles.hasNext()) {
+        // lets the threads go away once the work is done
+        m_executor.shutdown();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !m_inFlight.isEmpty();
+    }
+
+    @Override
+    public List<Result> next() {
+
+      Future<List<Result>> future = m_inFlight.poll();
+      if (future == null) {
+        throw new NoSuchElementException();
+      }
+      List<Result> results = getResults(future);
+      fill();
+      return results;
+    }
+  }
+
+  /**
+   * Calls diplotypes for every sample in the given VCF file.
+   */
+  private List<Result> callFile(@Nonnull Path vcfFile) throws IOException {
+
+    VcfReader vcfReader = buildVcfReader(vcfFile);
+    List<Result> results = new ArrayList<>();
+    for (int x = 0; x < vcfReader.getSampleIds().size(); x += 1) {
+      results.add(callSample(vcfFile, vcfReader, x));
+    }
+    return results;
+  }
+
+  /**
+   * Waits for the results of a {@link #callFile(Path)} task.
+   */
+  private static List<Result> getResults(@Nonnull Future<List<Result>> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while calling samples", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw new UncheckedIOException((IOException)ex.getCause());
+      }
+      if (ex.getCause() instanceof RuntimeException) {
+        throw (RuntimeException)ex.getCause();
+      }
+      throw new IllegalStateException("Error calling samples", ex.getCause());
+    }
+  }
+
+
+  /**
+   * Calls diplotypes for a single sample from the given {@link VcfReader}.
+   *
+   * @param vcfFile the VCF file the sample came from, or null if it was not read from a file
+   * @param sampleIdx the index of the sample (see {@link VcfReader#getSampleIds()})
+   */
+  private Result callSample(@Nullable Path vcfFile, @Nonnull VcfReader vcfReader, int sampleIdx) {
+
+    SampleAllele[] alleles = vcfReader.getAlleles(sampleIdx);
+    SortedSetMultimap<String, String> warnings = vcfReader.getWarnings(sampleIdx);
+    String sampleId = vcfReader.getSampleIds().get(sampleIdx);
+    ResultBuilder resultBuilder = new ResultBuilder(m_definitionReader);
+    if (vcfFile == null) {
+      resultBuilder.forSample(sampleId, warnings.asMap());
+    } else {
+      resultBuilder.forFile(vcfFile, sampleId, warnings.asMap());
+    }
     if (m_printWarnings) {
-      vcfReader.getWarnings().keySet()
+      warnings.keySet()
           .forEach(key -> {
             System.out.println(key);
-            vcfReader.getWarnings().get(key)
+            warnings.get(key)
                 .forEach(msg -> System.out.println("\t" + msg));
           });
     }
     // call haplotypes
-    for (String gene : m_definitionReader.getGenes()) {
-      DefinitionExemption exemption = m_definitionReader.getExemption(gene);
-      MatchData data = initializeCallData(alleles, gene);
-      List<DiplotypeMatch> matches = null;
-      if (data.getNumSampleAlleles() > 0) {
-        boolean topCandidateOnly = exemption == null ? m_topCandidateOnly : !exemption.isAllHits();
-        matches = callDiplotypes(data, topCandidateOnly);
+    if (m_executor == null) {
+      for (String gene : m_definitionReader.getGenes()) {
+        callGene(alleles, gene).addTo(resultBuilder);
+      }
+    } else {
+      // results are added in gene order so that output does not depend on scheduling
+      List<Future<GeneData>> futures = new ArrayList<>();
+      for (String gene : m_definitionReader.getGenes()) {
+        futures.add(m_executor.submit(() -> callGene(alleles, gene)));
+      }
+      try {
+        for (Future<GeneData> future : futures) {
+          future.get().addTo(resultBuilder);
+        }
+      } catch (InterruptedException ex) {
+        futures.forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while calling genes", ex);
+      } catch (ExecutionException ex) {
+        futures.forEach(f -> f.cancel(true));
+        if (ex.getCause() instanceof RuntimeException) {
+          throw (RuntimeException)ex.getCause();
+        }
+        throw new IllegalStateException("Error calling genes", ex.getCause());
       }
-
-      resultBuilder.gene(gene, data, matches);
     }
     return resultBuilder.build();
   }
 
 
+  /**
+   * Calls diplotypes for a single gene.
+   * This does not touch any shared mutable state so that genes can be called in parallel.
+   */
+  private @Nonnull GeneData callGene(@Nonnull SampleAllele[] alleles, @Nonnull String gene) {
+
+    DefinitionExemption exemption = m_definitionReader.getExemption(gene);
+    MatchData data = initializeCallData(alleles, gene);
+    List<DiplotypeMatch> matches = null;
+    if (data.getNumSampleAlleles() > 0) {
+      boolean topCandidateOnly = exemption == null ? m_topCandidateOnly : !exemption.isAllHits();
+      try {
+        if (m_diplotypeCache == null) {
+          matches = callDiplotypes(data, topCandidateOnly);
+        } else {
+          matches = m_diplotypeCache.get(m_definitionReader.getDefinitionFile(gene), exemption, data,
+              topCandidateOnly, assumeReference(exemption), () -> callDiplotypes(data, topCandidateOnly));
+        }
+      } catch (ComplexityLimitException ex) {
+        sf_logger.warn("Not calling {}: {}", gene, ex.getMessage());
+        return new GeneData(gene, data, null, UNCALLED_COMPLEXITY);
+      }
+    }
+    return new GeneData(gene, data, matches, null);
+  }
+
+
+  /**
+   * The data needed to build a gene's call in the {@link ResultBuilder}.
+   */
+  private static class GeneData {
+    private final String m_gene;
+    private final MatchData m_matchData;
+    private final List<DiplotypeMatch> m_matches;
+    private final String m_uncalledReason;
+
+    GeneData(@Nonnull String gene, @Nonnull MatchData matchData, @Nullable List<DiplotypeMatch> matches,
+        @Nullable String uncalledReason) {
+      m_gene = gene;
+      m_matchData = matchData;
+      m_matches = matches;
+      m_uncalledReason = uncalledReason;
+    }
+
+    void addTo(@Nonnull ResultBuilder resultBuilder) {
+      resultBuilder.gene(m_gene, m_matchData, m_matches, m_uncalledReason);
+    }
+  }
+
+
   /**
    * Initializes data required to call a diplotype.
    *
-   * @param alleleMap map of {@link SampleAllele}s from VCF
+   * @param sampleAlleles {@link SampleAllele}s from VCF, indexed by locus id
    */
-  private @Nonnull MatchData initializeCallData(SortedMap<String, SampleAllele> alleleMap, String gene) {
+  private @Nonnull MatchData initializeCallData(SampleAllele[] sampleAlleles, String gene) {
 
     DefinitionExemption exemption = m_definitionReader.getExemption(gene);
     SortedSet<VariantLocus> extraPositions = null;
@@ -208,7 +617,7 @@ public Result call(@Nonnull Path vcfFile) throws IOException {
     }
 
     // grab SampleAlleles for all positions related to current gene
-    MatchData data = new MatchData(alleleMap, allPositions, extraPositions, unusedPositions);
+    MatchData data = new MatchData(sampleAlleles, m_locusRegistry, allPositions, extraPositions, unusedPositions);
     data.checkAlleles(m_definitionReader.getDefinitionFile(gene));
     if (data.getNumSampleAlleles() == 0) {
       return data;
@@ -220,17 +629,17 @@ public Result call(@Nonnull Path vcfFile) throws IOException {
           .collect(Collectors.toList());
     }
     // handle missing positions (if any)
-    data.marshallHaplotypes(alleles);
-
-    boolean assumeReference = exemption != null ? exemption.isAssumeReference() : m_assumeReferenceInDefinitions;
-    if (assumeReference) {
-      data.defaultMissingAllelesToReference();
-    }
-
-    data.generateSamplePermutations();
+    m_haplotypeCache.prepare(gene, data, alleles, assumeReference(exemption));
     return data;
   }
 
+  /**
+   * Checks if missing alleles in the definitions for a gene should be treated as reference.
+   */
+  private boolean assumeReference(@Nullable DefinitionExemption exemption) {
+    return exemption != null ? exemption.isAssumeReference() : m_assumeReferenceInDefinitions;
+  }
+
 
   /**
    * Find positions that are only used by ignored alleles (and therefore should be eliminated from consideration).
@@ -291,14 +700,7 @@ private Set<VariantLocus> findIgnorablePositions(VariantLocus[] allPositions, Na
   protected List<DiplotypeMatch> callDiplotypes(MatchData data, boolean topCandidateOnly) {
 
     // find matched pairs
-    List<DiplotypeMatch> pairs = new DiplotypeMatcher(data)
-        .compute();
-    if (topCandidateOnly && pairs.size() > 1) {
-      int topScore = pairs.get(0).getScore();
-      pairs = pairs.stream()
-          .filter(dm -> dm.getScore() == topScore)
-          .collect(Collectors.toList());
-    }
-    return pairs;
+    return new DiplotypeMatcher(data, m_computeBudget)
+        .compute(topCandidateOnly, Integer.MAX_VALUE);
   }
 }
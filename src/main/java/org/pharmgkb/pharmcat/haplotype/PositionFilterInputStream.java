@@ -0,0 +1,415 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+import com.google.common.base.Preconditions;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * This {@link InputStream} works on raw VCF bytes and drops data lines that are not at a position of interest before
+ * they ever get tokenized.
+ * <p>
+ * Only the CHROM and POS columns of each data line are looked at.  Header lines, and data lines at positions of
+ * interest, are passed through unchanged.  Nothing is allocated per line.
+ * <p>
+ * If the data is expected to be coordinate-sorted, the data lines are merge-joined against the sorted positions of
+ * interest, and reading stops once every chromosome with positions of interest has been read past.  A chromosome only
+ * counts as read past once its data has actually been seen (chromosome order in the {@code ##contig} header lines is
+ * not relied on, since many VCF files are sorted lexicographically instead).  If the data turns out to be out of
+ * order, this falls back to checking every line.
+ *
+ * @author Mark Woon
+ */
+class PositionFilterInputStream extends InputStream {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final int sf_bufferSize = 65536;
+  private final InputStream m_in;
+  // chromosome names, as bytes
+  private final byte[][] m_chromosomes;
+  // one per chromosome: sorted VCF positions of interest
+  private final int[][] m_positions;
+  private byte[] m_buffer = new byte[sf_bufferSize];
+  private int m_pos;
+  private int m_limit;
+  private boolean m_eof;
+  private State m_state = State.LINE_START;
+  // cache of the last chromosome seen, since VCF lines are grouped by chromosome
+  private byte[] m_lastChromosome = new byte[64];
+  private int m_lastChromosomeLength = -1;
+  private int m_lastChromosomeIdx = -1;
+  // merge-join state, only used if data is sorted
+  private boolean m_isSorted;
+  private final Set<String> m_seenChromosomes = new HashSet<>();
+  private final int[] m_cursors;
+  private final boolean[] m_passed;
+  private int m_numPassed;
+  private int m_currentChromosomeIdx = -1;
+  private int m_lastPosition = -1;
+
+  private enum State {
+    LINE_START,
+    EMITTING,
+    SKIPPING
+  }
+
+
+  /**
+   * Constructor.
+   *
+   * @param in the raw VCF data
+   * @param locations the positions of interest
+   */
+  PositionFilterInputStream(@Nonnull InputStream in, @Nonnull Collection<VariantLocus> locations) {
+    this(in, locations, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param in the raw VCF data
+   * @param locations the positions of interest
+   * @param assumeSorted true if the VCF data is expected to be coordinate-sorted
+   */
+  PositionFilterInputStream(@Nonnull InputStream in, @Nonnull Collection<VariantLocus> locations,
+      boolean assumeSorted) {
+    Preconditions.checkNotNull(in);
+    Preconditions.checkNotNull(locations);
+    m_in = in;
+
+    SortedMap<String, SortedSet<Integer>> positionMap = new TreeMap<>();
+    for (VariantLocus varLoc : locations) {
+      positionMap.computeIfAbsent(varLoc.getChromosome(), k -> new TreeSet<>())
+          .add(varLoc.getVcfPosition());
+    }
+    m_chromosomes = new byte[positionMap.size()][];
+    m_positions = new int[positionMap.size()][];
+    int x = 0;
+    for (String chr : positionMap.keySet()) {
+      m_chromosomes[x] = chr.getBytes(StandardCharsets.US_ASCII);
+      m_positions[x] = positionMap.get(chr).stream().mapToInt(Integer::intValue).toArray();
+      x += 1;
+    }
+    m_isSorted = assumeSorted;
+    m_cursors = new int[m_chromosomes.length];
+    m_passed = new boolean[m_chromosomes.length];
+  }
+
+
+  @Override
+  public int read() throws IOException {
+
+    byte[] data = new byte[1];
+    int rez = read(data, 0, 1);
+    return rez == -1 ? -1 : data[0] & 0xff;
+  }
+
+  @Override
+  public int read(@Nonnull byte[] buffer, int offset, int length) throws IOException {
+
+    if (length == 0) {
+      return 0;
+    }
+    while (true) {
+      if (m_state == State.LINE_START) {
+        if (!nextLine()) {
+          return -1;
+        }
+      }
+      if (m_pos >= m_limit && !fill()) {
+        return -1;
+      }
+
+      int lineEnd = findNewline(m_pos, m_limit);
+      int end = lineEnd == -1 ? m_limit : lineEnd + 1;
+      if (m_state == State.SKIPPING) {
+        m_pos = end;
+        if (lineEnd != -1) {
+          m_state = State.LINE_START;
+        }
+        continue;
+      }
+
+      int numRead = Math.min(length, end - m_pos);
+      System.arraycopy(m_buffer, m_pos, buffer, offset, numRead);
+      m_pos += numRead;
+      if (lineEnd != -1 && m_pos == end) {
+        m_state = State.LINE_START;
+      }
+      return numRead;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    m_in.close();
+  }
+
+
+  /**
+   * Decides whether the line starting at the current position should be passed through or skipped.
+   *
+   * @return false if there is no more data
+   */
+  private boolean nextLine() throws IOException {
+
+    // make sure CHROM and POS are in the buffer
+    int fieldsEnd;
+    while ((fieldsEnd = findFieldsEnd()) == -1) {
+      if (m_eof) {
+        break;
+      }
+      if (m_pos > 0) {
+        System.arraycopy(m_buffer, m_pos, m_buffer, 0, m_limit - m_pos);
+        m_limit -= m_pos;
+        m_pos = 0;
+      } else if (m_limit == m_buffer.length) {
+        byte[] newBuffer = new byte[m_buffer.length * 2];
+        System.arraycopy(m_buffer, 0, newBuffer, 0, m_limit);
+        m_buffer = newBuffer;
+      }
+      readMore();
+    }
+    if (m_pos >= m_limit) {
+      return false;
+    }
+
+    if (m_buffer[m_pos] == '#') {
+      m_state = State.EMITTING;
+    } else if (fieldsEnd == -1 || isOfInterest(fieldsEnd)) {
+      m_state = State.EMITTING;
+    } else if (m_isSorted && m_numPassed == m_chromosomes.length) {
+      sf_logger.debug("Passed all positions of interest, skipping the rest of the file");
+      return false;
+    } else {
+      m_state = State.SKIPPING;
+    }
+    return true;
+  }
+
+  /**
+   * Finds the end of the POS column (or the end of the line, whichever comes first) for the line starting at the
+   * current position.  For header lines, this is always the end of the line.
+   *
+   * @return the index of the delimiter after the POS column, or -1 if it is not in the buffer yet
+   */
+  private int findFieldsEnd() {
+
+    if (m_pos < m_limit && m_buffer[m_pos] == '#') {
+      return findNewline(m_pos, m_limit);
+    }
+    int numTabs = 0;
+    for (int x = m_pos; x < m_limit; x += 1) {
+      byte b = m_buffer[x];
+      if (b == '\n') {
+        return x;
+      }
+      if (b == '\t') {
+        numTabs += 1;
+        if (numTabs == 2) {
+          return x;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Checks if the line starting at the current position is at a position of interest.
+   * Lines that cannot be parsed are considered to be of interest so that errors get reported.
+   */
+  private boolean isOfInterest(int fieldsEnd) {
+
+    int chrEnd = m_pos;
+    while (chrEnd < fieldsEnd && m_buffer[chrEnd] != '\t') {
+      chrEnd += 1;
+    }
+    if (chrEnd == fieldsEnd) {
+      return true;
+    }
+    int chrIdx = lookupChromosome(m_pos, chrEnd - m_pos);
+    if (chrIdx == -1) {
+      return false;
+    }
+
+    int position = 0;
+    int posStart = chrEnd + 1;
+    if (posStart == fieldsEnd || fieldsEnd - posStart > 9) {
+      return true;
+    }
+    for (int x = posStart; x < fieldsEnd; x += 1) {
+      int digit = m_buffer[x] - '0';
+      if (digit < 0 || digit > 9) {
+        return true;
+      }
+      position = position * 10 + digit;
+    }
+    if (m_isSorted) {
+      if (position >= m_lastPosition) {
+        m_lastPosition = position;
+        return mergeJoin(chrIdx, position);
+      }
+      switchToUnsorted();
+    }
+    return binarySearch(m_positions[chrIdx], position);
+  }
+
+  /**
+   * Advances the cursor for the given chromosome up to the given position.
+   *
+   * @return true if the position is a position of interest
+   */
+  private boolean mergeJoin(int chrIdx, int position) {
+
+    int[] positions = m_positions[chrIdx];
+    int cursor = m_cursors[chrIdx];
+    while (cursor < positions.length && positions[cursor] < position) {
+      cursor += 1;
+    }
+    m_cursors[chrIdx] = cursor;
+    if (cursor == positions.length) {
+      markPassed(chrIdx);
+      return false;
+    }
+    return positions[cursor] == position;
+  }
+
+  /**
+   * Updates the merge-join state when the chromosome changes.
+   */
+  private void startChromosome(int start, int length, int chrIdx) {
+
+    if (!m_isSorted) {
+      return;
+    }
+    if (m_currentChromosomeIdx != -1) {
+      markPassed(m_currentChromosomeIdx);
+    }
+    String chr = new String(m_buffer, start, length, StandardCharsets.US_ASCII);
+    if (!m_seenChromosomes.add(chr)) {
+      switchToUnsorted();
+      return;
+    }
+    m_currentChromosomeIdx = chrIdx;
+    m_lastPosition = -1;
+  }
+
+  private void markPassed(int chrIdx) {
+    if (!m_passed[chrIdx]) {
+      m_passed[chrIdx] = true;
+      m_numPassed += 1;
+    }
+  }
+
+  /**
+   * Gives up on merge-joining because data is not sorted.
+   */
+  private void switchToUnsorted() {
+    sf_logger.warn("VCF file is not sorted, reading entire file");
+    m_isSorted = false;
+  }
+
+  /**
+   * Gets the index of the chromosome with the given name.
+   *
+   * @return the index of the chromosome, or -1 if there are no positions of interest on it
+   */
+  private int lookupChromosome(int start, int length) {
+
+    if (length == m_lastChromosomeLength && bytesEqual(m_lastChromosome, 0, m_buffer, start, length)) {
+      return m_lastChromosomeIdx;
+    }
+    int chrIdx = -1;
+    for (int x = 0; x < m_chromosomes.length; x += 1) {
+      if (m_chromosomes[x].length == length && bytesEqual(m_chromosomes[x], 0, m_buffer, start, length)) {
+        chrIdx = x;
+        break;
+      }
+    }
+    if (length > m_lastChromosome.length) {
+      m_lastChromosome = Arrays.copyOf(m_lastChromosome, length);
+    }
+    System.arraycopy(m_buffer, start, m_lastChromosome, 0, length);
+    m_lastChromosomeLength = length;
+    m_lastChromosomeIdx = chrIdx;
+    startChromosome(start, length, chrIdx);
+    return chrIdx;
+  }
+
+  private static boolean bytesEqual(byte[] a, int aStart, byte[] b, int bStart, int length) {
+    for (int x = 0; x < length; x += 1) {
+      if (a[aStart + x] != b[bStart + x]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean binarySearch(int[] positions, int position) {
+
+    int low = 0;
+    int high = positions.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (positions[mid] < position) {
+        low = mid + 1;
+      } else if (positions[mid] > position) {
+        high = mid - 1;
+      } else {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  private int findNewline(int start, int end) {
+    for (int x = start; x < end; x += 1) {
+      if (m_buffer[x] == '\n') {
+        return x;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Refills the buffer once all of it has been consumed.
+   *
+   * @return false if there is no more data
+   */
+  private boolean fill() throws IOException {
+
+    m_pos = 0;
+    m_limit = 0;
+    while (m_limit == 0 && !m_eof) {
+      readMore();
+    }
+    return m_limit > 0;
+  }
+
+  /**
+   * Reads more data into the end of the buffer.
+   */
+  private void readMore() throws IOException {
+
+    int numRead = m_in.read(m_buffer, m_limit, m_buffer.length - m_limit);
+    if (numRead == -1) {
+      m_eof = true;
+    } else {
+      m_limit += numRead;
+    }
+  }
+}
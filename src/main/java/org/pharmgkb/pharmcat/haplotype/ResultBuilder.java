@@ -11,6 +11,7 @@
 import java.util.Set;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
 import org.pharmgkb.common.util.PathUtils;
 import org.pharmgkb.pharmcat.definition.model.DefinitionExemption;
@@ -45,13 +46,27 @@ public Result build() {
   }
 
 
-  public ResultBuilder forFile(@Nonnull Path vcfFile, Map<String, Collection<String>> warnings) {
+  public ResultBuilder forFile(@Nonnull Path vcfFile, @Nullable String sampleId,
+      Map<String, Collection<String>> warnings) {
     Preconditions.checkNotNull(vcfFile);
-    Preconditions.checkArgument(vcfFile.toString().endsWith(".vcf"));
+    Preconditions.checkArgument(VcfReader.isVcfFile(vcfFile));
     Preconditions.checkArgument(Files.isRegularFile(vcfFile));
 
+    return forInput(PathUtils.getFilename(vcfFile), sampleId, warnings);
+  }
+
+  /**
+   * Sets up the metadata for a sample that did not come from a file (see {@link SampleGenotypes}).
+   */
+  public ResultBuilder forSample(@Nullable String sampleId, Map<String, Collection<String>> warnings) {
+    return forInput(null, sampleId, warnings);
+  }
+
+  private ResultBuilder forInput(@Nullable String inputFilename, @Nullable String sampleId,
+      Map<String, Collection<String>> warnings) {
+
     m_result.setMetadata(new Metadata(NamedAlleleMatcher.VERSION, m_definitionReader.getGenomeBuild(),
-        PathUtils.getFilename(vcfFile), new Date()));
+        m_definitionReader.getDataVersion(), inputFilename, sampleId, new Date()));
     if (warnings != null) {
       m_result.setVcfWarnings(warnings);
     }
@@ -60,6 +75,16 @@ public ResultBuilder forFile(@Nonnull Path vcfFile, Map<String, Collection<Strin
 
 
   protected ResultBuilder gene(@Nonnull String gene, @Nonnull MatchData matchData, List<DiplotypeMatch> matches) {
+    return gene(gene, matchData, matches, null);
+  }
+
+  /**
+   * Adds the call for a gene.
+   *
+   * @param uncalledReason the reason diplotypes could not be called (if they couldn't)
+   */
+  protected ResultBuilder gene(@Nonnull String gene, @Nonnull MatchData matchData, List<DiplotypeMatch> matches,
+      @Nullable String uncalledReason) {
     Preconditions.checkNotNull(gene);
 
     DefinitionFile tsvFile = m_definitionReader.getDefinitionFile(gene);
@@ -88,6 +113,7 @@ protected ResultBuilder gene(@Nonnull String gene, @Nonnull MatchData matchData,
 
     GeneCall geneCall = new GeneCall(definitionVersion, chromosome, gene, matchData, uncallableHaplotypes,
         ignoredHaplotypes);
+    geneCall.setUncalledReason(uncalledReason);
     if (matches != null) {
       // get haplotype/diplotype info
       for (DiplotypeMatch dm : matches) {
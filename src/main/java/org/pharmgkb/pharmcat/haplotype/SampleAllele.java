@@ -22,7 +22,7 @@
  * @author Mark Woon
  */
 public class SampleAllele implements Comparable<SampleAllele> {
-  static boolean STRICT_CHECKING = false;
+  static final boolean STRICT_CHECKING = false;
   private String m_chromosome;
   private int m_position;
   private String m_allele1;
@@ -0,0 +1,130 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.google.common.base.Preconditions;
+
+
+/**
+ * A single sample's genotypes, held in memory.
+ * <p>
+ * This lets {@link NamedAlleleMatcher} call samples without going through a VCF file.  Genotypes are specified the same
+ * way they would be in a VCF file (alleles use VCF syntax, e.g. deletions include the anchor base) and go through the
+ * same normalization and validation as VCF data.
+ *
+ * @author Mark Woon
+ */
+public class SampleGenotypes {
+  private final String m_sampleId;
+  private final List<Genotype> m_genotypes = new ArrayList<>();
+
+
+  public SampleGenotypes(@Nullable String sampleId) {
+    m_sampleId = sampleId;
+  }
+
+
+  public @Nullable String getSampleId() {
+    return m_sampleId;
+  }
+
+  /**
+   * Gets the genotypes, in the order they were added.
+   */
+  @Nonnull List<Genotype> getGenotypes() {
+    return Collections.unmodifiableList(m_genotypes);
+  }
+
+
+  /**
+   * Adds the genotype at a position, as it would appear in a VCF file.
+   *
+   * @param ref the reference allele (VCF REF)
+   * @param alts the alternate alleles (VCF ALT)
+   * @param gt the genotype (VCF GT), e.g. {@code 0|1}
+   */
+  public SampleGenotypes add(@Nonnull String chromosome, int position, @Nonnull String ref, @Nonnull List<String> alts,
+      @Nullable String gt) {
+    Preconditions.checkNotNull(chromosome);
+    Preconditions.checkNotNull(ref);
+    Preconditions.checkNotNull(alts);
+
+    m_genotypes.add(new Genotype(chromosome, position, ref, new ArrayList<>(alts), gt));
+    return this;
+  }
+
+  /**
+   * Adds the genotype at a position.
+   *
+   * @param ref the reference allele
+   * @param allele1 the sample's first allele (in VCF syntax)
+   * @param allele2 the sample's second allele (in VCF syntax)
+   * @param isPhased true if the genotype is phased
+   */
+  public SampleGenotypes add(@Nonnull String chromosome, int position, @Nonnull String ref, @Nonnull String allele1,
+      @Nonnull String allele2, boolean isPhased) {
+    Preconditions.checkNotNull(ref);
+    Preconditions.checkNotNull(allele1);
+    Preconditions.checkNotNull(allele2);
+
+    List<String> alts = new ArrayList<>();
+    int idx1 = alleleIndex(ref, alts, allele1);
+    int idx2 = alleleIndex(ref, alts, allele2);
+    return add(chromosome, position, ref, alts, idx1 + (isPhased ? "|" : "/") + idx2);
+  }
+
+  private static int alleleIndex(String ref, List<String> alts, String allele) {
+    if (allele.equalsIgnoreCase(ref)) {
+      return 0;
+    }
+    int idx = alts.indexOf(allele);
+    if (idx == -1) {
+      alts.add(allele);
+      idx = alts.size() - 1;
+    }
+    return idx + 1;
+  }
+
+
+  /**
+   * A genotype at a single position.
+   */
+  static class Genotype {
+    private final String m_chromosome;
+    private final int m_position;
+    private final String m_ref;
+    private final List<String> m_alts;
+    private final String m_gt;
+
+    private Genotype(String chromosome, int position, String ref, List<String> alts, String gt) {
+      m_chromosome = chromosome;
+      m_position = position;
+      m_ref = ref;
+      m_alts = alts;
+      m_gt = gt;
+    }
+
+    @Nonnull String getChromosome() {
+      return m_chromosome;
+    }
+
+    int getPosition() {
+      return m_position;
+    }
+
+    @Nonnull String getRef() {
+      return m_ref;
+    }
+
+    @Nonnull List<String> getAlts() {
+      return m_alts;
+    }
+
+    @Nullable String getGt() {
+      return m_gt;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.definition.model.VariantType;
+
+
+/**
+ * Index of a gene's (prepared) {@link NamedAllele}s by exact sequence.
+ * <p>
+ * Most haplotypes define a single, unambiguous allele at every position (especially once missing alleles default to
+ * the reference), so the haplotypes that match a sample strand can be found with a single hash lookup.  Only the
+ * haplotypes that have undefined alleles or IUPAC codes still need to be checked position by position.
+ * <p>
+ * This only depends on the positions and the haplotypes, so it can be shared by every sample with the same missing
+ * positions (see {@link HaplotypeCache}).
+ *
+ * @author Mark Woon
+ */
+@ThreadSafe
+class SequenceIndex {
+  private static final String sf_bases = "ACGT";
+  private final List<NamedAllele> m_haplotypes;
+  // in the order haplotypes are paired in
+  private final List<NamedAllele> m_sortedHaplotypes;
+  private final int m_numWords;
+  // exact sequence -> haplotypes (indexes in m_sortedHaplotypes)
+  private final Map<String, long[]> m_exactIndex = new HashMap<>();
+  // haplotypes (indexes in m_sortedHaplotypes) that are not in m_exactIndex
+  private final int[] m_inexact;
+
+
+  SequenceIndex(@Nonnull VariantLocus[] positions, @Nonnull List<NamedAllele> haplotypes) {
+
+    m_haplotypes = haplotypes;
+    m_sortedHaplotypes = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(haplotypes)));
+    m_numWords = (m_sortedHaplotypes.size() + 63) / 64;
+
+    // same order as BitsetMatcher
+    VariantLocus[] sortedPositions = Arrays.stream(positions)
+        .sorted(Comparator.comparingInt(VariantLocus::getVcfPosition))
+        .toArray(VariantLocus[]::new);
+    List<Integer> inexact = new ArrayList<>();
+    for (int x = 0; x < m_sortedHaplotypes.size(); x += 1) {
+      String key = buildKey(sortedPositions, m_sortedHaplotypes.get(x));
+      if (key == null) {
+        inexact.add(x);
+      } else {
+        long[] bits = m_exactIndex.computeIfAbsent(key, k -> new long[m_numWords]);
+        bits[x >>> 6] |= 1L << (x & 63);
+      }
+    }
+    m_inexact = inexact.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Builds the key for a haplotype.
+   *
+   * @return the key, or null if the haplotype can match more than one sequence
+   */
+  private static String buildKey(VariantLocus[] positions, NamedAllele haplotype) {
+
+    StringBuilder builder = new StringBuilder();
+    for (VariantLocus vl : positions) {
+      String allele = haplotype.getAllele(vl);
+      if (allele == null) {
+        return null;
+      }
+      if (vl.getType() == VariantType.SNP && allele.length() == 1 && sf_bases.indexOf(allele.charAt(0)) == -1) {
+        // IUPAC code
+        return null;
+      }
+      builder.append(allele)
+          .append(";");
+    }
+    return builder.toString();
+  }
+
+
+  /**
+   * Gets the haplotypes, in the order they were provided.
+   */
+  @Nonnull List<NamedAllele> getHaplotypes() {
+    return m_haplotypes;
+  }
+
+  /**
+   * Gets the haplotypes, sorted.  Haplotype indexes used by this class refer to this list.
+   */
+  @Nonnull List<NamedAllele> getSortedHaplotypes() {
+    return m_sortedHaplotypes;
+  }
+
+
+  /**
+   * Finds the haplotypes that match a sample strand.
+   *
+   * @param matcher the {@link BitsetMatcher} for the sample
+   * @param strand bit x is set if the strand uses the second sample allele at position x
+   * @return bit y is set if the y-th haplotype (see {@link #getSortedHaplotypes()}) matches the strand
+   */
+  @Nonnull long[] find(@Nonnull BitsetMatcher matcher, @Nonnull long[] strand) {
+
+    StringBuilder builder = new StringBuilder();
+    for (int x = 0; x < matcher.getNumPositions(); x += 1) {
+      builder.append(matcher.getSampleAlleles(x)[(int)(strand[x >>> 6] >>> (x & 63)) & 1])
+          .append(";");
+    }
+    long[] exact = m_exactIndex.get(builder.toString());
+    long[] candidates = exact == null ? new long[m_numWords] : exact.clone();
+    for (int y : m_inexact) {
+      if (matcher.matchesStrand(m_sortedHaplotypes.get(y), strand)) {
+        candidates[y >>> 6] |= 1L << (y & 63);
+      }
+    }
+    return candidates;
+  }
+}
@@ -1,16 +1,24 @@
 package org.pharmgkb.pharmcat.haplotype;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
 import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
@@ -27,6 +35,8 @@
 import org.pharmgkb.pharmcat.ParseException;
 import org.pharmgkb.pharmcat.definition.model.VariantLocus;
 import org.pharmgkb.pharmcat.definition.model.VariantType;
+import org.pharmgkb.pharmcat.util.BgzfInputStream;
+import org.pharmgkb.pharmcat.util.TabixIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,12 +52,15 @@ public class VcfReader implements VcfLineParser {
   private static final Pattern sf_gtDelimiter = Pattern.compile("[|/]");
   private static final Pattern sf_noCallPattern = Pattern.compile("^[.|/]+$");
   private static final Pattern sf_allelePattern = Pattern.compile("^[AaCcGgTt]+$");
-  private ImmutableMap<String, VariantLocus> m_locationsOfInterest;
+  private static final int sf_numInflaterThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+  private LocusRegistry m_locusRegistry;
+  private boolean m_assumeSorted;
   private String m_genomeBuild;
-  // <chr:position, allele>
-  private SortedMap<String, SampleAllele> m_alleleMap = new TreeMap<>(ChromosomePositionComparator.getComparator());
-  // <chr:position, warning>
-  private SortedSetMultimap<String, String> m_warnings = TreeMultimap.create();
+  private List<String> m_sampleIds = new ArrayList<>();
+  // one per sample: alleles indexed by locus id (see LocusRegistry)
+  private List<SampleAllele[]> m_alleles = new ArrayList<>();
+  // one per sample: <chr:position, warning>
+  private List<SortedSetMultimap<String, String>> m_warnings = new ArrayList<>();
 
 
   /**
@@ -57,10 +70,57 @@ public class VcfReader implements VcfLineParser {
    * @param locationsOfInterest set of chr:positions to pull alleles for
    */
   public VcfReader(ImmutableMap<String, VariantLocus> locationsOfInterest, Path vcfFile) throws IOException {
-    m_locationsOfInterest = locationsOfInterest;
+    this(locationsOfInterest, vcfFile, false);
+  }
+
+  /**
+   * Constructor.
+   * Reads in VCF file and pull the sample's alleles for positions of interest.
+   *
+   * @param locationsOfInterest set of chr:positions to pull alleles for
+   * @param assumeSorted true if the VCF file is expected to be coordinate-sorted, in which case reading stops once the
+   * last position of interest has been passed (falls back to reading the entire file if it turns out not to be sorted)
+   */
+  public VcfReader(ImmutableMap<String, VariantLocus> locationsOfInterest, Path vcfFile, boolean assumeSorted)
+      throws IOException {
+    this(new LocusRegistry(locationsOfInterest.values()), vcfFile, assumeSorted);
+  }
+
+  /**
+   * Constructor.
+   * Reads in VCF file and pull the sample's alleles for positions of interest.
+   *
+   * @param locusRegistry the positions to pull alleles for
+   * @param assumeSorted true if the VCF file is expected to be coordinate-sorted, in which case reading stops once the
+   * last position of interest has been passed (falls back to reading the entire file if it turns out not to be sorted)
+   */
+  public VcfReader(@Nonnull LocusRegistry locusRegistry, Path vcfFile, boolean assumeSorted) throws IOException {
+    Preconditions.checkNotNull(locusRegistry);
+    m_locusRegistry = locusRegistry;
+    m_assumeSorted = assumeSorted;
     read(vcfFile);
   }
 
+  /**
+   * Constructor.
+   * Pulls the sample's alleles for positions of interest from in-memory genotypes, normalizing them exactly as if they
+   * had been read from a VCF file.
+   *
+   * @param locusRegistry the positions to pull alleles for
+   */
+  public VcfReader(@Nonnull LocusRegistry locusRegistry, @Nonnull SampleGenotypes genotypes) {
+    Preconditions.checkNotNull(locusRegistry);
+    Preconditions.checkNotNull(genotypes);
+    m_locusRegistry = locusRegistry;
+    m_sampleIds.add(genotypes.getSampleId());
+    m_alleles.add(new SampleAllele[m_locusRegistry.size()]);
+    m_warnings.add(TreeMultimap.create());
+    for (SampleGenotypes.Genotype genotype : genotypes.getGenotypes()) {
+      parsePosition(genotype.getChromosome(), genotype.getPosition(), genotype.getRef(), genotype.getAlts(),
+          Collections.singletonList(genotype.getGt()));
+    }
+  }
+
 
   /**
    * Gets the genome build the VCF file is using.
@@ -72,20 +132,66 @@ public VcfReader(ImmutableMap<String, VariantLocus> locationsOfInterest, Path vc
 
 
   /**
-   * Gets sample data.
+   * Gets the IDs of the samples in the VCF file, in the order they appear in the file.
+   */
+  public @Nonnull List<String> getSampleIds() {
+    return m_sampleIds;
+  }
+
+
+  /**
+   * Gets data for the first sample in the VCF file.
    *
    * @return map of {@code <chr:position, SampleAllele>}
    */
   public SortedMap<String, SampleAllele> getAlleleMap() {
-    return m_alleleMap;
+    return getAlleleMap(0);
   }
 
+  /**
+   * Gets data for the specified sample.
+   * This builds a new map, use {@link #getAlleles(int)} for lookups.
+   *
+   * @param sampleIdx the index of the sample (see {@link #getSampleIds()})
+   * @return map of {@code <chr:position, SampleAllele>}
+   */
+  public SortedMap<String, SampleAllele> getAlleleMap(int sampleIdx) {
+
+    SortedMap<String, SampleAllele> alleleMap = new TreeMap<>(ChromosomePositionComparator.getComparator());
+    SampleAllele[] alleles = m_alleles.get(sampleIdx);
+    for (int x = 0; x < alleles.length; x += 1) {
+      if (alleles[x] != null) {
+        alleleMap.put(m_locusRegistry.getLocus(x).getVcfChrPosition(), alleles[x]);
+      }
+    }
+    return alleleMap;
+  }
 
   /**
-   * Gets warnings from reading data, keyed to chromosomal position.
+   * Gets data for the specified sample.
+   *
+   * @param sampleIdx the index of the sample (see {@link #getSampleIds()})
+   * @return the sample's alleles, indexed by locus id (see {@link LocusRegistry}), null if the sample has no allele
+   */
+  public @Nonnull SampleAllele[] getAlleles(int sampleIdx) {
+    return m_alleles.get(sampleIdx);
+  }
+
+
+  /**
+   * Gets warnings from reading data for the first sample in the VCF file, keyed to chromosomal position.
    */
   public SortedSetMultimap<String, String> getWarnings() {
-    return m_warnings;
+    return getWarnings(0);
+  }
+
+  /**
+   * Gets warnings from reading data for the specified sample, keyed to chromosomal position.
+   *
+   * @param sampleIdx the index of the sample (see {@link #getSampleIds()})
+   */
+  public SortedSetMultimap<String, String> getWarnings(int sampleIdx) {
+    return m_warnings.get(sampleIdx);
   }
 
 
@@ -97,16 +203,18 @@ private void read(Path vcfFile) throws IOException {
     Preconditions.checkNotNull(vcfFile);
     Preconditions.checkArgument(Files.isRegularFile(vcfFile), "%s is not a file", vcfFile);
     Preconditions.checkArgument(Files.isReadable(vcfFile), "%s is not readable", vcfFile);
-    Preconditions.checkArgument(vcfFile.toString().endsWith(".vcf"), "%s is not a VCF file", vcfFile);
+    Preconditions.checkArgument(isVcfFile(vcfFile), "%s is not a VCF file", vcfFile);
 
     // <chr:position, allele>
-    try (BufferedReader reader = Files.newBufferedReader(vcfFile)) {
+    try (BufferedReader reader = openReader(vcfFile)) {
       // read VCF file
       VcfParser vcfParser = new VcfParser.Builder()
           .fromReader(reader)
           .parseWith(this)
           .build();
-      for (ContigMetadata cm : vcfParser.parseMetadata().getContigs().values()) {
+      VcfMetadata metadata = vcfParser.parseMetadata();
+      initializeSamples(metadata);
+      for (ContigMetadata cm : metadata.getContigs().values()) {
         if (cm.getAssembly() != null) {
           if (m_genomeBuild == null) {
             m_genomeBuild = cm.getAssembly();
@@ -120,61 +228,186 @@ private void read(Path vcfFile) throws IOException {
     }
   }
 
+  /**
+   * Checks if the given file looks like a VCF file based on its name.
+   * Supports uncompressed ({@code .vcf}) and gzip/bgzip-compressed ({@code .vcf.gz} or {@code .vcf.bgz}) files.
+   */
+  public static boolean isVcfFile(@Nonnull Path file) {
+    String filename = file.getFileName().toString().toLowerCase();
+    return filename.endsWith(".vcf") || filename.endsWith(".vcf.gz") || filename.endsWith(".vcf.bgz");
+  }
+
+  /**
+   * Opens VCF file for reading, decompressing it if necessary.
+   * <p>
+   * If the file is bgzip-compressed and has a tabix or CSI index, this will only read the parts of the file that can
+   * contain positions of interest.
+   * <p>
+   * Data lines that are not at a position of interest are dropped by {@link PositionFilterInputStream} before they
+   * get decoded and tokenized.
+   */
+  private BufferedReader openReader(@Nonnull Path vcfFile) throws IOException {
+
+    String filename = vcfFile.getFileName().toString().toLowerCase();
+    InputStream in;
+    if (filename.endsWith(".vcf")) {
+      in = Files.newInputStream(vcfFile);
+    } else if (BgzfInputStream.isBgzf(vcfFile)) {
+      Path indexFile = TabixIndex.findIndex(vcfFile);
+      if (indexFile != null) {
+        in = openIndexedStream(vcfFile, indexFile);
+      } else {
+        in = new BgzfInputStream(Files.newByteChannel(vcfFile), sf_numInflaterThreads);
+      }
+    } else {
+      in = new GZIPInputStream(Files.newInputStream(vcfFile), 65536);
+    }
+    in = new PositionFilterInputStream(in, m_locusRegistry.getLoci(), m_assumeSorted);
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+  }
+
+  /**
+   * Opens a bgzip-compressed VCF file using its index.
+   * The resulting stream consists of the VCF header followed by the chunks of the file that overlap positions of
+   * interest.
+   */
+  private InputStream openIndexedStream(@Nonnull Path vcfFile, @Nonnull Path indexFile) throws IOException {
+
+    if (Files.getLastModifiedTime(indexFile).compareTo(Files.getLastModifiedTime(vcfFile)) < 0) {
+      sf_logger.warn("Index file {} is older than {}", indexFile, vcfFile);
+    }
+    TabixIndex index = TabixIndex.read(indexFile);
+    List<TabixIndex.Chunk> chunks = new ArrayList<>();
+    for (VariantLocus varLoc : m_locusRegistry.getLoci()) {
+      chunks.addAll(index.getChunks(varLoc.getChromosome(), varLoc.getVcfPosition(), varLoc.getVcfPosition()));
+    }
+
+    BgzfInputStream bgzfStream = new BgzfInputStream(Files.newByteChannel(vcfFile));
+    List<InputStream> parts = new ArrayList<>();
+    parts.add(new ByteArrayInputStream(readHeader(bgzfStream)));
+    for (TabixIndex.Chunk chunk : TabixIndex.mergeChunks(chunks)) {
+      parts.add(bgzfStream.region(chunk.getBegin(), chunk.getEnd()));
+    }
+    sf_logger.debug("Reading {} chunks from {} using index", parts.size() - 1, vcfFile);
+
+    return new SequenceInputStream(Collections.enumeration(parts)) {
+      @Override
+      public void close() throws IOException {
+        super.close();
+        bgzfStream.close();
+      }
+    };
+  }
+
+  /**
+   * Reads the VCF header (all leading lines starting with "#").
+   */
+  private static byte[] readHeader(@Nonnull InputStream in) throws IOException {
+
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    boolean isLineStart = true;
+    int b;
+    while ((b = in.read()) != -1) {
+      if (isLineStart && b != '#') {
+        break;
+      }
+      header.write(b);
+      isLineStart = b == '\n';
+    }
+    return header.toByteArray();
+  }
+
+
+  /**
+   * Sets up data structures for every sample in the VCF file.
+   */
+  private void initializeSamples(VcfMetadata metadata) {
+
+    int numSamples = metadata.getNumSamples();
+    for (int x = 0; x < numSamples; x += 1) {
+      m_sampleIds.add(metadata.getSampleName(x));
+    }
+    if (numSamples == 0) {
+      sf_logger.warn("VCF file has no samples");
+      // still track warnings for an anonymous sample
+      m_sampleIds.add(null);
+    }
+    for (int x = 0; x < m_sampleIds.size(); x += 1) {
+      m_alleles.add(new SampleAllele[m_locusRegistry.size()]);
+      m_warnings.add(TreeMultimap.create());
+    }
+  }
+
+  /**
+   * Adds warning that applies to all samples.
+   */
   private void addWarning(String chrPos, String msg) {
-    m_warnings.put(chrPos, msg);
+    for (SortedSetMultimap<String, String> warnings : m_warnings) {
+      warnings.put(chrPos, msg);
+    }
     sf_logger.warn(msg);
   }
 
+  /**
+   * Adds warning that applies to a single sample.
+   */
+  private void addWarning(int sampleIdx, String chrPos, String msg) {
+    m_warnings.get(sampleIdx).put(chrPos, msg);
+    sf_logger.warn("{}: {}", m_sampleIds.get(sampleIdx), msg);
+  }
+
 
   @Override
   public void parseLine(VcfMetadata metadata, VcfPosition position, List<VcfSample> sampleData) {
 
-    String chrPos = position.getChromosome() + ":" + position.getPosition();
-
-    if (sampleData.isEmpty()) {
-      sf_logger.warn("Missing sample data on {}", chrPos);
-      return;
+    List<String> genotypes = new ArrayList<>(sampleData.size());
+    for (VcfSample sample : sampleData) {
+      genotypes.add(sample.getProperty("GT"));
     }
+    parsePosition(position.getChromosome(), position.getPosition(), position.getRef(), position.getAltBases(),
+        genotypes);
+  }
 
-    VariantLocus varLoc = m_locationsOfInterest.get(chrPos);
-    if (varLoc == null) {
-      sf_logger.warn("Ignoring {}", chrPos);
-      return;
-    }
-    if (m_alleleMap.containsKey(chrPos)) {
-      addWarning(chrPos, "Duplicate entry: first valid position wins");
-      return;
-    }
+  /**
+   * Pulls the samples' alleles at a single position.
+   *
+   * @param ref the reference allele
+   * @param altBases the alternate alleles
+   * @param genotypes the samples' genotypes (GT), in sample order
+   */
+  private void parsePosition(@Nonnull String chromosome, long pos, @Nonnull String ref, @Nonnull List<String> altBases,
+      @Nonnull List<String> genotypes) {
 
-    if (sampleData.size() > 1) {
-      addWarning(chrPos, "Multiple samples found, only using first entry");
+    int locusId = m_locusRegistry.lookup(chromosome, pos);
+    if (locusId == -1) {
+      // most of these never make it past PositionFilterInputStream
+      sf_logger.debug("Ignoring {}:{}", chromosome, pos);
+      return;
     }
+    VariantLocus varLoc = m_locusRegistry.getLocus(locusId);
+    String chrPos = chromosome + ":" + pos;
 
-    String gt = sampleData.get(0).getProperty("GT");
-    if (gt == null) {
-      addWarning(chrPos, "Ignoring: no genotype");
+    if (genotypes.isEmpty()) {
+      sf_logger.warn("Missing sample data on {}", chrPos);
       return;
     }
-    if (sf_noCallPattern.matcher(gt).matches()) {
-      addWarning(chrPos, "Ignoring: no call (" + gt + ")");
+    if (m_alleles.stream().allMatch(a -> a[locusId] != null)) {
+      addWarning(chrPos, "Duplicate entry: first valid position wins");
       return;
     }
 
-    int[] alleleIdxs = sf_gtDelimiter.splitAsStream(gt)
-        .mapToInt(Integer::parseInt)
-        .toArray();
     // normalize alleles to use same syntax as haplotype definition
     List<String> alleles = new ArrayList<>();
-    if (position.getAltBases().size() == 0) {
-      String gt1 = position.getAllele(0);
+    if (altBases.size() == 0) {
+      String gt1 = ref;
       validateAlleles(chrPos, gt1, null);
 
       String g[] = normalizeAlleles(gt1, null);
       alleles.add(g[0]);
 
     } else {
-      for (String gt2 : position.getAltBases()) {
-        String gt1 = position.getAllele(0);
+      for (String gt2 : altBases) {
+        String gt1 = ref;
         validateAlleles(chrPos, gt1, gt2);
 
         String g[] = normalizeAlleles(gt1, gt2);
@@ -192,12 +425,58 @@ public void parseLine(VcfMetadata metadata, VcfPosition position, List<VcfSample
       }
     }
 
+    List<String> vcfAlleles = new ArrayList<>();
+    vcfAlleles.add(ref);
+    vcfAlleles.addAll(altBases);
+    if (varLoc.getType() == VariantType.DEL && vcfAlleles.stream().map(String::length).distinct().count() < 2) {
+      // must be deletion if expecting deletion because deletions require anchor bases and -1 in position
+      addWarning(chrPos, "Ignoring: expecting deletion but alleles do not appear to be in expected format (got " +
+          vcfAlleles.stream().collect(Collectors.joining("/")) + ")");
+      return;
+    }
+
+    for (int x = 0; x < genotypes.size() && x < m_alleles.size(); x += 1) {
+      SampleAllele[] sampleAlleles = m_alleles.get(x);
+      if (sampleAlleles[locusId] != null) {
+        addWarning(x, chrPos, "Duplicate entry: first valid position wins");
+        continue;
+      }
+      sampleAlleles[locusId] = parseSample(x, chromosome, pos, genotypes.get(x), alleles, vcfAlleles);
+    }
+  }
+
+
+  /**
+   * Pulls a single sample's alleles at the given position.
+   *
+   * @param gt the sample's genotype (GT)
+   * @param alleles the normalized alleles at this position
+   * @param vcfAlleles the raw alleles at this position
+   * @return the sample's {@link SampleAllele} or null if sample does not have a usable genotype
+   */
+  private @Nullable SampleAllele parseSample(int sampleIdx, String chromosome, long pos, @Nullable String gt,
+      List<String> alleles, List<String> vcfAlleles) {
+
+    String chrPos = chromosome + ":" + pos;
+    if (gt == null) {
+      addWarning(sampleIdx, chrPos, "Ignoring: no genotype");
+      return null;
+    }
+    if (sf_noCallPattern.matcher(gt).matches()) {
+      addWarning(sampleIdx, chrPos, "Ignoring: no call (" + gt + ")");
+      return null;
+    }
+
+    int[] alleleIdxs = sf_gtDelimiter.splitAsStream(gt)
+        .mapToInt(Integer::parseInt)
+        .toArray();
+
     String a1 = alleles.get(alleleIdxs[0]);
     String a2 = null;
     if (alleleIdxs.length > 1) {
       a2 = alleles.get(alleleIdxs[1]);
     } else {
-      addWarning(chrPos, "Only a single allele found");
+      addWarning(sampleIdx, chrPos, "Only a single allele found");
     }
 
     // genotype divided by "|" if phased and "/" if unphased
@@ -206,18 +485,7 @@ public void parseLine(VcfMetadata metadata, VcfPosition position, List<VcfSample
       isPhased = false;
     }
 
-    List<String> vcfAlleles = new ArrayList<>();
-    vcfAlleles.add(position.getRef());
-    vcfAlleles.addAll(position.getAltBases());
-
-    SampleAllele sampleAllele = new SampleAllele(position.getChromosome(), position.getPosition(), a1, a2, isPhased, vcfAlleles);
-    if (varLoc.getType() == VariantType.DEL && !sampleAllele.isVcfAlleleADeletion()) {
-      // must be deletion if expecting deletion because deletions require anchor bases and -1 in position
-      addWarning(chrPos, "Ignoring: expecting deletion but alleles do not appear to be in expected format (got " +
-          sampleAllele.getVcfAlleles().stream().collect(Collectors.joining("/")) + ")");
-      return;
-    }
-    m_alleleMap.put(chrPos, sampleAllele);
+    return new SampleAllele(chromosome, pos, a1, a2, isPhased, vcfAlleles);
   }
 
 
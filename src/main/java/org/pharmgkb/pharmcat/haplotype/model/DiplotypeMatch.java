@@ -1,10 +1,14 @@
 package org.pharmgkb.pharmcat.haplotype.model;
 
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import com.google.common.base.Preconditions;
 import com.google.gson.annotations.Expose;
@@ -32,7 +36,9 @@ public class DiplotypeMatch implements Comparable<DiplotypeMatch> {
   @Expose
   @SerializedName("score")
   private int m_score;
-  private Set<String[]> m_sequences = new HashSet<>();
+  private Set<SequencePair> m_sequences = new LinkedHashSet<>();
+  // decoded m_sequences, sequences are only ever added so this is stale if the size doesn't match
+  private volatile List<String[]> m_decodedSequences = Collections.emptyList();
   private MatchData m_dataset;
 
 
@@ -45,6 +51,19 @@ public DiplotypeMatch(@Nonnull HaplotypeMatch hm1, @Nonnull HaplotypeMatch hm2,
     m_dataset = dataset;
   }
 
+  /**
+   * Copy constructor for reusing a match for another sample with the same genotype.
+   * The haplotypes and sequences are shared with {@code other}.
+   */
+  public DiplotypeMatch(@Nonnull DiplotypeMatch other, @Nonnull MatchData dataset) {
+    m_haplotype1 = other.getHaplotype1();
+    m_haplotype2 = other.getHaplotype2();
+    m_name = other.getName();
+    m_score = other.getScore();
+    m_sequences = other.m_sequences;
+    m_dataset = dataset;
+  }
+
   public String getName() {
     return m_name;
   }
@@ -61,14 +80,28 @@ public HaplotypeMatch getHaplotype2() {
     return m_haplotype2;
   }
 
-  public Set<String[]> getSequences() {
-    return m_sequences;
+  /**
+   * Gets the (distinct) pairs of sequences that matched this diplotype, in the order they were added.
+   */
+  public List<String[]> getSequences() {
+    List<String[]> sequences = m_decodedSequences;
+    if (sequences.size() != m_sequences.size()) {
+      sequences = Collections.unmodifiableList(m_sequences.stream()
+          .map(p -> new String[] { p.m_strand1.toString(), p.m_strand2.toString() })
+          .collect(Collectors.toList()));
+      m_decodedSequences = sequences;
+    }
+    return sequences;
   }
 
-  public void addSequencePair(@Nonnull  String[] pair) {
-    Preconditions.checkNotNull(pair);
-    Preconditions.checkArgument(pair.length == 2, "Sequence pair must have 2 sequences");
-    m_sequences.add(pair);
+  /**
+   * Adds a pair of sequences that matched this diplotype.
+   * Pairs that have already been added are ignored.
+   */
+  public void addSequencePair(@Nonnull EncodedSequence strand1, @Nonnull EncodedSequence strand2) {
+    Preconditions.checkNotNull(strand1);
+    Preconditions.checkNotNull(strand2);
+    m_sequences.add(new SequencePair(strand1, strand2));
   }
 
   public String getFunction() {
@@ -115,4 +148,32 @@ public int compareTo(@Nonnull DiplotypeMatch o) {
     }
     return ObjectUtils.compare(m_haplotype2, o.getHaplotype2());
   }
+
+
+  private static class SequencePair {
+    private final EncodedSequence m_strand1;
+    private final EncodedSequence m_strand2;
+
+    SequencePair(EncodedSequence strand1, EncodedSequence strand2) {
+      m_strand1 = strand1;
+      m_strand2 = strand2;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SequencePair)) {
+        return false;
+      }
+      SequencePair that = (SequencePair)o;
+      return m_strand1.equals(that.m_strand1) && m_strand2.equals(that.m_strand2);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(m_strand1, m_strand2);
+    }
+  }
 }
@@ -0,0 +1,88 @@
+package org.pharmgkb.pharmcat.haplotype.model;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import com.google.common.base.Preconditions;
+import org.pharmgkb.pharmcat.haplotype.BitsetMatcher;
+
+
+/**
+ * This represents a single strand of a sample's alleles at the positions of interest for a gene.
+ * <p>
+ * Each position is encoded as a single bit: the index of the sample allele (see
+ * {@link BitsetMatcher#getSampleAlleles(int)}) on this strand.  The complement of a strand can therefore be computed
+ * by flipping the bits of the heterozygous positions, and two strands can be compared without any parsing.  The
+ * {@code "123:A;456:G;"} form is only built when it is needed.
+ *
+ * @author Mark Woon
+ */
+public class EncodedSequence implements Comparable<EncodedSequence> {
+  private final BitsetMatcher m_matcher;
+  private final long[] m_alleles;
+  private final int m_hashCode;
+  private String m_sequence;
+
+
+  /**
+   * Constructor.
+   *
+   * @param matcher the {@link BitsetMatcher} for the sample's alleles
+   * @param alleles bit x is set if the second sample allele is used at position x (in VCF position order)
+   */
+  public EncodedSequence(@Nonnull BitsetMatcher matcher, @Nonnull long[] alleles) {
+    Preconditions.checkNotNull(matcher);
+    Preconditions.checkNotNull(alleles);
+    m_matcher = matcher;
+    m_alleles = alleles;
+    m_hashCode = Arrays.hashCode(alleles);
+  }
+
+
+  /**
+   * Gets the strand that pairs with this strand (i.e. uses the other sample allele at every heterozygous position).
+   */
+  public @Nonnull EncodedSequence complement() {
+
+    long[] hets = m_matcher.getHeterozygousMask();
+    long[] alleles = new long[m_alleles.length];
+    for (int x = 0; x < alleles.length; x += 1) {
+      alleles[x] = m_alleles[x] ^ hets[x];
+    }
+    return new EncodedSequence(m_matcher, alleles);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof EncodedSequence)) {
+      return false;
+    }
+    EncodedSequence that = (EncodedSequence)o;
+    return m_hashCode == that.m_hashCode &&
+        m_matcher == that.m_matcher &&
+        Arrays.equals(m_alleles, that.m_alleles);
+  }
+
+  @Override
+  public int hashCode() {
+    return m_hashCode;
+  }
+
+  @Override
+  public int compareTo(@Nonnull EncodedSequence o) {
+    return toString().compareTo(o.toString());
+  }
+
+  /**
+   * Gets this sequence in {@code "123:A;456:G;"} form.
+   */
+  @Override
+  public String toString() {
+    if (m_sequence == null) {
+      m_sequence = m_matcher.decode(m_alleles);
+    }
+    return m_sequence;
+  }
+}
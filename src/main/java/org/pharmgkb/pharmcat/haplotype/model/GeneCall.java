@@ -6,6 +6,7 @@
 import java.util.SortedSet;
 import java.util.TreeSet;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
@@ -52,6 +53,9 @@ public class GeneCall {
   @Expose
   @SerializedName("ignoredHaplotypes")
   private Set<String> m_ignoredHaplotypes;
+  @Expose
+  @SerializedName("uncalledReason")
+  private String m_uncalledReason;
 
 
   public GeneCall(@Nonnull String alleleDefinitionVersion, @Nonnull String chromosome, @Nonnull String gene,
@@ -146,6 +150,18 @@ public boolean isPhased() {
   }
 
 
+  /**
+   * Gets the reason diplotypes could not be called, if the matcher gave up on this gene.
+   */
+  public @Nullable String getUncalledReason() {
+    return m_uncalledReason;
+  }
+
+  public void setUncalledReason(@Nullable String uncalledReason) {
+    m_uncalledReason = uncalledReason;
+  }
+
+
   @Override
   public String toString() {
     return m_gene;
@@ -1,5 +1,7 @@
 package org.pharmgkb.pharmcat.haplotype.model;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import javax.annotation.Nonnull;
@@ -22,6 +24,7 @@ public class HaplotypeMatch implements Comparable<HaplotypeMatch> {
   @Expose
   @SerializedName("sequences")
   private SortedSet<String> m_sequences = new TreeSet<>();
+  private Set<EncodedSequence> m_encodedSequences = new HashSet<>();
   @Expose
   @SerializedName("function")
   private String m_function;
@@ -55,6 +58,22 @@ public boolean match(@Nonnull String seq) {
     return false;
   }
 
+  /**
+   * Adds a sequence that is already known to match this haplotype.
+   */
+  public void addSequence(@Nonnull String seq) {
+    m_sequences.add(seq);
+  }
+
+  /**
+   * Adds a sequence that is already known to match this haplotype.
+   */
+  public void addSequence(@Nonnull EncodedSequence seq) {
+    if (m_encodedSequences.add(seq)) {
+      m_sequences.add(seq.toString());
+    }
+  }
+
   public @Nonnull SortedSet<String> getSequences() {
     return m_sequences;
   }
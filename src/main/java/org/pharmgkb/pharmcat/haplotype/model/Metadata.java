@@ -14,17 +14,31 @@ public class Metadata {
   @SerializedName("genomeBuild")
   private String m_genomeBuild;
   @Expose
+  @SerializedName("dataVersion")
+  private String m_dataVersion;
+  @Expose
   @SerializedName("inputFilename")
   private String m_inputFilename;
   @Expose
+  @SerializedName("sampleId")
+  private String m_sampleId;
+  @Expose
   @SerializedName("timestamp")
   private Date m_timetamp;
 
 
-  public Metadata(String namedAlleleMatcherVersion, String genomeBuild, String vcfFilename, Date date) {
+  public Metadata(String namedAlleleMatcherVersion, String genomeBuild, String vcfFilename, String sampleId,
+      Date date) {
+    this(namedAlleleMatcherVersion, genomeBuild, null, vcfFilename, sampleId, date);
+  }
+
+  public Metadata(String namedAlleleMatcherVersion, String genomeBuild, String dataVersion, String vcfFilename,
+      String sampleId, Date date) {
     m_namedAlleleMatcherVersion = namedAlleleMatcherVersion;
     m_genomeBuild = genomeBuild;
+    m_dataVersion = dataVersion;
     m_inputFilename = vcfFilename;
+    m_sampleId = sampleId;
     m_timetamp = date;
   }
 
@@ -37,10 +51,24 @@ public String getGenomeBuild() {
     return m_genomeBuild;
   }
 
+  /**
+   * Gets the version of the allele definitions used to make the calls (see {@code DefinitionReader#getDataVersion()}).
+   */
+  public String getDataVersion() {
+    return m_dataVersion;
+  }
+
   public String getInputFilename() {
     return m_inputFilename;
   }
 
+  /**
+   * Gets the ID of the sample (from the VCF file) this result is for.
+   */
+  public String getSampleId() {
+    return m_sampleId;
+  }
+
   public Date getTimetamp() {
     return m_timetamp;
   }
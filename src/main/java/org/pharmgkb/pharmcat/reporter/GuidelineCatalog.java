@@ -0,0 +1,145 @@
+package org.pharmgkb.pharmcat.reporter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.pharmgkb.pharmcat.reporter.io.JsonFileLoader;
+import org.pharmgkb.pharmcat.reporter.model.GuidelinePackage;
+import org.pharmgkb.pharmcat.reporter.model.RelatedChemical;
+import org.pharmgkb.pharmcat.reporter.model.RelatedGene;
+import org.pharmgkb.pharmcat.reporter.model.result.GuidelineReport;
+
+
+/**
+ * All the guidelines the reporter applies, loaded once and shared by every report.
+ * <p>
+ * The related genes and drugs of each guideline are computed up front, so that each report only has to create its
+ * (per-sample) {@link GuidelineReport} objects.  The {@link GuidelinePackage} objects in this catalog are shared and
+ * must not be modified.
+ *
+ * @author Mark Woon
+ */
+@Immutable
+public class GuidelineCatalog {
+  private final ImmutableList<Entry> m_entries;
+  private final ImmutableList<GuidelinePackage> m_guidelines;
+  private final ImmutableSortedSet<String> m_geneSymbols;
+  private final String m_dataVersion;
+
+
+  /**
+   * Loads the guidelines in the JSON files in the given directory.
+   *
+   * @throws IOException if there are no guideline files in the directory or they cannot be read
+   */
+  public static @Nonnull GuidelineCatalog load(@Nonnull Path guidelinesDir) throws IOException {
+    Preconditions.checkArgument(Files.isDirectory(guidelinesDir), "Not a directory: %s", guidelinesDir);
+
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(guidelinesDir)) {
+      files = stream
+          .filter(f -> f.getFileName().toString().endsWith(".json"))
+          .collect(Collectors.toList());
+    }
+    if (files.size() == 0) {
+      throw new IOException("No annotation definitions to read from");
+    }
+    Hasher hasher = Hashing.crc32().newHasher();
+    for (Path file : new TreeSet<>(files)) {
+      hasher.putString(file.getFileName().toString(), StandardCharsets.UTF_8)
+          .putBytes(Files.readAllBytes(file));
+    }
+    return new GuidelineCatalog(new JsonFileLoader().loadGuidelines(files), hasher.hash().toString());
+  }
+
+
+  public GuidelineCatalog(@Nonnull Collection<GuidelinePackage> guidelinePackages) {
+    this(guidelinePackages, null);
+  }
+
+  private GuidelineCatalog(@Nonnull Collection<GuidelinePackage> guidelinePackages, @Nullable String dataVersion) {
+    Preconditions.checkNotNull(guidelinePackages);
+
+    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+    ImmutableSortedSet.Builder<String> geneSymbols = ImmutableSortedSet.naturalOrder();
+    for (GuidelinePackage guidelinePackage : guidelinePackages) {
+      Entry entry = new Entry(guidelinePackage);
+      entries.add(entry);
+      geneSymbols.addAll(entry.geneSymbols);
+    }
+    m_entries = entries.build();
+    m_guidelines = ImmutableList.copyOf(guidelinePackages);
+    m_geneSymbols = geneSymbols.build();
+    m_dataVersion = dataVersion;
+  }
+
+
+  /**
+   * Gets a version string identifying the guideline files this catalog was {@link #load loaded} from (a hash of their
+   * names and contents), or null if it was made from {@link GuidelinePackage}s directly.
+   */
+  public @Nullable String getDataVersion() {
+    return m_dataVersion;
+  }
+
+
+  /**
+   * Gets all the guidelines, in the order they were loaded.
+   */
+  public @Nonnull List<GuidelinePackage> getGuidelines() {
+    return m_guidelines;
+  }
+
+  /**
+   * Gets the symbols of all genes related to any guideline.
+   */
+  public @Nonnull SortedSet<String> getGeneSymbols() {
+    return m_geneSymbols;
+  }
+
+  public int size() {
+    return m_entries.size();
+  }
+
+
+  /**
+   * Makes a new {@link GuidelineReport} for each guideline, ready to be matched against a sample.
+   */
+  public @Nonnull List<GuidelineReport> newReports() {
+    return m_entries.stream()
+        .map(e -> new GuidelineReport(e.guidelinePackage, e.geneSymbols, e.drugs))
+        .collect(Collectors.toList());
+  }
+
+
+  private static class Entry {
+    private final GuidelinePackage guidelinePackage;
+    private final Set<String> geneSymbols;
+    private final Set<String> drugs;
+
+    private Entry(GuidelinePackage guidelinePackage) {
+      this.guidelinePackage = guidelinePackage;
+      geneSymbols = ImmutableSet.copyOf(guidelinePackage.getGuideline().getRelatedGenes().stream()
+          .map(RelatedGene::getSymbol).collect(Collectors.toSet()));
+      drugs = ImmutableSet.copyOf(guidelinePackage.getGuideline().getRelatedChemicals().stream()
+          .map(RelatedChemical::getName).collect(Collectors.toSet()));
+    }
+  }
+}
@@ -15,13 +15,17 @@
 
 
 /**
- * Generates HTML reports using Handlebars templating system
+ * Generates HTML reports using Handlebars templating system.
+ * <p>
+ * The report template is only compiled once, and is shared by all threads (compiled Handlebars templates are
+ * thread-safe).
  *
  * @author Ryan Whaley
  */
 public class HtmlReportGenerator {
   private static final String FINAL_REPORT      = "report";
   private static final String sf_templatePrefix = "/org/pharmgkb/pharmcat/reporter";
+  private static volatile Template s_finalReportTemplate;
 
   /**
    * Generate a final report for a Map of data
@@ -29,14 +33,31 @@ public class HtmlReportGenerator {
    * @param filePath the path to write the report to
    */
   public static void writeFinalReport(@Nonnull Map<String,Object> data, @Nonnull Path filePath) throws IOException {
-    Handlebars handlebars = new Handlebars(new ClassPathTemplateLoader(sf_templatePrefix));
-    StringHelpers.register(handlebars);
-    handlebars.registerHelpers(ReportHelpers.class);
-    Template template = handlebars.compile(FINAL_REPORT);
+    Template template = getFinalReportTemplate();
 
-    String html = template.apply(data);
+    // render straight to the file instead of building the whole report in memory
     try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
-      writer.write(html);
+      template.apply(data, writer);
     }
   }
+
+  /**
+   * Gets the final report template, compiling it the first time it is needed.
+   */
+  private static Template getFinalReportTemplate() throws IOException {
+    Template template = s_finalReportTemplate;
+    if (template == null) {
+      synchronized (HtmlReportGenerator.class) {
+        template = s_finalReportTemplate;
+        if (template == null) {
+          Handlebars handlebars = new Handlebars(new ClassPathTemplateLoader(sf_templatePrefix));
+          StringHelpers.register(handlebars);
+          handlebars.registerHelpers(ReportHelpers.class);
+          template = handlebars.compile(FINAL_REPORT);
+          s_finalReportTemplate = template;
+        }
+      }
+    }
+    return template;
+  }
 }
@@ -18,7 +18,6 @@
 import org.pharmgkb.pharmcat.reporter.model.AstrolabeCall;
 import org.pharmgkb.pharmcat.reporter.model.GuidelinePackage;
 import org.pharmgkb.pharmcat.reporter.model.MessageAnnotation;
-import org.pharmgkb.pharmcat.reporter.model.RelatedGene;
 import org.pharmgkb.pharmcat.reporter.model.result.GeneReport;
 import org.pharmgkb.pharmcat.reporter.model.result.GuidelineReport;
 import org.pharmgkb.pharmcat.util.DataManager;
@@ -42,9 +41,10 @@ public class ReportContext {
 
   private Map<String,GeneReport> m_geneReports = new TreeMap<>();
   private List<GuidelineReport> m_guidelineReports;
-  private PhenotypeMap m_phenotypeMap;
-  private IncidentalFinder m_incidentalFinder = new IncidentalFinder();
+  private final PhenotypeMap m_phenotypeMap;
+  private final IncidentalFinder m_incidentalFinder;
   private Map<String,String> m_refAlleleForGene = new HashMap<>();
+  private final DefinitionReader m_definitionReader;
 
   private final Predicate<String> isGeneIncidental = s -> m_geneReports.values().stream()
       .anyMatch(r -> r.getGene().equals(s) && r.isIncidental());
@@ -56,12 +56,50 @@ public class ReportContext {
    * @param guidelinePackages a List of all the guidelines to try to apply
    */
   public ReportContext(List<GeneCall> calls, @Nonnull List<AstrolabeCall> astrolabeCalls, List<GuidelinePackage> guidelinePackages) throws Exception {
+    this(calls, astrolabeCalls, new GuidelineCatalog(guidelinePackages));
+  }
 
-    makeGuidelineReports(guidelinePackages);
-    makeGeneReports(guidelinePackages);
-    loadReferenceAlleleNames();
+  /**
+   * Public constructor. Compiles all the incoming data into useful objects to be held for later reporting
+   * @param calls {@link GeneCall} objects from the sample data
+   * @param astrolabeCalls {@link AstrolabeCall} objects from the astrolabe data, non-null but can be empty
+   * @param guidelineCatalog all the guidelines to try to apply
+   */
+  public ReportContext(List<GeneCall> calls, @Nonnull List<AstrolabeCall> astrolabeCalls, @Nonnull GuidelineCatalog guidelineCatalog) throws Exception {
+    this(calls, astrolabeCalls, guidelineCatalog, readDefaultDefinitions());
+  }
+
+  /**
+   * Public constructor. Compiles all the incoming data into useful objects to be held for later reporting
+   * @param calls {@link GeneCall} objects from the sample data
+   * @param astrolabeCalls {@link AstrolabeCall} objects from the astrolabe data, non-null but can be empty
+   * @param guidelineCatalog all the guidelines to try to apply
+   * @param definitionReader the allele definitions the calls were made with
+   */
+  public ReportContext(List<GeneCall> calls, @Nonnull List<AstrolabeCall> astrolabeCalls, @Nonnull GuidelineCatalog guidelineCatalog,
+      @Nonnull DefinitionReader definitionReader) throws Exception {
+    this(calls, astrolabeCalls, guidelineCatalog, definitionReader, new PhenotypeMap(calls), new IncidentalFinder());
+  }
 
-    m_phenotypeMap = new PhenotypeMap(calls);
+  /**
+   * Public constructor. Compiles all the incoming data into useful objects to be held for later reporting
+   * @param calls {@link GeneCall} objects from the sample data
+   * @param astrolabeCalls {@link AstrolabeCall} objects from the astrolabe data, non-null but can be empty
+   * @param guidelineCatalog all the guidelines to try to apply
+   * @param definitionReader the allele definitions the calls were made with
+   * @param phenotypeMap the gene phenotypes to use for the calls
+   * @param incidentalFinder the incidental alleles to look for
+   */
+  public ReportContext(List<GeneCall> calls, @Nonnull List<AstrolabeCall> astrolabeCalls, @Nonnull GuidelineCatalog guidelineCatalog,
+      @Nonnull DefinitionReader definitionReader, @Nonnull PhenotypeMap phenotypeMap,
+      @Nonnull IncidentalFinder incidentalFinder) throws Exception {
+
+    m_definitionReader = definitionReader;
+    m_phenotypeMap = phenotypeMap;
+    m_incidentalFinder = incidentalFinder;
+    makeGuidelineReports(guidelineCatalog);
+    makeGeneReports(guidelineCatalog);
+    loadReferenceAlleleNames();
 
     compileMatcherData(calls);
     compileAstrolabeData(astrolabeCalls);
@@ -85,23 +123,19 @@ public void applyMessage(List<MessageAnnotation> messages) {
   /**
    * Takes the raw GuidelinePackage objects from PharmGKG and maps them to {@link GuidelineReport} objects that can be
    * used in the reporter
-   * @param guidelinePackages a List of PharmGKB {@link GuidelinePackage} objects
+   * @param guidelineCatalog the PharmGKB {@link GuidelinePackage} objects
    */
-  private void makeGuidelineReports(List<GuidelinePackage> guidelinePackages) {
-    m_guidelineReports = guidelinePackages.stream().map(GuidelineReport::new).collect(Collectors.toList());
+  private void makeGuidelineReports(GuidelineCatalog guidelineCatalog) {
+    m_guidelineReports = guidelineCatalog.newReports();
   }
 
   /**
    * Makes {@link GeneReport} objects for each of the genes found in PharmGKB {@link GuidelinePackage} objects
-   * @param guidelinePackages a List of PharmGKB {@link GuidelinePackage} objects
+   * @param guidelineCatalog the PharmGKB {@link GuidelinePackage} objects
    */
-  private void  makeGeneReports(List<GuidelinePackage> guidelinePackages) {
-    for (GuidelinePackage guidelinePackage : guidelinePackages) {
-      guidelinePackage.getGuideline().getRelatedGenes().stream()
-          .map(RelatedGene::getSymbol)
-          .distinct()
-          .forEach(s -> m_geneReports.put(s, GeneReportFactory.newReport(s)));
-    }
+  private void  makeGeneReports(GuidelineCatalog guidelineCatalog) {
+    guidelineCatalog.getGeneSymbols()
+        .forEach(s -> m_geneReports.put(s, GeneReportFactory.newReport(s)));
   }
 
   /**
@@ -111,7 +145,11 @@ private void  makeGeneReports(List<GuidelinePackage> guidelinePackages) {
   private void compileMatcherData(List<GeneCall> calls) throws Exception {
     for (GeneCall call : calls) {
       GeneReport geneReport = GeneReportFactory.newReport(call);
-      geneReport.setCallData(call);
+      if (!m_definitionReader.getGenes().contains(call.getGene())) {
+        throw new IOException("No allele definitions for " + call.getGene());
+      }
+      geneReport.setCallData(call, new VariantReportFactory(call.getGene(), call.getChromosome(),
+          m_definitionReader.getDefinitionFile(call.getGene())));
       m_geneReports.put(call.getGene(), geneReport);
 
       DiplotypeFactory diplotypeFactory = new DiplotypeFactory(
@@ -185,15 +223,19 @@ private void findMatches() {
   }
 
   /**
-   *
+   * Gets the name of the reference allele of each gene from the allele definitions.
    */
-  private void loadReferenceAlleleNames() throws IOException {
+  private void loadReferenceAlleleNames() {
     m_refAlleleForGene.put("CYP2D6", "*1");
 
+    m_definitionReader.getGenes()
+        .forEach(g -> m_refAlleleForGene.put(g, m_definitionReader.getHaplotypes(g).get(0).getName()));
+  }
+
+  private static DefinitionReader readDefaultDefinitions() throws IOException {
     DefinitionReader definitionReader = new DefinitionReader();
     definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
-    definitionReader.getGenes()
-        .forEach(g -> m_refAlleleForGene.put(g, definitionReader.getHaplotypes(g).get(0).getName()));
+    return definitionReader;
   }
 
   /**
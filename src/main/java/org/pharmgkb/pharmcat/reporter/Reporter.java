@@ -11,7 +11,6 @@
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
@@ -20,14 +19,20 @@
 import org.apache.commons.lang3.StringUtils;
 import org.pharmgkb.common.io.util.CliHelper;
 import org.pharmgkb.common.util.PathUtils;
+import org.pharmgkb.pharmcat.definition.IncidentalFinder;
+import org.pharmgkb.pharmcat.definition.PhenotypeMap;
+import org.pharmgkb.pharmcat.definition.model.GenePhenotype;
+import org.pharmgkb.pharmcat.haplotype.DefinitionReader;
+import org.pharmgkb.pharmcat.haplotype.NamedAlleleMatcher;
 import org.pharmgkb.pharmcat.haplotype.model.GeneCall;
+import org.pharmgkb.pharmcat.haplotype.model.Result;
 import org.pharmgkb.pharmcat.reporter.io.AstrolabeOutputParser;
 import org.pharmgkb.pharmcat.reporter.io.JsonFileLoader;
 import org.pharmgkb.pharmcat.reporter.io.ReportData;
 import org.pharmgkb.pharmcat.reporter.model.AstrolabeCall;
-import org.pharmgkb.pharmcat.reporter.model.GuidelinePackage;
 import org.pharmgkb.pharmcat.reporter.model.MessageAnnotation;
 import org.pharmgkb.pharmcat.util.DataManager;
+import org.pharmgkb.pharmcat.util.DefinitionBundle;
 
 
 /**
@@ -43,7 +48,11 @@ public class Reporter {
   private static final String sf_messagesFile = "org/pharmgkb/pharmcat/reporter/messages.json";
   private static final Gson sf_gson = new GsonBuilder().serializeNulls().excludeFieldsWithoutExposeAnnotation()
       .setPrettyPrinting().create();
-  private List<Path> m_annotationFiles;
+  private final GuidelineCatalog m_guidelineCatalog;
+  private final Map<String, GenePhenotype> m_genePhenotypes;
+  private final IncidentalFinder m_incidentalFinder;
+  private final String m_dataVersion;
+  private DefinitionReader m_definitionReader;
   private List<MessageAnnotation> m_messages;
   private ReportContext m_reportContext = null;
 
@@ -86,6 +95,9 @@ public static void main(String[] args) {
 
   /**
    * public constructor. start a new reporter based on annotation data found in the given <code>annotationsDir</code>.
+   * <p>
+   * The guidelines, gene phenotypes, incidental alleles and messages are all read here, so a new {@link Reporter}
+   * always has the current data and an existing one never changes.
    *
    * @param annotationsDir directory of annotation files
    */
@@ -97,12 +109,11 @@ public Reporter(@Nullable Path annotationsDir) throws IOException {
     Preconditions.checkArgument(Files.exists(annotationsDir));
     Preconditions.checkArgument(Files.isDirectory(annotationsDir));
 
-    m_annotationFiles = Files.list(annotationsDir)
-        .filter(f -> f.getFileName().toString().endsWith(".json"))
-        .collect(Collectors.toList());
-    if (m_annotationFiles.size() == 0) {
-      throw new IOException("No annotation definitions to read from");
-    }
+    // guidelines are only read once, every analysis makes its own reports from the catalog
+    m_guidelineCatalog = GuidelineCatalog.load(annotationsDir);
+    m_genePhenotypes = PhenotypeMap.readGenePhenotypes();
+    m_incidentalFinder = IncidentalFinder.read();
+    m_dataVersion = m_guidelineCatalog.getDataVersion() + "." + DefinitionBundle.readPackagedDataVersion();
 
     try (BufferedReader reader = Files.newBufferedReader(PathUtils.getPathToResource(sf_messagesFile))) {
       MessageAnnotation[] messages = new Gson().fromJson(reader, MessageAnnotation[].class);
@@ -120,12 +131,38 @@ public Reporter analyze(@Nonnull Path callFile, @Nullable Path astrolabeFile) th
     Preconditions.checkArgument(Files.exists(callFile));
     Preconditions.checkArgument(Files.isRegularFile(callFile));
 
-    //Generate class used for loading JSON into
-    JsonFileLoader loader = new JsonFileLoader();
-
     //Load the haplotype json, this is pointed at a test json and will likely break when meeting real
     // requiring some if not all rewriting
-    List<GeneCall> calls = loader.loadHaplotypeGeneCalls(callFile);
+    List<GeneCall> calls = new JsonFileLoader().loadHaplotypeGeneCalls(callFile);
+    return analyze(calls, astrolabeFile, getDefinitionReader());
+  }
+
+  /**
+   * Run the actual report process on a {@link Result} straight from the {@link NamedAlleleMatcher}, without having to
+   * go through a call file.
+   *
+   * @param result the haplotype calls
+   */
+  public Reporter analyze(@Nonnull Result result, @Nullable Path astrolabeFile) throws Exception {
+    return analyze(result, astrolabeFile, getDefinitionReader());
+  }
+
+  /**
+   * Run the actual report process on a {@link Result} straight from the {@link NamedAlleleMatcher}, using the allele
+   * definitions the matcher used so that they don't have to be read again.
+   *
+   * @param result the haplotype calls
+   * @param definitionReader the allele definitions the calls were made with
+   */
+  public Reporter analyze(@Nonnull Result result, @Nullable Path astrolabeFile,
+      @Nonnull DefinitionReader definitionReader) throws Exception {
+    Preconditions.checkNotNull(result);
+    Preconditions.checkNotNull(definitionReader);
+    return analyze(result.getGeneCalls(), astrolabeFile, definitionReader);
+  }
+
+  private Reporter analyze(@Nonnull List<GeneCall> calls, @Nullable Path astrolabeFile,
+      @Nonnull DefinitionReader definitionReader) throws Exception {
 
     //Load the astrolabe calls if it's available
     List<AstrolabeCall> astrolabeCalls = new ArrayList<>();
@@ -133,17 +170,27 @@ public Reporter analyze(@Nonnull Path callFile, @Nullable Path astrolabeFile) th
       astrolabeCalls = AstrolabeOutputParser.parse(astrolabeFile);
     }
 
-    //Load the gene drug interaction list. This currently only handles single gene-drug guidelines and will require updating to handle multi gene-drug interaction
-    List<GuidelinePackage> guidelines = loader.loadGuidelines(m_annotationFiles);
-
-    //This is the primary work flow for generating the report where calls are matched to exceptions and drug gene m_guidelineFiles based on reported haplotypes
-    m_reportContext = new ReportContext(calls, astrolabeCalls, guidelines);
+    //This is the primary work flow for generating the report where calls are matched to exceptions and drug gene guidelines based on reported haplotypes
+    m_reportContext = new ReportContext(calls, astrolabeCalls, m_guidelineCatalog, definitionReader,
+        new PhenotypeMap(m_genePhenotypes, calls), m_incidentalFinder);
 
     m_reportContext.applyMessage(m_messages);
 
     return this;
   }
 
+  /**
+   * Gets the default allele definitions, which are only read the first time they are needed.
+   */
+  private synchronized DefinitionReader getDefinitionReader() throws IOException {
+    if (m_definitionReader == null) {
+      DefinitionReader definitionReader = new DefinitionReader();
+      definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
+      m_definitionReader = definitionReader;
+    }
+    return m_definitionReader;
+  }
+
   /**
    * Print a HTML file of compiled report data
    * @param reportFile file to write output to
@@ -166,6 +213,21 @@ public void printHtml(@Nonnull Path reportFile, @Nullable String title, @Nullabl
     }
   }
 
+  /**
+   * Gets a version string identifying the data this reporter applies: a hash of the guideline files, followed by a hash
+   * of the gene phenotypes and incidental alleles files.
+   */
+  public @Nonnull String getDataVersion() {
+    return m_dataVersion;
+  }
+
+  /**
+   * Gets the guidelines this reporter applies.
+   */
+  public GuidelineCatalog getGuidelineCatalog() {
+    return m_guidelineCatalog;
+  }
+
   public ReportContext getContext() {
     return m_reportContext;
   }
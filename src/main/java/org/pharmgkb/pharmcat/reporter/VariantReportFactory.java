@@ -1,6 +1,5 @@
 package org.pharmgkb.pharmcat.reporter;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -9,13 +8,14 @@
 import java.util.Comparator;
 import java.util.Map;
 import java.util.TreeMap;
+import javax.annotation.Nullable;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.TreeMultimap;
-import com.google.gson.Gson;
 import org.pharmgkb.common.comparator.HaplotypeNameComparator;
 import org.pharmgkb.pharmcat.definition.model.DefinitionFile;
 import org.pharmgkb.pharmcat.definition.model.NamedAllele;
 import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.haplotype.DefinitionReader;
 import org.pharmgkb.pharmcat.haplotype.model.Variant;
 import org.pharmgkb.pharmcat.reporter.model.VariantReport;
 import org.pharmgkb.pharmcat.util.DataManager;
@@ -43,23 +43,19 @@ public class VariantReportFactory {
    * @throws IOException can occur from writing the JSON file
    */
   public VariantReportFactory(String gene, String chr) throws IOException {
+    this(gene, chr, readDefinitionFile(gene));
+  }
+
+  /**
+   * Create a new factory for the specified <code>gene</code> (HGNC symbol) from an allele definition that has already
+   * been read (e.g. by the {@link DefinitionReader} the matcher used), so no files need to be read.
+   * @param gene a gene's HGNC symbol
+   * @param definitionFile the allele definitions for the gene
+   */
+  public VariantReportFactory(String gene, String chr, @Nullable DefinitionFile definitionFile) {
     m_gene = gene;
     m_chr = chr;
 
-    Gson gson = new Gson();
-
-    Path definitionPath = DataManager.DEFAULT_DEFINITION_DIR.resolve(gene+"_translation.json");
-
-    if (!Files.isRegularFile(definitionPath)) {
-      throw new FileNotFoundException("No allele definition files exists for " + gene + "; " + definitionPath);
-    }
-
-    DefinitionFile definitionFile;
-    try (BufferedReader reader = Files.newBufferedReader(definitionPath)) {
-      definitionFile = gson.fromJson(reader, DefinitionFile.class);
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
     if (definitionFile == null) {
       return;
     }
@@ -67,7 +63,9 @@ public VariantReportFactory(String gene, String chr) throws IOException {
     VariantLocus[] allVariants = definitionFile.getVariants();
 
     NamedAllele wildNamedAllele = definitionFile.getNamedAlleles().get(0);
-    wildNamedAllele.initialize(definitionFile.getVariants());
+    if (!wildNamedAllele.isFrozen()) {
+      wildNamedAllele.initialize(definitionFile.getVariants());
+    }
     for (VariantLocus v : allVariants) {
       m_wildAlleleMap.put(v.getPosition(), wildNamedAllele.getAllele(v));
     }
@@ -88,6 +86,19 @@ public VariantReportFactory(String gene, String chr) throws IOException {
     }
   }
 
+  private static DefinitionFile readDefinitionFile(String gene) throws IOException {
+
+    Path definitionPath = DataManager.DEFAULT_DEFINITION_DIR.resolve(gene+"_translation.json");
+
+    if (!Files.isRegularFile(definitionPath)) {
+      throw new FileNotFoundException("No allele definition files exists for " + gene + "; " + definitionPath);
+    }
+
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(definitionPath);
+    return definitionReader.getDefinitionFile(gene);
+  }
+
   /**
    * Make a new {@link VariantReport} based on information found in the matcher's {@link Variant} class.
    * @param variant a {@link Variant} from the matcher
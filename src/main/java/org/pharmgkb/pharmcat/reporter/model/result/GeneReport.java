@@ -48,6 +48,7 @@ public class GeneReport implements Comparable<GeneReport> {
   private List<VariantReport> m_variantOfInterestReports = new ArrayList<>();
   private boolean m_phased = false;
   private List<String> m_highlightedVariants = new ArrayList<>();
+  private String m_uncalledReason;
 
   /**
    * public constructor
@@ -61,13 +62,22 @@ public GeneReport(@Nonnull String geneSymbol) {
    * @param call a {@link GeneCall} that has been made by the {@link NamedAlleleMatcher}
    */
   public void setCallData(@Nonnull GeneCall call) throws IOException {
+    setCallData(call, new VariantReportFactory(call.getGene(), call.getChromosome()));
+  }
+
+  /**
+   * Sets data in this report based on data found in a {@link GeneCall}
+   * @param call a {@link GeneCall} that has been made by the {@link NamedAlleleMatcher}
+   * @param variantReportFactory the factory for the called gene's {@link VariantReport} objects
+   */
+  public void setCallData(@Nonnull GeneCall call, @Nonnull VariantReportFactory variantReportFactory) {
     m_gene = call.getGene();
     m_chr = call.getChromosome();
     m_uncalledHaplotypes = new TreeSet<>(HaplotypeNameComparator.getComparator());
     m_uncalledHaplotypes.addAll(call.getUncallableHaplotypes());
     m_phased = call.isPhased();
+    m_uncalledReason = call.getUncalledReason();
 
-    VariantReportFactory variantReportFactory = new VariantReportFactory(m_gene, m_chr);
     call.getVariants().stream()
         .map(variantReportFactory::make).forEach(a -> m_variantReports.add(a));
     call.getMatchData().getMissingPositions().stream()
@@ -274,6 +284,9 @@ public Collection<String> printDisplayCalls() {
       if (sf_overrideDiplotypes.contains(getGene()) && !m_reporterDiplotypes.isEmpty()) {
         return m_reporterDiplotypes.stream().sorted().map(Diplotype::printDisplay).collect(Collectors.toList());
       }
+      if (m_uncalledReason != null) {
+        return ImmutableList.of(UNCALLED + ": " + m_uncalledReason);
+      }
       return ImmutableList.of(UNCALLED);
     }
     else if (m_gene.equals("UGT1A1") && !isPhased()) {
@@ -44,6 +44,8 @@ public class GuidelineReport implements Comparable<GuidelineReport> {
   private static final List<String> sf_notApplicableMatches = ImmutableList.of("PA166104949");
 
   private DosingGuideline m_dosingGuideline;
+  private final Set<String> m_relatedGeneSymbols;
+  private final Set<String> m_relatedDrugs;
   private List<Group> m_groups;
   private Set<Group> m_matchingGroups;
   private Multimap<String,String> m_matchedDiplotypes = TreeMultimap.create();
@@ -58,7 +60,21 @@ public class GuidelineReport implements Comparable<GuidelineReport> {
   private Date m_lastModified;
 
   public GuidelineReport(GuidelinePackage guidelinePackage){
+    this(guidelinePackage,
+        guidelinePackage.getGuideline().getRelatedGenes().stream()
+            .map(RelatedGene::getSymbol).collect(Collectors.toSet()),
+        guidelinePackage.getGuideline().getRelatedChemicals().stream()
+            .map(RelatedChemical::getName).collect(Collectors.toSet()));
+  }
+
+  /**
+   * Constructor for when the related genes and drugs of the guideline have already been computed (e.g. by a
+   * {@link org.pharmgkb.pharmcat.reporter.GuidelineCatalog}).
+   */
+  public GuidelineReport(GuidelinePackage guidelinePackage, Set<String> relatedGeneSymbols, Set<String> relatedDrugs) {
     m_dosingGuideline = guidelinePackage.getGuideline();
+    m_relatedGeneSymbols = Collections.unmodifiableSet(relatedGeneSymbols);
+    m_relatedDrugs = Collections.unmodifiableSet(relatedDrugs);
     m_groups = guidelinePackage.getGroups();
     m_phenotypeMap = guidelinePackage.getPhenotypeMap();
     m_citations.addAll(guidelinePackage.getCitations());
@@ -85,13 +101,14 @@ public String getId() {
    * Gets just the symbols of the related genes of the guideline. Calculated from data in the original guideline.
    */
   public Set<String> getRelatedGeneSymbols() {
-    return m_dosingGuideline.getRelatedGenes().stream()
-        .map(RelatedGene::getSymbol).collect(Collectors.toSet());
+    return m_relatedGeneSymbols;
   }
 
+  /**
+   * Gets just the names of the related drugs of the guideline.
+   */
   public Set<String> getRelatedDrugs() {
-    return m_dosingGuideline.getRelatedChemicals().stream()
-        .map(RelatedChemical::getName).collect(Collectors.toSet());
+    return m_relatedDrugs;
   }
 
   /**
@@ -0,0 +1,417 @@
+package org.pharmgkb.pharmcat.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javax.annotation.Nonnull;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+
+/**
+ * An {@link InputStream} that decompresses BGZF (blocked GNU zip format) data, as produced by {@code bgzip}.
+ * <p>
+ * A BGZF file is a series of independently compressed gzip blocks, each holding at most 64KB of data.  When given
+ * more than one thread, this stream inflates blocks ahead of the reader on a small pool of worker threads, while still
+ * returning data in file order.
+ * <p>
+ * Positions within the file are expressed as BGZF virtual offsets (the compressed offset of the block in the upper 48
+ * bits and the offset within the uncompressed block in the lower 16 bits), which is what tabix and CSI indexes use.
+ *
+ * @author Mark Woon
+ */
+public class BgzfInputStream extends InputStream {
+  private static final int sf_fixedHeaderSize = 12;
+  private static final int sf_footerSize = 8;
+  private final SeekableByteChannel m_channel;
+  private final ExecutorService m_executor;
+  private final int m_readAhead;
+  private final Deque<Block> m_pending = new ArrayDeque<>();
+  private long m_nextBlockAddress;
+  private long m_blockAddress;
+  private byte[] m_block = new byte[0];
+  private int m_blockOffset;
+  private boolean m_eof;
+
+
+  /**
+   * Constructor for single-threaded decompression.
+   */
+  public BgzfInputStream(@Nonnull SeekableByteChannel channel) {
+    this(channel, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param numThreads the number of threads to inflate blocks with
+   */
+  public BgzfInputStream(@Nonnull SeekableByteChannel channel, int numThreads) {
+    Preconditions.checkNotNull(channel);
+    m_channel = channel;
+    if (numThreads > 1) {
+      m_executor = Executors.newFixedThreadPool(numThreads,
+          new ThreadFactoryBuilder().setDaemon(true).setNameFormat("bgzf-%d").build());
+      m_readAhead = numThreads * 2;
+    } else {
+      m_executor = null;
+      m_readAhead = 1;
+    }
+  }
+
+
+  /**
+   * Checks if the given file is in BGZF format (as opposed to plain gzip or uncompressed).
+   */
+  public static boolean isBgzf(@Nonnull Path file) throws IOException {
+
+    try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+      ByteBuffer buffer = ByteBuffer.allocate(18);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) == -1) {
+          return false;
+        }
+      }
+      byte[] header = buffer.array();
+      return isGzipHeader(header) && (header[3] & 0x04) != 0 && readShort(header, 10) >= 6 &&
+          findBlockSize(header, sf_fixedHeaderSize, readShort(header, 10)) != -1;
+    }
+  }
+
+
+  @Override
+  public int read() throws IOException {
+
+    if (m_blockOffset >= m_block.length && !nextBlock()) {
+      return -1;
+    }
+    return m_block[m_blockOffset++] & 0xff;
+  }
+
+  @Override
+  public int read(@Nonnull byte[] buffer, int offset, int length) throws IOException {
+
+    if (length == 0) {
+      return 0;
+    }
+    if (m_blockOffset >= m_block.length && !nextBlock()) {
+      return -1;
+    }
+    int numRead = Math.min(length, m_block.length - m_blockOffset);
+    System.arraycopy(m_block, m_blockOffset, buffer, offset, numRead);
+    m_blockOffset += numRead;
+    return numRead;
+  }
+
+  @Override
+  public int available() {
+    return m_block.length - m_blockOffset;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    m_pending.forEach(b -> b.data.cancel(true));
+    m_pending.clear();
+    if (m_executor != null) {
+      m_executor.shutdownNow();
+    }
+    m_channel.close();
+  }
+
+
+  /**
+   * Gets the virtual offset of the next byte to be read.
+   */
+  public long getVirtualOffset() throws IOException {
+
+    if (m_blockOffset >= m_block.length && !nextBlock()) {
+      return m_nextBlockAddress << 16;
+    }
+    return (m_blockAddress << 16) | m_blockOffset;
+  }
+
+
+  /**
+   * Moves to the given virtual offset.
+   */
+  public void seek(long virtualOffset) throws IOException {
+
+    long address = virtualOffset >>> 16;
+    int offset = (int)(virtualOffset & 0xffff);
+    if (address == m_blockAddress && m_block.length > 0 && offset <= m_block.length) {
+      m_blockOffset = offset;
+      return;
+    }
+
+    m_pending.forEach(b -> b.data.cancel(true));
+    m_pending.clear();
+    m_channel.position(address);
+    m_nextBlockAddress = address;
+    m_eof = false;
+    m_block = new byte[0];
+    m_blockOffset = 0;
+    if (!nextBlock()) {
+      if (offset != 0) {
+        throw new EOFException("Cannot seek past end of BGZF file");
+      }
+      return;
+    }
+    if ((m_blockAddress != address && offset != 0) || offset > m_block.length) {
+      throw new IOException("Invalid BGZF virtual offset: " + virtualOffset);
+    }
+    m_blockOffset = offset;
+  }
+
+
+  /**
+   * Gets a stream that reads the data between two virtual offsets.
+   * Reading starts by seeking to {@code start}, so this should only be used when the returned stream is the sole reader
+   * of this {@link BgzfInputStream}.  Closing the returned stream does not close this one.
+   *
+   * @param start the virtual offset to start reading at (inclusive)
+   * @param end the virtual offset to stop reading at (exclusive)
+   */
+  public InputStream region(long start, long end) {
+
+    return new InputStream() {
+      private boolean m_started;
+
+      @Override
+      public int read() throws IOException {
+        byte[] data = new byte[1];
+        int rez = read(data, 0, 1);
+        return rez == -1 ? -1 : data[0] & 0xff;
+      }
+
+      @Override
+      public int read(@Nonnull byte[] buffer, int offset, int length) throws IOException {
+        if (!m_started) {
+          seek(start);
+          m_started = true;
+        }
+        if (Long.compareUnsigned(getVirtualOffset(), end) >= 0 || m_blockOffset >= m_block.length) {
+          return -1;
+        }
+        int max = length;
+        if (m_blockAddress == end >>> 16) {
+          max = Math.min(max, (int)(end & 0xffff) - m_blockOffset);
+        }
+        return BgzfInputStream.this.read(buffer, offset, max);
+      }
+    };
+  }
+
+
+  /**
+   * Moves on to the next block with data.
+   *
+   * @return false if there are no more blocks
+   */
+  private boolean nextBlock() throws IOException {
+
+    while (true) {
+      fill();
+      if (m_pending.isEmpty()) {
+        return false;
+      }
+      Block block = m_pending.removeFirst();
+      m_block = getBlock(block.data);
+      m_blockAddress = block.address;
+      m_blockOffset = 0;
+      if (m_block.length > 0) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Queues up blocks for decompression.
+   */
+  private void fill() throws IOException {
+
+    while (!m_eof && m_pending.size() < m_readAhead) {
+      long address = m_nextBlockAddress;
+      byte[] rawBlock = readRawBlock();
+      if (rawBlock == null) {
+        m_eof = true;
+        continue;
+      }
+      m_nextBlockAddress += rawBlock.length;
+      if (m_executor != null) {
+        m_pending.add(new Block(address, m_executor.submit(() -> inflate(rawBlock))));
+      } else {
+        m_pending.add(new Block(address, CompletableFuture.completedFuture(inflate(rawBlock))));
+      }
+    }
+  }
+
+  private byte[] getBlock(Future<byte[]> future) throws IOException {
+
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while inflating BGZF block");
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException)ex.getCause();
+      }
+      throw new IOException("Error inflating BGZF block", ex.getCause());
+    }
+  }
+
+
+  /**
+   * Reads the next compressed block.
+   *
+   * @return the entire compressed block (including header and footer), or null if there are no more blocks
+   */
+  private byte[] readRawBlock() throws IOException {
+
+    ByteBuffer header = ByteBuffer.allocate(sf_fixedHeaderSize);
+    if (!readFully(header, true)) {
+      return null;
+    }
+    byte[] fixedHeader = header.array();
+    if (!isGzipHeader(fixedHeader) || (fixedHeader[3] & 0x04) == 0) {
+      throw new IOException("Invalid BGZF block header");
+    }
+    int xlen = readShort(fixedHeader, 10);
+    ByteBuffer extra = ByteBuffer.allocate(xlen);
+    readFully(extra, false);
+    int blockSize = findBlockSize(extra.array(), 0, xlen);
+    if (blockSize == -1) {
+      throw new IOException("Invalid BGZF block header: missing block size");
+    }
+
+    byte[] block = new byte[blockSize];
+    System.arraycopy(fixedHeader, 0, block, 0, sf_fixedHeaderSize);
+    System.arraycopy(extra.array(), 0, block, sf_fixedHeaderSize, xlen);
+    readFully(ByteBuffer.wrap(block, sf_fixedHeaderSize + xlen, blockSize - sf_fixedHeaderSize - xlen), false);
+    return block;
+  }
+
+  /**
+   * Fills the buffer from the channel.
+   *
+   * @param allowEof true if reaching end of file before any data is read is okay
+   * @return false if end of file was reached before any data was read
+   */
+  private boolean readFully(ByteBuffer buffer, boolean allowEof) throws IOException {
+
+    boolean readSomething = false;
+    while (buffer.hasRemaining()) {
+      if (m_channel.read(buffer) == -1) {
+        if (allowEof && !readSomething) {
+          return false;
+        }
+        throw new EOFException("Unexpected end of BGZF file");
+      }
+      readSomething = true;
+    }
+    return true;
+  }
+
+
+  /**
+   * Inflates a single compressed block.
+   */
+  private static byte[] inflate(byte[] block) throws IOException {
+
+    int xlen = readShort(block, 10);
+    int dataStart = sf_fixedHeaderSize + xlen;
+    int dataLength = block.length - dataStart - sf_footerSize;
+    int expectedCrc = readInt(block, block.length - 8);
+    int size = readInt(block, block.length - 4);
+
+    byte[] data = new byte[size];
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(block, dataStart, dataLength);
+      int numInflated = 0;
+      while (numInflated < size && !inflater.finished()) {
+        int n = inflater.inflate(data, numInflated, size - numInflated);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        numInflated += n;
+      }
+      if (numInflated != size) {
+        throw new IOException("Corrupt BGZF block: expected " + size + " bytes but got " + numInflated);
+      }
+    } catch (DataFormatException ex) {
+      throw new IOException("Corrupt BGZF block", ex);
+    } finally {
+      inflater.end();
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(data, 0, size);
+    if ((int)crc.getValue() != expectedCrc) {
+      throw new IOException("Corrupt BGZF block: CRC mismatch");
+    }
+    return data;
+  }
+
+
+  private static boolean isGzipHeader(byte[] header) {
+    return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8;
+  }
+
+  /**
+   * Finds the BGZF block size from the gzip extra field.
+   *
+   * @return the total size of the block, or -1 if the extra field does not have a BGZF subfield
+   */
+  private static int findBlockSize(byte[] data, int offset, int xlen) {
+
+    int x = offset;
+    int end = Math.min(data.length, offset + xlen);
+    while (x + 4 <= end) {
+      int subfieldLength = readShort(data, x + 2);
+      if (data[x] == 'B' && data[x + 1] == 'C' && subfieldLength == 2 && x + 6 <= end) {
+        return readShort(data, x + 4) + 1;
+      }
+      x += 4 + subfieldLength;
+    }
+    return -1;
+  }
+
+  private static int readShort(byte[] data, int offset) {
+    return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8);
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return readShort(data, offset) | (readShort(data, offset + 2) << 16);
+  }
+
+
+  /**
+   * A block that has been read and queued for inflation.
+   */
+  private static class Block {
+    private final long address;
+    private final Future<byte[]> data;
+
+    private Block(long address, Future<byte[]> data) {
+      this.address = address;
+      this.data = data;
+    }
+  }
+}
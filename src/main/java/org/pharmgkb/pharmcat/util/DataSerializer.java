@@ -3,6 +3,7 @@
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -58,14 +59,20 @@ public DefinitionFile deserializeDefinitionsFromJson(@Nonnull Path jsonFile) thr
     Preconditions.checkArgument(Files.isRegularFile(jsonFile), "%s is not a file", jsonFile);
 
     try (BufferedReader reader = Files.newBufferedReader(jsonFile, StandardCharsets.UTF_8)) {
-      DefinitionFile definitionFile = sf_gson.fromJson(reader, DefinitionFile.class);
-      for (NamedAllele namedAllele : definitionFile.getNamedAlleles()) {
-        namedAllele.initialize(definitionFile.getVariants());
-      }
-      return definitionFile;
+      return deserializeDefinitionsFromJson(reader);
     }
   }
 
+  public DefinitionFile deserializeDefinitionsFromJson(@Nonnull Reader reader) {
+    Preconditions.checkNotNull(reader);
+
+    DefinitionFile definitionFile = sf_gson.fromJson(reader, DefinitionFile.class);
+    for (NamedAllele namedAllele : definitionFile.getNamedAlleles()) {
+      namedAllele.initialize(definitionFile.getVariants());
+    }
+    return definitionFile;
+  }
+
 
   public Set<DefinitionExemption> deserializeExemptionsFromJson(@Nonnull Path jsonFile) throws IOException {
     Preconditions.checkNotNull(jsonFile);
@@ -73,11 +80,17 @@ public Set<DefinitionExemption> deserializeExemptionsFromJson(@Nonnull Path json
     Preconditions.checkArgument(Files.isRegularFile(jsonFile), "%s is not a file", jsonFile);
 
     try (BufferedReader reader = Files.newBufferedReader(jsonFile, StandardCharsets.UTF_8)) {
-      DefinitionExemption[] exemptions = sf_gson.fromJson(reader, DefinitionExemption[].class);
-      return Sets.newHashSet(exemptions);
+      return deserializeExemptionsFromJson(reader);
     }
   }
 
+  public Set<DefinitionExemption> deserializeExemptionsFromJson(@Nonnull Reader reader) {
+    Preconditions.checkNotNull(reader);
+
+    DefinitionExemption[] exemptions = sf_gson.fromJson(reader, DefinitionExemption[].class);
+    return Sets.newHashSet(exemptions);
+  }
+
   public Set<DefinitionExemption> deserializeExemptionsFromTsv(@Nonnull Path tsvFile) throws IOException {
     Preconditions.checkNotNull(tsvFile);
     Preconditions.checkArgument(tsvFile.toString().endsWith(".tsv"), "Invalid format: %s does not end with .tsv", tsvFile);
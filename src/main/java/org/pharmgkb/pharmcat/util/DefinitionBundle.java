@@ -0,0 +1,454 @@
+package org.pharmgkb.pharmcat.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import com.google.common.base.Preconditions;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.io.IOUtils;
+import org.pharmgkb.common.io.util.CliHelper;
+import org.pharmgkb.pharmcat.definition.model.DefinitionExemption;
+import org.pharmgkb.pharmcat.definition.model.DefinitionFile;
+import org.pharmgkb.pharmcat.definition.model.GenePhenotype;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A single file bundling all the data files needed to call and report on a sample: the allele definitions, the
+ * exemptions, the gene phenotypes and the incidental alleles.
+ * <p>
+ * Entries hold the parsed data model in a compact binary form (see {@link DefinitionBundleCodec}) rather than JSON, so
+ * loading a bundle needs no Gson, and one memory-mapped file replaces listing and opening a directory of files.  This
+ * matters for short-lived JVMs that only process a single sample.  The bundle is built at build time (see
+ * {@link #main(String[])}).
+ * <p>
+ * Each entry records the CRC32 of the JSON file it was compiled from.  An entry is only used if that still matches the
+ * JSON file's current content; otherwise (or if the bundle fails its checksum) the JSON file is read instead.
+ * <p>
+ * Format (big-endian):
+ * <pre>
+ *   magic        8 bytes ("PCATBNDL")
+ *   version      int
+ *   numEntries   int
+ *   checksum     long (CRC32 of the entries)
+ *   entries      numEntries x (name: modified UTF-8 string, source checksum: long, length: int, data: bytes)
+ * </pre>
+ *
+ * @author Mark Woon
+ */
+@ThreadSafe
+public class DefinitionBundle {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  public static final String FILE_NAME = "definitions.bundle";
+  public static final String PHENOTYPES_JSON_FILE_NAME = "gene.phenotypes.json";
+  public static final String INCIDENTAL_JSON_FILE_NAME = "incidental.alleles.json";
+  // where the gene phenotypes and incidental alleles are packaged
+  private static final String sf_packagedDataDir = "/org/pharmgkb/pharmcat/definition/";
+  private static final byte[] sf_magic = "PCATBNDL".getBytes(StandardCharsets.US_ASCII);
+  private static final int sf_formatVersion = 2;
+  private static final int sf_headerSize = sf_magic.length + 4 + 4 + 8;
+  private final Path m_file;
+  // name -> data
+  private final Map<String, ByteBuffer> m_entries;
+  // name -> CRC32 of source JSON file
+  private final Map<String, Long> m_sourceChecksums;
+
+
+  private DefinitionBundle(@Nonnull Path file, @Nonnull Map<String, ByteBuffer> entries,
+      @Nonnull Map<String, Long> sourceChecksums) {
+    m_file = file;
+    m_entries = Collections.unmodifiableMap(entries);
+    m_sourceChecksums = Collections.unmodifiableMap(sourceChecksums);
+  }
+
+
+  public static void main(String[] args) {
+
+    try {
+      CliHelper cliHelper = new CliHelper(MethodHandles.lookup().lookupClass())
+          .addOption("d", "definition-dir", "directory of allele definition files", false, "d")
+          .addOption("o", "output-file", "bundle file to write", true, "o");
+
+      if (!cliHelper.parse(args)) {
+        System.exit(1);
+      }
+
+      Path definitionDir = DataManager.DEFAULT_DEFINITION_DIR;
+      if (cliHelper.hasOption("d")) {
+        definitionDir = cliHelper.getValidDirectory("d", false);
+      }
+      Path bundleFile = cliHelper.getPath("o");
+      if (bundleFile.getParent() != null) {
+        Files.createDirectories(bundleFile.getParent());
+      }
+      write(definitionDir, bundleFile);
+
+    } catch (Exception ex) {
+      ex.printStackTrace();
+    }
+  }
+
+
+  /**
+   * Writes a bundle for the allele definitions and exemptions in the given directory, along with the gene phenotypes
+   * and incidental alleles packaged with PharmCAT.
+   */
+  public static void write(@Nonnull Path definitionDir, @Nonnull Path bundleFile) throws IOException {
+    Preconditions.checkArgument(Files.isDirectory(definitionDir), "Not a directory: %s", definitionDir);
+
+    DataSerializer dataSerializer = new DataSerializer();
+    ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+    int numEntries = 0;
+    try (DataOutputStream out = new DataOutputStream(entryBytes)) {
+      List<Path> files = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(definitionDir, DefinitionBundle::isBundledFile)) {
+        stream.forEach(files::add);
+      }
+      for (Path file : files) {
+        byte[] json = Files.readAllBytes(file);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        try (DataOutputStream dataOut = new DataOutputStream(data)) {
+          if (isDefinitionFile(file)) {
+            DefinitionBundleCodec.writeDefinitionFile(dataOut,
+                dataSerializer.deserializeDefinitionsFromJson(new StringReader(decode(json))));
+          } else {
+            DefinitionBundleCodec.writeExemptions(dataOut,
+                dataSerializer.deserializeExemptionsFromJson(new StringReader(decode(json))));
+          }
+        }
+        writeEntry(out, file.getFileName().toString(), json, data.toByteArray());
+        numEntries += 1;
+      }
+
+      byte[] json = readPackagedFile(PHENOTYPES_JSON_FILE_NAME);
+      ByteArrayOutputStream data = new ByteArrayOutputStream();
+      try (DataOutputStream dataOut = new DataOutputStream(data)) {
+        DefinitionBundleCodec.writeGenePhenotypes(dataOut, parseGenePhenotypes(json));
+      }
+      writeEntry(out, PHENOTYPES_JSON_FILE_NAME, json, data.toByteArray());
+      numEntries += 1;
+
+      json = readPackagedFile(INCIDENTAL_JSON_FILE_NAME);
+      data = new ByteArrayOutputStream();
+      try (DataOutputStream dataOut = new DataOutputStream(data)) {
+        DefinitionBundleCodec.writeIncidentalAlleles(dataOut, parseIncidentalAlleles(json));
+      }
+      writeEntry(out, INCIDENTAL_JSON_FILE_NAME, json, data.toByteArray());
+      numEntries += 1;
+    }
+    byte[] data = entryBytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(data);
+
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(bundleFile))) {
+      out.write(sf_magic);
+      out.writeInt(sf_formatVersion);
+      out.writeInt(numEntries);
+      out.writeLong(crc.getValue());
+      out.write(data);
+    }
+    sf_logger.info("Wrote {} entries to {}", numEntries, bundleFile);
+  }
+
+  private static void writeEntry(@Nonnull DataOutputStream out, @Nonnull String name, @Nonnull byte[] json,
+      @Nonnull byte[] data) throws IOException {
+    out.writeUTF(name);
+    out.writeLong(checksum(json));
+    out.writeInt(data.length);
+    out.write(data);
+  }
+
+
+  /**
+   * Reads a bundle.
+   *
+   * @throws IOException if the file cannot be read or is not a valid bundle
+   */
+  public static @Nonnull DefinitionBundle read(@Nonnull Path bundleFile) throws IOException {
+    Preconditions.checkArgument(Files.isRegularFile(bundleFile), "%s is not a file", bundleFile);
+
+    ByteBuffer buffer;
+    if (bundleFile.getFileSystem() == FileSystems.getDefault()) {
+      try (FileChannel channel = FileChannel.open(bundleFile, StandardOpenOption.READ)) {
+        // mapping remains valid after the channel is closed
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+    } else {
+      // other file systems (e.g. zipfs, when running from the jar) cannot be memory-mapped
+      buffer = ByteBuffer.wrap(Files.readAllBytes(bundleFile));
+    }
+    if (buffer.remaining() < sf_headerSize) {
+      throw new IOException(bundleFile + " is not a definition bundle");
+    }
+    byte[] magic = new byte[sf_magic.length];
+    buffer.get(magic);
+    int version = buffer.getInt();
+    if (!Arrays.equals(sf_magic, magic)) {
+      throw new IOException(bundleFile + " is not a definition bundle");
+    }
+    if (version != sf_formatVersion) {
+      throw new IOException(bundleFile + " uses unsupported format version " + version);
+    }
+    int numEntries = buffer.getInt();
+    long checksum = buffer.getLong();
+
+    CRC32 crc = new CRC32();
+    crc.update(buffer.duplicate());
+    if (crc.getValue() != checksum) {
+      throw new IOException(bundleFile + " is corrupt (checksum mismatch)");
+    }
+
+    Map<String, ByteBuffer> entries = new LinkedHashMap<>();
+    Map<String, Long> sourceChecksums = new HashMap<>();
+    try {
+      for (int x = 0; x < numEntries; x += 1) {
+        byte[] nameBytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(nameBytes);
+        // writeUTF uses modified UTF-8, which is the same as UTF-8 for the names we use
+        String name = new String(nameBytes, StandardCharsets.UTF_8);
+        sourceChecksums.put(name, buffer.getLong());
+        int length = buffer.getInt();
+        ByteBuffer entry = buffer.slice();
+        entry.limit(length);
+        buffer.position(buffer.position() + length);
+        entries.put(name, entry.asReadOnlyBuffer());
+      }
+    } catch (RuntimeException ex) {
+      throw new IOException(bundleFile + " is corrupt", ex);
+    }
+    return new DefinitionBundle(bundleFile, entries, sourceChecksums);
+  }
+
+
+  /**
+   * Looks for an up-to-date, valid bundle in the given definition directory.
+   * <p>
+   * The bundle is only up to date if it has an entry for every allele definition and exemption file in the directory
+   * (and nothing else), each compiled from exactly the file's current content.
+   *
+   * @return the bundle, or null if there isn't one that can be used (in which case the JSON files should be read)
+   */
+  public static @Nullable DefinitionBundle forDirectory(@Nonnull Path definitionDir) {
+
+    Path bundleFile = definitionDir.resolve(FILE_NAME);
+    if (!Files.isRegularFile(bundleFile)) {
+      return null;
+    }
+    try {
+      return checkCurrent(definitionDir, bundleFile, read(bundleFile));
+    } catch (IOException | RuntimeException ex) {
+      // the bundle is only an optimization, any problem with it just means reading the JSON files
+      sf_logger.warn("Ignoring {}: {}", bundleFile, ex.toString());
+      return null;
+    }
+  }
+
+  private static @Nullable DefinitionBundle checkCurrent(@Nonnull Path definitionDir, @Nonnull Path bundleFile,
+      @Nonnull DefinitionBundle bundle) throws IOException {
+
+    Set<String> expected = new HashSet<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(definitionDir, DefinitionBundle::isBundledFile)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        if (!bundle.isCurrent(name, Files.readAllBytes(file))) {
+          sf_logger.warn("Ignoring {}: {} has changed", bundleFile, name);
+          return null;
+        }
+        expected.add(name);
+      }
+    }
+    for (String name : bundle.getNames()) {
+      if (isBundledFile(Paths.get(name)) && !expected.contains(name)) {
+        sf_logger.warn("Ignoring {}: {} no longer exists", bundleFile, name);
+        return null;
+      }
+    }
+    return bundle;
+  }
+
+
+  /**
+   * Reads the gene phenotypes packaged with PharmCAT, from the default bundle if it is up to date or from the JSON
+   * file otherwise.
+   */
+  public static @Nonnull List<GenePhenotype> readPackagedGenePhenotypes() throws IOException {
+
+    byte[] json = readPackagedFile(PHENOTYPES_JSON_FILE_NAME);
+    DefinitionBundle bundle = DefaultBundleHolder.BUNDLE;
+    if (bundle != null && bundle.isCurrent(PHENOTYPES_JSON_FILE_NAME, json)) {
+      return DefinitionBundleCodec.readGenePhenotypes(bundle.getData(PHENOTYPES_JSON_FILE_NAME));
+    }
+    return parseGenePhenotypes(json);
+  }
+
+  /**
+   * Reads the incidental alleles (gene symbol to allele names) packaged with PharmCAT, from the default bundle if it is
+   * up to date or from the JSON file otherwise.
+   */
+  public static @Nonnull Map<String, List<String>> readPackagedIncidentalAlleles() throws IOException {
+
+    byte[] json = readPackagedFile(INCIDENTAL_JSON_FILE_NAME);
+    DefinitionBundle bundle = DefaultBundleHolder.BUNDLE;
+    if (bundle != null && bundle.isCurrent(INCIDENTAL_JSON_FILE_NAME, json)) {
+      return DefinitionBundleCodec.readIncidentalAlleles(bundle.getData(INCIDENTAL_JSON_FILE_NAME));
+    }
+    return parseIncidentalAlleles(json);
+  }
+
+  /**
+   * Gets a version string identifying the packaged gene phenotypes and incidental alleles (the CRC32 of both files).
+   */
+  public static @Nonnull String readPackagedDataVersion() throws IOException {
+
+    CRC32 crc = new CRC32();
+    crc.update(readPackagedFile(PHENOTYPES_JSON_FILE_NAME));
+    crc.update(readPackagedFile(INCIDENTAL_JSON_FILE_NAME));
+    return String.format("%08x", crc.getValue());
+  }
+
+  private static byte[] readPackagedFile(@Nonnull String name) throws IOException {
+    try (InputStream in = DefinitionBundle.class.getResourceAsStream(sf_packagedDataDir + name)) {
+      if (in == null) {
+        throw new IOException("Cannot find " + name);
+      }
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  private static List<GenePhenotype> parseGenePhenotypes(@Nonnull byte[] json) {
+    return Arrays.asList(new Gson().fromJson(decode(json), GenePhenotype[].class));
+  }
+
+  private static Map<String, List<String>> parseIncidentalAlleles(@Nonnull byte[] json) {
+    return new Gson().fromJson(decode(json), new TypeToken<Map<String, List<String>>>(){}.getType());
+  }
+
+  /**
+   * Lazily loads the bundle in {@link DataManager#DEFAULT_DEFINITION_DIR}.
+   * <p>
+   * This is never reloaded, but its entries are only used while they match the packaged files, so changes to those
+   * files are always picked up (they are just parsed from JSON until the bundle is rebuilt and PharmCAT restarted).
+   */
+  private static class DefaultBundleHolder {
+    private static final DefinitionBundle BUNDLE = loadDefault();
+
+    private static DefinitionBundle loadDefault() {
+      try {
+        Path bundleFile = DataManager.DEFAULT_DEFINITION_DIR.resolve(FILE_NAME);
+        if (!Files.isRegularFile(bundleFile)) {
+          return null;
+        }
+        return read(bundleFile);
+      } catch (IOException | RuntimeException ex) {
+        // this is in a static initializer, so never let anything escape
+        sf_logger.warn("Cannot read default definition bundle", ex);
+        return null;
+      }
+    }
+  }
+
+
+  /**
+   * Checks if the given file is an allele definition file.
+   */
+  public static boolean isDefinitionFile(@Nonnull Path file) {
+    return file.getFileName().toString().endsWith("_translation.json");
+  }
+
+  /**
+   * Checks if the given file is one that gets bundled from a definition directory.
+   */
+  private static boolean isBundledFile(@Nonnull Path file) {
+    return isDefinitionFile(file) || file.getFileName().toString().equals(DataManager.EXEMPTIONS_JSON_FILE_NAME);
+  }
+
+  private static long checksum(@Nonnull byte[] data) {
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    return crc.getValue();
+  }
+
+  private static String decode(@Nonnull byte[] json) {
+    return new String(json, StandardCharsets.UTF_8);
+  }
+
+
+  public @Nonnull Path getFile() {
+    return m_file;
+  }
+
+  /**
+   * Gets the names of the (JSON) files in this bundle.
+   */
+  public @Nonnull Set<String> getNames() {
+    return m_entries.keySet();
+  }
+
+  public boolean contains(@Nonnull String name) {
+    return m_entries.containsKey(name);
+  }
+
+  /**
+   * Checks if the entry for the given file was compiled from the given content.
+   */
+  public boolean isCurrent(@Nonnull String name, @Nonnull byte[] json) {
+    Long sourceChecksum = m_sourceChecksums.get(name);
+    return sourceChecksum != null && sourceChecksum == checksum(json);
+  }
+
+  @Nonnull ByteBuffer getData(@Nonnull String name) {
+    Preconditions.checkArgument(m_entries.containsKey(name), "%s is not in %s", name, m_file);
+    return m_entries.get(name).duplicate();
+  }
+
+
+  /**
+   * Gets the allele definitions in this bundle.
+   * As with JSON files, the {@link NamedAllele}s are initialized but nothing is frozen.
+   */
+  public @Nonnull List<DefinitionFile> getDefinitionFiles() {
+    return m_entries.keySet().stream()
+        .filter(name -> isDefinitionFile(Paths.get(name)))
+        .map(name -> DefinitionBundleCodec.readDefinitionFile(getData(name)))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Gets the exemptions in this bundle, if it has any.
+   */
+  public @Nullable Set<DefinitionExemption> getExemptions() {
+    if (!m_entries.containsKey(DataManager.EXEMPTIONS_JSON_FILE_NAME)) {
+      return null;
+    }
+    return DefinitionBundleCodec.readExemptions(getData(DataManager.EXEMPTIONS_JSON_FILE_NAME));
+  }
+}
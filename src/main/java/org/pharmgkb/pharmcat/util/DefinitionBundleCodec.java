@@ -0,0 +1,360 @@
+package org.pharmgkb.pharmcat.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.pharmgkb.pharmcat.definition.model.DefinitionExemption;
+import org.pharmgkb.pharmcat.definition.model.DefinitionFile;
+import org.pharmgkb.pharmcat.definition.model.DiplotypePhenotype;
+import org.pharmgkb.pharmcat.definition.model.GenePhenotype;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.definition.model.VariantType;
+
+
+/**
+ * Binary encoding of the data model objects stored in a {@link DefinitionBundle}.
+ * <p>
+ * Objects are written field by field with {@link DataOutput} and read straight back out of a {@link ByteBuffer}, so
+ * loading a bundle needs neither Gson nor any reflection.  Strings are written as an int length (-1 for null) followed
+ * by UTF-8 bytes, and collections as an int size (-1 for null) followed by their elements.
+ *
+ * @author Mark Woon
+ */
+final class DefinitionBundleCodec {
+
+  private DefinitionBundleCodec() {
+  }
+
+
+  //-- allele definitions --//
+
+  static void writeDefinitionFile(@Nonnull DataOutput out, @Nonnull DefinitionFile definitionFile) throws IOException {
+
+    writeString(out, definitionFile.getFormatVersion());
+    Date modificationDate = definitionFile.getModificationDate();
+    out.writeBoolean(modificationDate != null);
+    if (modificationDate != null) {
+      out.writeLong(modificationDate.getTime());
+    }
+    writeString(out, definitionFile.getGeneSymbol());
+    writeString(out, definitionFile.getOrientation());
+    writeString(out, definitionFile.getChromosome());
+    writeString(out, definitionFile.getGenomeBuild());
+    writeString(out, definitionFile.getRefSeqChromosome());
+    writeString(out, definitionFile.getRefSeqGene());
+    writeString(out, definitionFile.getRefSeqProtein());
+    writeStrings(out, definitionFile.getNotes());
+    writeStrings(out, definitionFile.getPopulations());
+
+    VariantLocus[] variants = definitionFile.getVariants();
+    out.writeInt(variants.length);
+    for (VariantLocus variant : variants) {
+      writeVariantLocus(out, variant);
+    }
+    List<Set<String>> variantAlleles = definitionFile.getVariantAlleles();
+    out.writeInt(variantAlleles == null ? -1 : variantAlleles.size());
+    if (variantAlleles != null) {
+      for (Set<String> alleles : variantAlleles) {
+        writeStrings(out, alleles);
+      }
+    }
+
+    List<NamedAllele> namedAlleles = definitionFile.getNamedAlleles();
+    out.writeInt(namedAlleles.size());
+    for (NamedAllele namedAllele : namedAlleles) {
+      writeString(out, namedAllele.getId());
+      writeString(out, namedAllele.getName());
+      writeString(out, namedAllele.getFunction());
+      String[] alleles = namedAllele.getAlleles();
+      out.writeInt(alleles.length);
+      for (String allele : alleles) {
+        writeString(out, allele);
+      }
+      writeStringMap(out, namedAllele.getPopFreqMap());
+    }
+  }
+
+  /**
+   * Reads a {@link DefinitionFile}, with its {@link NamedAllele}s initialized (but not frozen), just like
+   * {@link DataSerializer#deserializeDefinitionsFromJson(java.io.Reader)}.
+   */
+  static @Nonnull DefinitionFile readDefinitionFile(@Nonnull ByteBuffer in) {
+
+    DefinitionFile definitionFile = new DefinitionFile();
+    definitionFile.setFormatVersion(readString(in));
+    if (in.get() != 0) {
+      definitionFile.setModificationDate(new Date(in.getLong()));
+    }
+    definitionFile.setGeneSymbol(readString(in));
+    definitionFile.setOrientation(readString(in));
+    definitionFile.setChromosome(readString(in));
+    definitionFile.setGenomeBuild(readString(in));
+    definitionFile.setRefSeqChromosome(readString(in));
+    definitionFile.setRefSeqGene(readString(in));
+    definitionFile.setRefSeqProtein(readString(in));
+    definitionFile.setNotes(readStrings(in, ArrayList::new));
+    definitionFile.setPopulations(readStrings(in, TreeSet::new));
+
+    VariantLocus[] variants = new VariantLocus[in.getInt()];
+    for (int x = 0; x < variants.length; x += 1) {
+      variants[x] = readVariantLocus(in);
+    }
+    definitionFile.setVariants(variants);
+    int numVariantAlleles = in.getInt();
+    if (numVariantAlleles != -1) {
+      List<Set<String>> variantAlleles = new ArrayList<>(numVariantAlleles);
+      for (int x = 0; x < numVariantAlleles; x += 1) {
+        variantAlleles.add(readStrings(in, LinkedHashSet::new));
+      }
+      definitionFile.setVariantAlleles(variantAlleles);
+    }
+
+    int numNamedAlleles = in.getInt();
+    List<NamedAllele> namedAlleles = new ArrayList<>(numNamedAlleles);
+    for (int x = 0; x < numNamedAlleles; x += 1) {
+      String id = readString(in);
+      String name = readString(in);
+      String function = readString(in);
+      String[] alleles = new String[in.getInt()];
+      for (int y = 0; y < alleles.length; y += 1) {
+        alleles[y] = readString(in);
+      }
+      //noinspection ConstantConditions
+      NamedAllele namedAllele = new NamedAllele(id, name, alleles);
+      namedAllele.setFunction(function);
+      namedAllele.setPopFreqMap(readStringMap(in));
+      namedAllele.initialize(variants);
+      namedAlleles.add(namedAllele);
+    }
+    definitionFile.setNamedAlleles(namedAlleles);
+    return definitionFile;
+  }
+
+
+  static void writeExemptions(@Nonnull DataOutput out, @Nonnull Collection<DefinitionExemption> exemptions)
+      throws IOException {
+
+    out.writeInt(exemptions.size());
+    for (DefinitionExemption exemption : exemptions) {
+      writeString(out, exemption.getGene());
+      out.writeInt(exemption.getExtraPositions().size());
+      for (VariantLocus variant : exemption.getExtraPositions()) {
+        writeVariantLocus(out, variant);
+      }
+      writeStrings(out, exemption.getIgnoredAlleles());
+      out.writeBoolean(exemption.isAllHits());
+      out.writeBoolean(exemption.isAssumeReference());
+    }
+  }
+
+  static @Nonnull Set<DefinitionExemption> readExemptions(@Nonnull ByteBuffer in) {
+
+    int numExemptions = in.getInt();
+    Set<DefinitionExemption> exemptions = new HashSet<>();
+    for (int x = 0; x < numExemptions; x += 1) {
+      String gene = readString(in);
+      int numExtraPositions = in.getInt();
+      SortedSet<VariantLocus> extraPositions = new TreeSet<>();
+      for (int y = 0; y < numExtraPositions; y += 1) {
+        extraPositions.add(readVariantLocus(in));
+      }
+      SortedSet<String> ignoredAlleles = readStrings(in, TreeSet::new);
+      boolean allHits = in.get() != 0;
+      boolean assumeReference = in.get() != 0;
+      //noinspection ConstantConditions
+      exemptions.add(new DefinitionExemption(gene, extraPositions, ignoredAlleles, allHits, assumeReference));
+    }
+    return exemptions;
+  }
+
+
+  private static void writeVariantLocus(@Nonnull DataOutput out, @Nonnull VariantLocus variant) throws IOException {
+
+    writeString(out, variant.getChromosome());
+    out.writeInt(variant.getPosition());
+    writeString(out, variant.getChromosomeHgvsName());
+    writeString(out, variant.getRsid());
+    writeString(out, variant.getGeneHgvsName());
+    writeString(out, variant.getProteinNote());
+    writeString(out, variant.getResourceNote());
+    writeString(out, variant.getType() == null ? null : variant.getType().name());
+    writeString(out, variant.getReferenceRepeat());
+  }
+
+  private static @Nonnull VariantLocus readVariantLocus(@Nonnull ByteBuffer in) {
+
+    String chromosome = readString(in);
+    int position = in.getInt();
+    String chromosomeHgvsName = readString(in);
+    //noinspection ConstantConditions
+    VariantLocus variant = new VariantLocus(chromosome, position, chromosomeHgvsName);
+    variant.setRsid(readString(in));
+    variant.setGeneHgvsName(readString(in));
+    variant.setProteinNote(readString(in));
+    variant.setResourceNote(readString(in));
+    String type = readString(in);
+    variant.setType(type == null ? null : VariantType.valueOf(type));
+    String referenceRepeat = readString(in);
+    if (referenceRepeat != null) {
+      variant.setReferenceRepeat(referenceRepeat);
+    }
+    return variant;
+  }
+
+
+  //-- packaged data --//
+
+  static void writeGenePhenotypes(@Nonnull DataOutput out, @Nonnull List<GenePhenotype> genePhenotypes)
+      throws IOException {
+
+    out.writeInt(genePhenotypes.size());
+    for (GenePhenotype genePhenotype : genePhenotypes) {
+      writeString(out, genePhenotype.getGene());
+      writeStringMap(out, genePhenotype.getHaplotypes());
+      List<DiplotypePhenotype> diplotypes = genePhenotype.getDiplotypes();
+      out.writeInt(diplotypes == null ? -1 : diplotypes.size());
+      if (diplotypes != null) {
+        for (DiplotypePhenotype diplotype : diplotypes) {
+          writeString(out, diplotype.getPhenotype());
+          writeStrings(out, diplotype.getDiplotype());
+        }
+      }
+    }
+  }
+
+  static @Nonnull List<GenePhenotype> readGenePhenotypes(@Nonnull ByteBuffer in) {
+
+    int numGenes = in.getInt();
+    List<GenePhenotype> genePhenotypes = new ArrayList<>(numGenes);
+    for (int x = 0; x < numGenes; x += 1) {
+      GenePhenotype genePhenotype = new GenePhenotype();
+      genePhenotype.setGene(readString(in));
+      genePhenotype.setHaplotypes(readStringMap(in));
+      int numDiplotypes = in.getInt();
+      if (numDiplotypes != -1) {
+        List<DiplotypePhenotype> diplotypes = new ArrayList<>(numDiplotypes);
+        for (int y = 0; y < numDiplotypes; y += 1) {
+          DiplotypePhenotype diplotype = new DiplotypePhenotype();
+          diplotype.setPhenotype(readString(in));
+          diplotype.setDiplotype(readStrings(in, ArrayList::new));
+          diplotypes.add(diplotype);
+        }
+        genePhenotype.setDiplotypes(diplotypes);
+      }
+      genePhenotypes.add(genePhenotype);
+    }
+    return genePhenotypes;
+  }
+
+
+  static void writeIncidentalAlleles(@Nonnull DataOutput out, @Nonnull Map<String, List<String>> geneAlleles)
+      throws IOException {
+
+    out.writeInt(geneAlleles.size());
+    for (Map.Entry<String, List<String>> entry : geneAlleles.entrySet()) {
+      writeString(out, entry.getKey());
+      writeStrings(out, entry.getValue());
+    }
+  }
+
+  static @Nonnull Map<String, List<String>> readIncidentalAlleles(@Nonnull ByteBuffer in) {
+
+    int numGenes = in.getInt();
+    Map<String, List<String>> geneAlleles = new LinkedHashMap<>();
+    for (int x = 0; x < numGenes; x += 1) {
+      String gene = readString(in);
+      geneAlleles.put(gene, readStrings(in, ArrayList::new));
+    }
+    return geneAlleles;
+  }
+
+
+  //-- primitives --//
+
+  private static void writeString(@Nonnull DataOutput out, @Nullable String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static @Nullable String readString(@Nonnull ByteBuffer in) {
+    int length = in.getInt();
+    if (length == -1) {
+      return null;
+    }
+    String value;
+    if (in.hasArray()) {
+      value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+    } else {
+      byte[] bytes = new byte[length];
+      in.duplicate().get(bytes);
+      value = new String(bytes, StandardCharsets.UTF_8);
+    }
+    in.position(in.position() + length);
+    return value;
+  }
+
+  private static void writeStrings(@Nonnull DataOutput out, @Nullable Collection<String> values) throws IOException {
+    out.writeInt(values == null ? -1 : values.size());
+    if (values != null) {
+      for (String value : values) {
+        writeString(out, value);
+      }
+    }
+  }
+
+  private static @Nullable <T extends Collection<String>> T readStrings(@Nonnull ByteBuffer in,
+      @Nonnull Supplier<T> factory) {
+    int size = in.getInt();
+    if (size == -1) {
+      return null;
+    }
+    T values = factory.get();
+    for (int x = 0; x < size; x += 1) {
+      values.add(readString(in));
+    }
+    return values;
+  }
+
+  private static void writeStringMap(@Nonnull DataOutput out, @Nullable Map<String, String> map) throws IOException {
+    out.writeInt(map == null ? -1 : map.size());
+    if (map != null) {
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        writeString(out, entry.getKey());
+        writeString(out, entry.getValue());
+      }
+    }
+  }
+
+  private static @Nullable Map<String, String> readStringMap(@Nonnull ByteBuffer in) {
+    int size = in.getInt();
+    if (size == -1) {
+      return null;
+    }
+    Map<String, String> map = new LinkedHashMap<>();
+    for (int x = 0; x < size; x += 1) {
+      map.put(readString(in), readString(in));
+    }
+    return map;
+  }
+}
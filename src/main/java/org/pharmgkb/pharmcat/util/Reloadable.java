@@ -0,0 +1,172 @@
+package org.pharmgkb.pharmcat.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Holds data loaded from one or more directories, and reloads it in the background when files in those directories
+ * change.
+ * <p>
+ * Reloading builds a completely new value which is then swapped in atomically.  Callers should {@link #get()} the value
+ * once per unit of work (e.g. per sample) and use it throughout, so that work in progress finishes with the data it
+ * started with.  If reloading fails, the current value is kept.
+ *
+ * @author Mark Woon
+ */
+@ThreadSafe
+public class Reloadable<T> implements Closeable {
+  private static final Logger sf_logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  // changes usually come in bursts (e.g. a DataManager export), so wait for things to settle down
+  private static final long sf_quietPeriodMs = 1000;
+  private final String m_name;
+  private final Loader<T> m_loader;
+  private volatile T m_value;
+  private final AtomicLong m_numReloads = new AtomicLong();
+  private final Object m_reloadLock = new Object();
+  private WatchService m_watchService;
+  private Thread m_watchThread;
+
+
+  /**
+   * Builds a new value to replace the current one.
+   */
+  @FunctionalInterface
+  public interface Loader<T> {
+    @Nonnull T load(@Nonnull T current) throws Exception;
+  }
+
+
+  /**
+   * Constructor.
+   *
+   * @param name what is being loaded, used in log messages
+   * @param initialValue the current value
+   * @param loader builds the value that replaces the current one when files change
+   */
+  public Reloadable(@Nonnull String name, @Nonnull T initialValue, @Nonnull Loader<T> loader) {
+    Preconditions.checkNotNull(name);
+    Preconditions.checkNotNull(initialValue);
+    Preconditions.checkNotNull(loader);
+    m_name = name;
+    m_value = initialValue;
+    m_loader = loader;
+  }
+
+
+  /**
+   * Gets the current value.
+   */
+  public @Nonnull T get() {
+    return m_value;
+  }
+
+  /**
+   * Gets the number of times the value has been successfully reloaded.
+   */
+  public long getReloadCount() {
+    return m_numReloads.get();
+  }
+
+
+  /**
+   * Starts watching the given directories for changes.
+   * Directories that cannot be watched (e.g. inside a jar, or on a different file system than the first directory) are
+   * skipped.
+   */
+  public synchronized Reloadable<T> watch(@Nonnull Path... dirs) throws IOException {
+    Preconditions.checkState(m_watchService == null, "Already watching");
+
+    for (Path dir : dirs) {
+      try {
+        if (m_watchService == null) {
+          m_watchService = dir.getFileSystem().newWatchService();
+        }
+        dir.register(m_watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        sf_logger.info("Watching {} for {} changes", dir, m_name);
+      } catch (UnsupportedOperationException | ProviderMismatchException ex) {
+        sf_logger.warn("Cannot watch {} for {} changes", dir, m_name);
+      }
+    }
+    if (m_watchService != null) {
+      m_watchThread = new Thread(this::watchLoop, "reload-" + m_name);
+      m_watchThread.setDaemon(true);
+      m_watchThread.start();
+    }
+    return this;
+  }
+
+  private void watchLoop() {
+
+    WatchService watchService = m_watchService;
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = watchService.take();
+        // keep draining events until things are quiet
+        while (key != null) {
+          key.pollEvents();
+          key.reset();
+          key = watchService.poll(sf_quietPeriodMs, TimeUnit.MILLISECONDS);
+        }
+        reload();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException ex) {
+      // closed
+    }
+  }
+
+
+  /**
+   * Reloads the value now.
+   *
+   * @return true if the value was reloaded, false if loading failed (in which case the current value is kept)
+   */
+  public boolean reload() {
+
+    synchronized (m_reloadLock) {
+      sf_logger.info("Reloading {}", m_name);
+      try {
+        T value = m_loader.load(m_value);
+        Preconditions.checkState(value != null, "Loader returned null");
+        m_value = value;
+        m_numReloads.incrementAndGet();
+        return true;
+      } catch (Exception ex) {
+        sf_logger.warn("Failed to reload " + m_name + ", keeping current data", ex);
+        return false;
+      }
+    }
+  }
+
+
+  /**
+   * Stops watching for changes.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+
+    if (m_watchThread != null) {
+      m_watchThread.interrupt();
+      m_watchThread = null;
+    }
+    if (m_watchService != null) {
+      m_watchService.close();
+      m_watchService = null;
+    }
+  }
+}
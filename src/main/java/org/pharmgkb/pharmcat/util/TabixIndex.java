@@ -0,0 +1,298 @@
+package org.pharmgkb.pharmcat.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import com.google.common.base.Preconditions;
+import org.apache.commons.io.IOUtils;
+
+
+/**
+ * A tabix ({@code .tbi}) or coordinate-sorted index ({@code .csi}) for a bgzip-compressed file.
+ * <p>
+ * This only supports looking up the chunks of the compressed file that may contain records overlapping a region.
+ * See the <a href="https://samtools.github.io/hts-specs/">htslib specifications</a> for details on the formats.
+ *
+ * @author Mark Woon
+ */
+public class TabixIndex {
+  private static final int sf_tabixMinShift = 14;
+  private static final int sf_tabixDepth = 5;
+  private final int m_minShift;
+  private final int m_depth;
+  private final Map<String, Integer> m_sequenceIds = new HashMap<>();
+  // one per sequence: <bin, chunks>
+  private final List<Map<Integer, List<Chunk>>> m_bins = new ArrayList<>();
+  // one per sequence: linear index (only available for tabix)
+  private final List<long[]> m_linearIndexes = new ArrayList<>();
+
+
+  private TabixIndex(int minShift, int depth) {
+    m_minShift = minShift;
+    m_depth = depth;
+  }
+
+
+  /**
+   * Finds the index for the given bgzip-compressed file.
+   *
+   * @return the path to the {@code .tbi} or {@code .csi} index, or null if there isn't one
+   */
+  public static @Nullable Path findIndex(@Nonnull Path bgzfFile) {
+
+    for (String extension : new String[] { ".tbi", ".csi" }) {
+      Path indexFile = bgzfFile.resolveSibling(bgzfFile.getFileName().toString() + extension);
+      if (Files.isRegularFile(indexFile)) {
+        return indexFile;
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * Reads a tabix or CSI index file.
+   */
+  public static @Nonnull TabixIndex read(@Nonnull Path indexFile) throws IOException {
+    Preconditions.checkNotNull(indexFile);
+    Preconditions.checkArgument(Files.isRegularFile(indexFile), "%s is not a file", indexFile);
+
+    ByteBuffer data;
+    try (InputStream in = new BgzfInputStream(Files.newByteChannel(indexFile))) {
+      data = ByteBuffer.wrap(IOUtils.toByteArray(in)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    byte[] magic = new byte[4];
+    data.get(magic);
+    String magicString = new String(magic, 0, 3, StandardCharsets.US_ASCII);
+    if (magic[3] != 1 || !(magicString.equals("TBI") || magicString.equals("CSI"))) {
+      throw new IOException("Not a tabix or CSI index: " + indexFile);
+    }
+
+    TabixIndex index;
+    if (magicString.equals("TBI")) {
+      index = new TabixIndex(sf_tabixMinShift, sf_tabixDepth);
+      int numRefs = data.getInt();
+      index.readNames(data, numRefs);
+      for (int x = 0; x < numRefs; x += 1) {
+        index.readBins(data, false);
+        long[] linearIndex = new long[data.getInt()];
+        for (int y = 0; y < linearIndex.length; y += 1) {
+          linearIndex[y] = data.getLong();
+        }
+        index.m_linearIndexes.add(linearIndex);
+      }
+
+    } else {
+      index = new TabixIndex(data.getInt(), data.getInt());
+      int auxLength = data.getInt();
+      int auxEnd = data.position() + auxLength;
+      if (auxLength < 28) {
+        throw new IOException("CSI index has no sequence names: " + indexFile);
+      }
+      int numRefs = data.getInt(data.position() + auxLength);
+      index.readNames(data, numRefs);
+      data.position(auxEnd);
+      Preconditions.checkState(numRefs == data.getInt());
+      for (int x = 0; x < numRefs; x += 1) {
+        index.readBins(data, true);
+        index.m_linearIndexes.add(new long[0]);
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Reads the tabix header, which contains the sequence names.
+   */
+  private void readNames(ByteBuffer data, int numRefs) {
+
+    // skip format, col_seq, col_beg, col_end, meta, skip
+    data.position(data.position() + 24);
+    byte[] names = new byte[data.getInt()];
+    data.get(names);
+    int start = 0;
+    for (int x = 0; x < names.length && m_sequenceIds.size() < numRefs; x += 1) {
+      if (names[x] == 0) {
+        m_sequenceIds.put(new String(names, start, x - start, StandardCharsets.US_ASCII), m_sequenceIds.size());
+        start = x + 1;
+      }
+    }
+  }
+
+  /**
+   * Reads the binning index for a single sequence.
+   */
+  private void readBins(ByteBuffer data, boolean isCsi) {
+
+    int numBins = data.getInt();
+    Map<Integer, List<Chunk>> bins = new HashMap<>();
+    for (int x = 0; x < numBins; x += 1) {
+      int bin = data.getInt();
+      if (isCsi) {
+        // skip loffset
+        data.getLong();
+      }
+      int numChunks = data.getInt();
+      List<Chunk> chunks = new ArrayList<>(numChunks);
+      for (int y = 0; y < numChunks; y += 1) {
+        chunks.add(new Chunk(data.getLong(), data.getLong()));
+      }
+      bins.put(bin, chunks);
+    }
+    m_bins.add(bins);
+  }
+
+
+  /**
+   * Checks if this index has any data for the given sequence (e.g. chromosome).
+   */
+  public boolean hasSequence(@Nonnull String sequence) {
+    return m_sequenceIds.containsKey(sequence);
+  }
+
+
+  /**
+   * Gets the chunks of the compressed file that may contain records overlapping the given region.
+   *
+   * @param sequence the sequence (e.g. chromosome) name
+   * @param start the 1-based start position (inclusive)
+   * @param end the 1-based end position (inclusive)
+   */
+  public @Nonnull List<Chunk> getChunks(@Nonnull String sequence, int start, int end) {
+
+    Integer seqId = m_sequenceIds.get(sequence);
+    if (seqId == null) {
+      return Collections.emptyList();
+    }
+    long begin0 = Math.max(0, start - 1);
+    long end0 = Math.max(begin0 + 1, end);
+
+    // chunks ending before this offset cannot contain anything in the region
+    long minOffset = 0;
+    long[] linearIndex = m_linearIndexes.get(seqId);
+    if (linearIndex.length > 0) {
+      minOffset = linearIndex[(int)Math.min(begin0 >> sf_tabixMinShift, linearIndex.length - 1)];
+    }
+
+    Map<Integer, List<Chunk>> bins = m_bins.get(seqId);
+    List<Chunk> chunks = new ArrayList<>();
+    for (int bin : regionToBins(begin0, end0)) {
+      List<Chunk> binChunks = bins.get(bin);
+      if (binChunks != null) {
+        for (Chunk chunk : binChunks) {
+          if (Long.compareUnsigned(chunk.getEnd(), minOffset) > 0) {
+            chunks.add(chunk);
+          }
+        }
+      }
+    }
+    return chunks;
+  }
+
+  /**
+   * Calculates the bins that overlap a region.
+   *
+   * @param begin the 0-based start position (inclusive)
+   * @param end the 0-based end position (exclusive)
+   */
+  private List<Integer> regionToBins(long begin, long end) {
+
+    List<Integer> bins = new ArrayList<>();
+    end -= 1;
+    int shift = m_minShift + m_depth * 3;
+    int t = 0;
+    for (int level = 0; level <= m_depth; level += 1) {
+      long b = t + (begin >> shift);
+      long e = t + (end >> shift);
+      for (long x = b; x <= e; x += 1) {
+        bins.add((int)x);
+      }
+      shift -= 3;
+      t += 1 << (level * 3);
+    }
+    return bins;
+  }
+
+
+  /**
+   * Sorts chunks and merges overlapping or adjacent chunks.
+   */
+  public static @Nonnull List<Chunk> mergeChunks(@Nonnull Collection<Chunk> chunks) {
+
+    List<Chunk> sorted = new ArrayList<>(chunks);
+    Collections.sort(sorted);
+    List<Chunk> merged = new ArrayList<>();
+    Chunk current = null;
+    for (Chunk chunk : sorted) {
+      if (current == null) {
+        current = chunk;
+      } else if (Long.compareUnsigned(chunk.getBegin(), current.getEnd()) <= 0) {
+        if (Long.compareUnsigned(chunk.getEnd(), current.getEnd()) > 0) {
+          current = new Chunk(current.getBegin(), chunk.getEnd());
+        }
+      } else {
+        merged.add(current);
+        current = chunk;
+      }
+    }
+    if (current != null) {
+      merged.add(current);
+    }
+    return merged;
+  }
+
+
+  /**
+   * A contiguous section of a BGZF file, delimited by virtual offsets.
+   */
+  public static class Chunk implements Comparable<Chunk> {
+    private final long m_begin;
+    private final long m_end;
+
+    public Chunk(long begin, long end) {
+      m_begin = begin;
+      m_end = end;
+    }
+
+    /**
+     * Gets the virtual offset of the start of this chunk (inclusive).
+     */
+    public long getBegin() {
+      return m_begin;
+    }
+
+    /**
+     * Gets the virtual offset of the end of this chunk (exclusive).
+     */
+    public long getEnd() {
+      return m_end;
+    }
+
+    @Override
+    public int compareTo(@Nonnull Chunk o) {
+      int rez = Long.compareUnsigned(m_begin, o.getBegin());
+      if (rez != 0) {
+        return rez;
+      }
+      return Long.compareUnsigned(m_end, o.getEnd());
+    }
+
+    @Override
+    public String toString() {
+      return (m_begin >>> 16) + ":" + (m_begin & 0xffff) + "-" + (m_end >>> 16) + ":" + (m_end & 0xffff);
+    }
+  }
+}
@@ -7,6 +7,7 @@
 import org.pharmgkb.pharmcat.reporter.Reporter;
 import org.pharmgkb.pharmcat.reporter.model.result.GeneReport;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -41,4 +42,23 @@ public void testCypc2c9VariantPassthrough() throws Exception {
             .anyMatch(r -> r.getDbSnpId() != null && r.getDbSnpId().equals("rs12777823"))
     );
   }
+
+
+  @Test
+  public void testCallFileOnlyKeptOnRequest() throws Exception {
+
+    Path vcfFile = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c9/s1s1.vcf");
+    Path tempOutDir = Files.createTempDirectory("ReporterTest");
+
+    PharmCAT pharmcat = new PharmCAT(tempOutDir, null, null);
+    pharmcat.execute(vcfFile, null, "noCallFile");
+    assertTrue(Files.exists(tempOutDir.resolve("noCallFile.report.html")));
+    assertFalse(Files.exists(tempOutDir.resolve("noCallFile.call.json")));
+    assertTrue(pharmcat.getReporter().getContext().getGeneReport("CYP2C9").isCalled());
+
+    pharmcat.keepMatcherOutput()
+        .execute(vcfFile, null, "callFile");
+    assertTrue(Files.exists(tempOutDir.resolve("callFile.call.json")));
+    assertTrue(Files.exists(tempOutDir.resolve("callFile.matcher.html")));
+  }
 }
@@ -24,4 +24,12 @@ public void testConstruct() throws Exception {
     Haplotype h2 = new Haplotype("CFTR", "foo");
     assertFalse(incidentalFinder.isFinding(h2));
   }
+
+  @Test
+  public void testRead() throws Exception {
+    IncidentalFinder incidentalFinder = IncidentalFinder.read();
+
+    assertTrue(incidentalFinder.isFinding(new Haplotype("CFTR", "R334W")));
+    assertFalse(incidentalFinder.isFinding(new Haplotype("CFTR", "foo")));
+  }
 }
@@ -1,10 +1,18 @@
 package org.pharmgkb.pharmcat.definition;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.TreeMap;
 import org.junit.Test;
 import org.pharmgkb.pharmcat.definition.model.GenePhenotype;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.haplotype.MatchData;
+import org.pharmgkb.pharmcat.haplotype.model.DiplotypeMatch;
+import org.pharmgkb.pharmcat.haplotype.model.GeneCall;
+import org.pharmgkb.pharmcat.haplotype.model.HaplotypeMatch;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 
 /**
@@ -30,4 +38,37 @@ public void test() throws Exception {
     assertNotNull(genePhenotype);
     assertEquals("Normal Function", genePhenotype.lookupHaplotype("Any normal function variant or no variant detected"));
   }
+
+  @Test
+  public void testOverlay() throws Exception {
+
+    VariantLocus[] variants = new VariantLocus[] { new VariantLocus("chr10", 1, "g.1T>A") };
+    NamedAllele hap1 = new NamedAllele("*1", "*1", new String[] { "T" });
+    hap1.setFunction("Normal Function");
+    NamedAllele hapFoo = new NamedAllele("*foo", "*foo", new String[] { "A" });
+    hapFoo.setFunction("Foo Function");
+    MatchData matchData = new MatchData(new TreeMap<>(), variants, null, null);
+    GeneCall call = new GeneCall("v1", "chr10", "CYP2C19", matchData, new HashSet<>(), new HashSet<>());
+    call.addDiplotype(new DiplotypeMatch(new HaplotypeMatch(hap1), new HaplotypeMatch(hapFoo), matchData));
+
+    PhenotypeMap base = new PhenotypeMap(null);
+    PhenotypeMap phenotypeMap = new PhenotypeMap(Collections.singletonList(call));
+    assertEquals(base.getGenes().size(), phenotypeMap.getGenes().size());
+
+    GenePhenotype genePhenotype = phenotypeMap.lookup("CYP2C19").orElseThrow(Exception::new);
+    assertEquals("Foo Function", genePhenotype.lookupHaplotype("*foo"));
+    assertEquals("No Function", genePhenotype.lookupHaplotype("*2"));
+    // shared data is untouched
+    assertNull(base.lookup("CYP2C19").orElseThrow(Exception::new).lookupHaplotype("*foo"));
+    assertNull(new PhenotypeMap(null).lookup("CYP2C19").orElseThrow(Exception::new).lookupHaplotype("*foo"));
+    // genes without new functions are shared
+    assertSame(base.lookup("CYP2C9").orElseThrow(Exception::new), phenotypeMap.lookup("CYP2C9").orElseThrow(Exception::new));
+
+    try {
+      base.lookup("CYP2C19").orElseThrow(Exception::new).addHaplotypeFunction("*bar", "Bar Function");
+      fail("Shared data should not be modifiable");
+    } catch (UnsupportedOperationException ex) {
+      // expected
+    }
+  }
 }
@@ -0,0 +1,91 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.haplotype.model.EncodedSequence;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link BitsetMatcher}.
+ *
+ * @author Mark Woon
+ */
+public class BitsetMatcherTest {
+
+  @Test
+  public void testMatchesRegex() {
+
+    VariantLocus var1 = new VariantLocus("chr1", 1, "g.1T>A");
+    VariantLocus var2 = new VariantLocus("chr1", 2, "g.2T>A");
+    VariantLocus var3 = new VariantLocus("chr1", 3, "g.3T>A");
+    VariantLocus[] variants = new VariantLocus[] { var1, var2, var3 };
+
+    NamedAllele hap1 = new NamedAllele("*1", "*1", new String[] { "T", "A", "C" });
+    NamedAllele hap2 = new NamedAllele("*2", "*2", new String[] { null, "R", null });
+    NamedAllele hap3 = new NamedAllele("*3", "*3", new String[] { "T", "T", "N" });
+    NamedAllele hap4 = new NamedAllele("*4", "*4", new String[] { "G", null, null });
+    List<NamedAllele> haplotypes = Lists.newArrayList(hap1, hap2, hap3, hap4);
+    haplotypes.forEach(h -> h.initialize(variants));
+
+    SortedMap<String, SampleAllele> sampleAlleleMap = new TreeMap<>();
+    sampleAlleleMap.put("chr1:1", new SampleAllele("chr1", 1, "T", "T", false, Lists.newArrayList("T")));
+    sampleAlleleMap.put("chr1:2", new SampleAllele("chr1", 2, "A", "G", false, Lists.newArrayList("A", "G")));
+    sampleAlleleMap.put("chr1:3", new SampleAllele("chr1", 3, "C", "T", false, Lists.newArrayList("C", "T")));
+    MatchData dataset = new MatchData(sampleAlleleMap, variants, null, null);
+    dataset.marshallHaplotypes(haplotypes);
+    dataset.generateSamplePermutations();
+
+    BitsetMatcher matcher = new BitsetMatcher(dataset);
+    int numMatches = 0;
+    for (NamedAllele hap : haplotypes) {
+      long[] mask = matcher.buildMask(hap);
+      for (String seq : dataset.getPermutations()) {
+        boolean expected = hap.getPermutations().matcher(seq).matches();
+        assertEquals(hap.getName() + " vs. " + seq, expected, BitsetMatcher.matches(mask, matcher.encode(seq)));
+        if (expected) {
+          numMatches += 1;
+        }
+      }
+    }
+    // *1 (1), *2 (4), *3 (0)
+    assertEquals(5, numMatches);
+
+    assertNull(matcher.encode("1:T;2:A;"));
+    assertNull(matcher.encode("1:T;2:C;3:C;"));
+  }
+
+
+  @Test
+  public void testEncodedSequence() {
+
+    VariantLocus var1 = new VariantLocus("chr1", 1, "g.1T>A");
+    VariantLocus var2 = new VariantLocus("chr1", 2, "g.2T>A");
+    VariantLocus var3 = new VariantLocus("chr1", 3, "g.3T>A");
+    VariantLocus[] variants = new VariantLocus[] { var1, var2, var3 };
+
+    SortedMap<String, SampleAllele> sampleAlleleMap = new TreeMap<>();
+    sampleAlleleMap.put("chr1:1", new SampleAllele("chr1", 1, "T", "T", false, Lists.newArrayList("T")));
+    sampleAlleleMap.put("chr1:2", new SampleAllele("chr1", 2, "A", "G", false, Lists.newArrayList("A", "G")));
+    sampleAlleleMap.put("chr1:3", new SampleAllele("chr1", 3, "C", "T", false, Lists.newArrayList("C", "T")));
+    MatchData dataset = new MatchData(sampleAlleleMap, variants, null, null);
+
+    BitsetMatcher matcher = new BitsetMatcher(dataset);
+    assertEquals(6L, matcher.getHeterozygousMask()[0]);
+
+    // second allele at position 2
+    EncodedSequence seq = new EncodedSequence(matcher, new long[] { 2L });
+    assertEquals("1:T;2:G;3:C;", seq.toString());
+    EncodedSequence complement = seq.complement();
+    assertEquals("1:T;2:A;3:T;", complement.toString());
+    assertNotEquals(seq, complement);
+    assertEquals(seq, complement.complement());
+    assertEquals(seq.hashCode(), complement.complement().hashCode());
+  }
+}
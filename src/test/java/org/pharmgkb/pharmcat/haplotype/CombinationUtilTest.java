@@ -12,6 +12,7 @@
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 
 /**
@@ -46,6 +47,25 @@ public void testGeneratePermutationsNotPhased() {
     }
   }
 
+  @Test
+  public void testGeneratePermutationsLimit() {
+
+    List<SampleAllele> alleles = Arrays.asList(
+        new SampleAllele("chr1", 1, "T", "T", false, Lists.newArrayList("T", "C")),
+        new SampleAllele("chr1", 2, "A", "T", false, Lists.newArrayList("A", "T")),
+        new SampleAllele("chr1", 3, "C", "C", false, Lists.newArrayList("C", "C")),
+        new SampleAllele("chr1", 4, "C", "G", false, Lists.newArrayList("C", "G"))
+    );
+    assertEquals(4, CombinationUtil.countPermutations(alleles));
+    assertEquals(4, CombinationUtil.generatePermutations(alleles, 4).size());
+    try {
+      CombinationUtil.generatePermutations(alleles, 3);
+      fail("Should have exceeded limit");
+    } catch (ComplexityLimitException ex) {
+      // expected
+    }
+  }
+
   @Test
   public void testGeneratePermutationPhased() {
 
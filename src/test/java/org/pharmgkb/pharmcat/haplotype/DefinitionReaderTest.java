@@ -6,9 +6,11 @@
 import org.junit.Test;
 import org.pharmgkb.common.util.PathUtils;
 import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.haplotype.model.Result;
 import org.pharmgkb.pharmcat.util.DataManager;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
 
@@ -43,4 +45,23 @@ public void testReadAllDefinitions() throws Exception {
       }
     }
   }
+
+
+  @Test
+  public void testDataVersion() throws Exception {
+
+    DefinitionReader reader1 = new DefinitionReader();
+    reader1.read(DataManager.DEFAULT_DEFINITION_DIR);
+    DefinitionReader reader2 = new DefinitionReader();
+    reader2.read(DataManager.DEFAULT_DEFINITION_DIR);
+    assertEquals(reader1.getDataVersion(), reader2.getDataVersion());
+
+    DefinitionReader vkorc1 = new DefinitionReader();
+    vkorc1.read(DataManager.DEFAULT_DEFINITION_DIR.resolve("VKORC1_translation.json"));
+    assertNotEquals(reader1.getDataVersion(), vkorc1.getDataVersion());
+
+    Path vcfFile = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s1s2.vcf");
+    Result result = new NamedAlleleMatcher(reader1).call(vcfFile);
+    assertEquals(reader1.getDataVersion(), result.getMetadata().getDataVersion());
+  }
 }
@@ -0,0 +1,157 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.pharmgkb.common.util.PathUtils;
+import org.pharmgkb.pharmcat.haplotype.model.DiplotypeMatch;
+import org.pharmgkb.pharmcat.haplotype.model.HaplotypeMatch;
+import org.pharmgkb.pharmcat.haplotype.model.GeneCall;
+import org.pharmgkb.pharmcat.haplotype.model.Result;
+import org.pharmgkb.pharmcat.util.DataManager;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link DiplotypeCache}.
+ *
+ * @author Mark Woon
+ */
+public class DiplotypeCacheTest {
+
+  @Test
+  public void testCache() throws Exception {
+
+    Path s1s2 = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s1s2.vcf");
+    Path s2s3 = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s2s3.vcf");
+
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
+
+    NamedAlleleMatcher namedAlleleMatcher = new NamedAlleleMatcher(definitionReader)
+        .cacheDiplotypes();
+    DiplotypeCache cache = namedAlleleMatcher.getDiplotypeCache();
+    assertNotNull(cache);
+
+    Result result1 = namedAlleleMatcher.call(s1s2);
+    assertEquals(0, cache.getHitCount());
+    long misses = cache.getMissCount();
+    assertTrue(misses > 0);
+    assertEquals(misses, cache.size());
+
+    Result result2 = namedAlleleMatcher.call(s1s2);
+    assertEquals(misses, cache.getHitCount());
+    assertEquals(misses, cache.getMissCount());
+    assertEquals(getDiplotypes(result1), getDiplotypes(result2));
+    // reused matches point to the new sample's data
+    for (GeneCall call : result2.getGeneCalls()) {
+      for (DiplotypeMatch dm : call.getDiplotypes()) {
+        assertSame(call.getMatchData(), dm.getDataset());
+      }
+    }
+
+    Result result3 = namedAlleleMatcher.call(s2s3);
+    assertEquals(misses + 1, cache.getMissCount());
+    Result expected = new NamedAlleleMatcher(definitionReader).call(s2s3);
+    assertEquals(getDiplotypes(expected), getDiplotypes(result3));
+  }
+
+
+  @Test
+  public void testSharedCache() throws Exception {
+
+    Path vcfFile = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s1s4bMissing.vcf");
+
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
+
+    DiplotypeCache cache = new DiplotypeCache();
+    NamedAlleleMatcher assumeReference = new NamedAlleleMatcher(definitionReader, true, false)
+        .cacheDiplotypes(cache);
+    NamedAlleleMatcher noAssumeReference = new NamedAlleleMatcher(definitionReader, false, false)
+        .cacheDiplotypes(cache);
+
+    assumeReference.call(vcfFile);
+    long misses = cache.getMissCount();
+    // different settings never get each other's calls
+    Result result = noAssumeReference.call(vcfFile);
+    assertEquals(0, cache.getHitCount());
+    assertEquals(misses * 2, cache.getMissCount());
+    assertEquals(getDiplotypes(new NamedAlleleMatcher(definitionReader, false, false).call(vcfFile)),
+        getDiplotypes(result));
+
+    // same settings do
+    new NamedAlleleMatcher(definitionReader, true, false)
+        .cacheDiplotypes(cache)
+        .call(vcfFile);
+    assertEquals(misses, cache.getHitCount());
+  }
+
+
+  /**
+   * Definitions that differ only in content (not version or modification date) must not share cached calls.
+   */
+  @Test
+  public void testChangedDefinitions() throws Exception {
+
+    Path vcfFile = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s4s17het.vcf");
+    String json = new String(Files.readAllBytes(DataManager.DEFAULT_DEFINITION_DIR.resolve("CYP2C19_translation.json")),
+        StandardCharsets.UTF_8);
+    assertTrue(json.contains("\"Increased function\""));
+
+    DefinitionReader original = readDefinitions(json);
+    DefinitionReader changed = readDefinitions(json.replace("\"Increased function\"", "\"Normal function\""));
+    assertEquals(original.getDataVersion(), readDefinitions(json).getDataVersion());
+    assertNotEquals(original.getDataVersion(), changed.getDataVersion());
+
+    NamedAlleleMatcher matcher = new NamedAlleleMatcher(original)
+        .cacheDiplotypes();
+    DiplotypeCache cache = matcher.getDiplotypeCache();
+    assertNotNull(cache);
+    assertEquals(Collections.singleton("Increased function"), get17Functions(matcher.call(vcfFile)));
+    long misses = cache.getMissCount();
+
+    Result result = matcher.withDefinitions(changed).call(vcfFile);
+    assertEquals(0, cache.getHitCount());
+    assertEquals(misses * 2, cache.getMissCount());
+    assertEquals(Collections.singleton("Normal function"), get17Functions(result));
+
+    // identical content read again does hit
+    matcher.withDefinitions(readDefinitions(json)).call(vcfFile);
+    assertEquals(misses, cache.getHitCount());
+  }
+
+  private static DefinitionReader readDefinitions(String json) throws Exception {
+
+    Path file = Files.createTempDirectory("DiplotypeCacheTest").resolve("CYP2C19_translation.json");
+    Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(file);
+    return definitionReader;
+  }
+
+  private static Set<String> get17Functions(Result result) {
+    return result.getGeneCalls().stream()
+        .flatMap(gc -> gc.getDiplotypes().stream())
+        .flatMap(dm -> Stream.of(dm.getHaplotype1(), dm.getHaplotype2()))
+        .filter(hm -> hm.getName().equals("*17"))
+        .map(HaplotypeMatch::getFunction)
+        .collect(Collectors.toSet());
+  }
+
+
+  private static List<List<String>> getDiplotypes(Result result) {
+    return result.getGeneCalls().stream()
+        .map(gc -> gc.getDiplotypes().stream()
+            .map(DiplotypeMatch::getName)
+            .collect(Collectors.toList()))
+        .collect(Collectors.toList());
+  }
+}
@@ -8,6 +8,7 @@
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
@@ -146,17 +147,124 @@ public void test5() throws Exception {
   }
 
 
+  @Test
+  public void testComputeRanked() {
+
+    List<SampleAllele> alleles = Arrays.asList(
+        new SampleAllele("chr1", 1, "A", "G", false, Lists.newArrayList("A", "G")),
+        new SampleAllele("chr1", 2, "C", "T", false, Lists.newArrayList("C", "T")),
+        new SampleAllele("chr1", 3, "C", "T", false, Lists.newArrayList("C", "T"))
+    );
+    DiplotypeMatcher diplotypeMatcher = new DiplotypeMatcher(buildMatchData(alleles));
+
+    List<DiplotypeMatch> ranked = Lists.newArrayList(diplotypeMatcher.computeRanked());
+    assertDiplotypePairs(Lists.newArrayList("*1/*4b", "*1/*17", "*1/*4a", "*4a/*17"), ranked);
+    for (int x = 1; x < ranked.size(); x += 1) {
+      assertTrue(ranked.get(x - 1).getScore() >= ranked.get(x).getScore());
+    }
+
+    assertDiplotypePairs(Lists.newArrayList("*1/*4b"), diplotypeMatcher.compute(true, Integer.MAX_VALUE));
+    assertDiplotypePairs(Lists.newArrayList("*1/*4b", "*1/*17"), diplotypeMatcher.compute(false, 2));
+  }
+
+
+  @Test
+  public void testHomozygousRanking() {
+
+    // *4a, *4b and *17 all match the only sequence
+    List<SampleAllele> alleles = Arrays.asList(
+        new SampleAllele("chr1", 1, "G", "G", false, Lists.newArrayList("A", "G")),
+        new SampleAllele("chr1", 2, "T", "T", false, Lists.newArrayList("C", "T")),
+        new SampleAllele("chr1", 3, "T", "T", false, Lists.newArrayList("C", "T"))
+    );
+    DiplotypeMatcher diplotypeMatcher = new DiplotypeMatcher(buildMatchData(alleles));
+
+    // homozygous pairs are ranked by score like any other, not by name
+    List<DiplotypeMatch> ranked = Lists.newArrayList(diplotypeMatcher.computeRanked());
+    assertDiplotypePairs(Lists.newArrayList("*4b/*4b", "*17/*4b", "*17/*17", "*4a/*4b", "*17/*4a", "*4a/*4a"),
+        ranked);
+    for (DiplotypeMatch dm : ranked) {
+      assertEquals(1, dm.getSequences().size());
+    }
+
+    // so top candidate is the best scoring pair, not the first by name (*17/*17)
+    assertDiplotypePairs(Lists.newArrayList("*4b/*4b"), diplotypeMatcher.compute(true, Integer.MAX_VALUE));
+  }
+
+
+  @Test
+  public void testComputeBudget() {
+
+    List<SampleAllele> alleles = Arrays.asList(
+        new SampleAllele("chr1", 1, "A", "G", false, Lists.newArrayList("A", "G")),
+        new SampleAllele("chr1", 2, "C", "T", false, Lists.newArrayList("C", "T")),
+        new SampleAllele("chr1", 3, "C", "T", false, Lists.newArrayList("C", "T"))
+    );
+    MatchData dataset = buildMatchData(alleles);
+
+    assertEquals(4, new DiplotypeMatcher(dataset, new ComputeBudget().maxCandidatePairs(4)).compute().size());
+    try {
+      new DiplotypeMatcher(dataset, new ComputeBudget().maxCandidatePairs(3)).compute();
+      fail("Should have exceeded candidate pair limit");
+    } catch (ComplexityLimitException ex) {
+      // expected
+    }
+    try {
+      new DiplotypeMatcher(dataset, new ComputeBudget().maxPermutations(1)).compute();
+      fail("Should have exceeded permutation limit");
+    } catch (ComplexityLimitException ex) {
+      // expected
+    }
+    try {
+      new DiplotypeMatcher(buildMatchData(alleles), new ComputeBudget().maxPermutations(1)).comparePermutations();
+      fail("Should have exceeded permutation limit");
+    } catch (ComplexityLimitException ex) {
+      // expected
+    }
+
+    // the search is too small to check the clock, but building the matches still does
+    Iterator<DiplotypeMatch> it = new DiplotypeMatcher(dataset, new ComputeBudget().maxTime(1, TimeUnit.NANOSECONDS))
+        .computeRanked();
+    try {
+      it.next();
+      fail("Should have exceeded time limit");
+    } catch (ComplexityLimitException ex) {
+      // expected
+    }
+
+    // so does the sequence index
+    List<SampleAllele> homozygous = Arrays.asList(
+        new SampleAllele("chr1", 1, "G", "G", false, Lists.newArrayList("A", "G")),
+        new SampleAllele("chr1", 2, "T", "T", false, Lists.newArrayList("C", "T")),
+        new SampleAllele("chr1", 3, "T", "T", false, Lists.newArrayList("C", "T"))
+    );
+    try {
+      new DiplotypeMatcher(buildMatchData(homozygous), new ComputeBudget().maxTime(1, TimeUnit.NANOSECONDS))
+          .computeRanked();
+      fail("Should have exceeded time limit");
+    } catch (ComplexityLimitException ex) {
+      // expected
+    }
+  }
+
+
   private List<DiplotypeMatch> computeHaplotypes(List<SampleAllele> alleles) {
 
+    MatchData dataset = buildMatchData(alleles);
+    dataset.generateSamplePermutations();
+
+    return new DiplotypeMatcher(dataset).compute();
+  }
+
+  private MatchData buildMatchData(List<SampleAllele> alleles) {
+
     SortedMap<String, SampleAllele> sampleAlleleMap = alleles.stream()
         .collect(Collectors.toMap(s -> "chr1:" + s.getPosition(),
         Function.identity(), new NoDuplicateMergeFunction<>(), TreeMap::new));
 
     MatchData dataset = new MatchData(sampleAlleleMap, s_positions, null, null);
     dataset.marshallHaplotypes(s_haplotypes);
-    dataset.generateSamplePermutations();
-
-    return new DiplotypeMatcher(dataset).compute();
+    return dataset;
   }
 
 
@@ -0,0 +1,79 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link HaplotypeCache}.
+ *
+ * @author Mark Woon
+ */
+public class HaplotypeCacheTest {
+
+  @Test
+  public void testPrepare() {
+
+    VariantLocus var1 = new VariantLocus("chr1", 1, "g.1T>A");
+    VariantLocus var2 = new VariantLocus("chr1", 2, "g.2T>A");
+    VariantLocus var3 = new VariantLocus("chr1", 3, "g.3T>A");
+    VariantLocus[] variants = new VariantLocus[] { var1, var2, var3 };
+
+    NamedAllele hap1 = new NamedAllele("*1", "*1", new String[] { "T", "T", "T" });
+    NamedAllele hap2 = new NamedAllele("*2", "*2", new String[] { null, "A", null });
+    NamedAllele hap3 = new NamedAllele("*3", "*3", new String[] { "A", null, "A" });
+    List<NamedAllele> haplotypes = Lists.newArrayList(hap1, hap2, hap3);
+    haplotypes.forEach(h -> h.initialize(variants));
+
+    HaplotypeCache cache = new HaplotypeCache();
+
+    // missing position 3
+    MatchData data1 = new MatchData(sampleAlleles("T", "A", null), variants, null, null);
+    cache.prepare("GENE", data1, haplotypes, true);
+    assertEquals(1, cache.size());
+    assertEquals(3, data1.getHaplotypes().size());
+    assertEquals(2, data1.getHaplotypes().get(0).getAlleles().length);
+
+    // different alleles, same missing position: reuse
+    MatchData data2 = new MatchData(sampleAlleles("A", "T", null), variants, null, null);
+    cache.prepare("GENE", data2, haplotypes, true);
+    assertEquals(1, cache.size());
+    assertSame(data1.getHaplotypes(), data2.getHaplotypes());
+
+    // different setting
+    MatchData data3 = new MatchData(sampleAlleles("A", "T", null), variants, null, null);
+    cache.prepare("GENE", data3, haplotypes, false);
+    assertEquals(2, cache.size());
+    assertNotSame(data1.getHaplotypes(), data3.getHaplotypes());
+    assertNull(data3.getHaplotypes().get(1).getAllele(var1));
+    assertEquals("T", data1.getHaplotypes().get(1).getAllele(var1));
+
+    // different missing position
+    MatchData data4 = new MatchData(sampleAlleles("T", null, "A"), variants, null, null);
+    cache.prepare("GENE", data4, haplotypes, true);
+    assertEquals(3, cache.size());
+    assertNotSame(data1.getHaplotypes(), data4.getHaplotypes());
+    // *2 has nothing left to match on
+    assertEquals(2, data4.getHaplotypes().size());
+  }
+
+
+  private static SortedMap<String, SampleAllele> sampleAlleles(String... alleles) {
+
+    SortedMap<String, SampleAllele> sampleAlleleMap = new TreeMap<>();
+    for (int x = 0; x < alleles.length; x += 1) {
+      if (alleles[x] != null) {
+        sampleAlleleMap.put("chr1:" + (x + 1), new SampleAllele("chr1", x + 1, alleles[x], alleles[x], false,
+            Lists.newArrayList(alleles[x])));
+      }
+    }
+    return sampleAlleleMap;
+  }
+}
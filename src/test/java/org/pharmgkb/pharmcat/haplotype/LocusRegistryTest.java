@@ -0,0 +1,39 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link LocusRegistry}.
+ *
+ * @author Mark Woon
+ */
+public class LocusRegistryTest {
+
+  @Test
+  public void testLookup() {
+
+    VariantLocus chr10 = new VariantLocus("chr10", 5, "g.5A>G");
+    VariantLocus chr2a = new VariantLocus("chr2", 100000, "g.100000A>G");
+    VariantLocus chr2b = new VariantLocus("chr2", 7, "g.7A>G");
+    VariantLocus chr2Duplicate = new VariantLocus("chr2", 7, "g.7A>C");
+    LocusRegistry registry = new LocusRegistry(ImmutableList.of(chr10, chr2a, chr2b, chr2Duplicate));
+
+    assertEquals(3, registry.size());
+    // ids are in chromosomal order
+    assertEquals(ImmutableList.of(chr2b, chr2a, chr10), registry.getLoci());
+    assertEquals(0, registry.getId(chr2b));
+    assertEquals(1, registry.lookup("chr2", 100000));
+    assertEquals(2, registry.lookup(LocusRegistry.encode(registry.getChromosomeId("chr10"), 5)));
+    // first one wins
+    assertSame(chr2b, registry.getLocus(registry.getId(chr2Duplicate)));
+
+    assertEquals(-1, registry.lookup("chr2", 8));
+    assertEquals(-1, registry.lookup("chr3", 7));
+    assertEquals(-1, registry.getChromosomeId("chr3"));
+  }
+}
@@ -1,12 +1,24 @@
 package org.pharmgkb.pharmcat.haplotype;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.Nonnull;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.junit.Test;
 import org.pharmgkb.common.util.PathUtils;
@@ -178,4 +190,158 @@ public void testCallDiplotypePath() throws Exception {
     assertEquals(1, pairs.size());
     assertEquals("*1/*2", pairs.get(0).getName());
   }
+
+
+  @Test
+  public void testCallParallel() throws Exception {
+
+    Path vcfFile  = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s2s11s17het.vcf");
+
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
+
+    Result expected = new NamedAlleleMatcher(definitionReader).call(vcfFile);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Result result = new NamedAlleleMatcher(definitionReader)
+          .parallelize(executor)
+          .call(vcfFile);
+
+      assertEquals(new ArrayList<>(definitionReader.getGenes()), result.getGeneCalls().stream()
+          .map(GeneCall::getGene)
+          .collect(Collectors.toList()));
+      assertEquals(expected.getGeneCalls().size(), result.getGeneCalls().size());
+      for (int x = 0; x < expected.getGeneCalls().size(); x += 1) {
+        assertEquals(expected.getGeneCalls().get(x).getDiplotypes(), result.getGeneCalls().get(x).getDiplotypes());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+
+  @Test
+  public void testCallAll() throws Exception {
+
+    List<Path> vcfFiles = Lists.newArrayList(
+        PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s1s2.vcf"),
+        PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s2s3.vcf"),
+        PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s4bs17.vcf"),
+        PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s2s11s17het.vcf")
+    );
+
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
+    NamedAlleleMatcher namedAlleleMatcher = new NamedAlleleMatcher(definitionReader);
+
+    List<Result> expected = new ArrayList<>();
+    for (Path vcfFile : vcfFiles) {
+      expected.add(namedAlleleMatcher.call(vcfFile));
+    }
+
+    List<Result> results;
+    try (Stream<Result> stream = namedAlleleMatcher.callAll(vcfFiles, 2)) {
+      results = stream.collect(Collectors.toList());
+    }
+    assertEquals(expected.size(), results.size());
+    for (int x = 0; x < expected.size(); x += 1) {
+      assertEquals(expected.get(x).getMetadata().getInputFilename(), results.get(x).getMetadata().getInputFilename());
+      assertEquals(getDiplotypes(expected.get(x)), getDiplotypes(results.get(x)));
+    }
+
+    // inputs are only pulled as results are consumed
+    AtomicInteger numPulled = new AtomicInteger();
+    AtomicBoolean closed = new AtomicBoolean();
+    Stream<Path> input = vcfFiles.stream()
+        .peek(f -> numPulled.incrementAndGet())
+        .onClose(() -> closed.set(true));
+    try (Stream<Result> stream = namedAlleleMatcher.callAll(input, 1)) {
+      Iterator<Result> it = stream.iterator();
+      assertEquals(expected.get(0).getMetadata().getInputFilename(), it.next().getMetadata().getInputFilename());
+      assertTrue(numPulled.get() < vcfFiles.size());
+    }
+    assertTrue(closed.get());
+
+    // an abandoned stream leaves only daemon threads behind
+    assertTrue(namedAlleleMatcher.callAll(vcfFiles, 2).findFirst().isPresent());
+    List<Thread> workers = Thread.getAllStackTraces().keySet().stream()
+        .filter(t -> t.getName().startsWith("callAll-"))
+        .collect(Collectors.toList());
+    assertFalse(workers.isEmpty());
+    assertTrue(workers.stream().allMatch(Thread::isDaemon));
+
+    Map<String, Result> consumed = new HashMap<>();
+    namedAlleleMatcher.callAll(vcfFiles, 3, r -> consumed.put(r.getMetadata().getInputFilename(), r));
+    assertEquals(expected.size(), consumed.size());
+    for (Result result : expected) {
+      assertEquals(getDiplotypes(result), getDiplotypes(consumed.get(result.getMetadata().getInputFilename())));
+    }
+  }
+
+  @Test
+  public void testCallGenotypes() throws Exception {
+
+    Path vcfFile  = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s4bs17.vcf");
+
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
+    NamedAlleleMatcher namedAlleleMatcher = new NamedAlleleMatcher(definitionReader);
+
+    SampleGenotypes genotypes = new SampleGenotypes("NA12878");
+    SampleGenotypes alleleGenotypes = new SampleGenotypes("NA12878");
+    for (String line : Files.readAllLines(vcfFile)) {
+      if (line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\t");
+      List<String> alts = fields[4].equals(".") ? new ArrayList<>() : Arrays.asList(fields[4].split(","));
+      genotypes.add(fields[0], Integer.parseInt(fields[1]), fields[3], alts, fields[9]);
+
+      List<String> alleles = new ArrayList<>();
+      alleles.add(fields[3]);
+      alleles.addAll(alts);
+      String[] gt = fields[9].split("/");
+      alleleGenotypes.add(fields[0], Integer.parseInt(fields[1]), fields[3], alleles.get(Integer.parseInt(gt[0])),
+          alleles.get(Integer.parseInt(gt[1])), false);
+    }
+
+    Result expected = namedAlleleMatcher.call(vcfFile);
+    Result result = namedAlleleMatcher.call(genotypes);
+    assertNull(result.getMetadata().getInputFilename());
+    assertEquals("NA12878", result.getMetadata().getSampleId());
+    assertEquals(getDiplotypes(expected), getDiplotypes(result));
+    assertTrue(getDiplotypes(result).stream().anyMatch(d -> !d.isEmpty()));
+    assertEquals(getDiplotypes(expected), getDiplotypes(namedAlleleMatcher.call(alleleGenotypes)));
+  }
+
+  private static List<List<String>> getDiplotypes(Result result) {
+    return result.getGeneCalls().stream()
+        .map(gc -> gc.getDiplotypes().stream()
+            .map(DiplotypeMatch::getName)
+            .collect(Collectors.toList()))
+        .collect(Collectors.toList());
+  }
+
+
+  @Test
+  public void testComputeBudget() throws Exception {
+
+    Path vcfFile  = PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/cyp2c19/s4bs17.vcf");
+
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
+
+    Result result = new NamedAlleleMatcher(definitionReader)
+        .computeBudget(new ComputeBudget().maxPermutations(1))
+        .call(vcfFile);
+    assertEquals(definitionReader.getGenes().size(), result.getGeneCalls().size());
+    for (GeneCall call : result.getGeneCalls()) {
+      if (call.getGene().equals("CYP2C19")) {
+        assertEquals(NamedAlleleMatcher.UNCALLED_COMPLEXITY, call.getUncalledReason());
+        assertEquals(0, call.getDiplotypes().size());
+      } else {
+        assertNull(call.getUncalledReason());
+      }
+    }
+  }
 }
@@ -0,0 +1,173 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link PositionFilterInputStream}.
+ *
+ * @author Mark Woon
+ */
+public class PositionFilterInputStreamTest {
+  private static final ImmutableList<VariantLocus> sf_locations = ImmutableList.of(
+      new VariantLocus("chr1", 2, "g.2A>G"),
+      new VariantLocus("chr1", 100000, "g.100000A>G"),
+      new VariantLocus("chr2", 5, "g.5A>G")
+  );
+
+
+  @Test
+  public void testFilter() throws Exception {
+
+    String header = "##fileformat=VCFv4.1\n" +
+        "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE1\n";
+    // long enough to span several buffer fills
+    String padding = Strings.repeat("0/1:", 40000);
+    String input = header +
+        "chr1\t1\t.\tA\tG\t.\tPASS\t.\tGT\t" + padding + "0/1\n" +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t" + padding + "0/1\n" +
+        "chr1\t20\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t100000\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr12\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\tbad\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1";
+    String expected = header +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t" + padding + "0/1\n" +
+        "chr1\t100000\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        // unparseable lines get passed through so the parser can complain about them
+        "chr2\tbad\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1";
+
+    try (InputStream in = new PositionFilterInputStream(
+        new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), sf_locations)) {
+      assertEquals(expected, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+  }
+
+
+  @Test
+  public void testNoPositions() throws Exception {
+
+    String input = "##fileformat=VCFv4.1\n" +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    try (InputStream in = new PositionFilterInputStream(
+        new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), ImmutableList.of())) {
+      assertEquals("##fileformat=VCFv4.1\n", IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+  }
+
+
+  @Test
+  public void testSorted() throws Exception {
+
+    String header = "##fileformat=VCFv4.1\n" +
+        "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE1\n";
+    String input = header +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t100000\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t100000\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t100001\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t6\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        // never read
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    String expected = header +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t100000\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t100000\t.\tA\tC\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    assertEquals(expected, filter(input, true));
+  }
+
+
+  @Test
+  public void testSortedWithContigs() throws Exception {
+
+    String header = "##fileformat=VCFv4.1\n" +
+        "##contig=<ID=chr1,assembly=hg38>\n" +
+        "##contig=<ID=chr2,assembly=hg38>\n" +
+        "##contig=<ID=chr3,assembly=hg38>\n" +
+        "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE1\n";
+    // no chr2 data, which cannot be known from the contig order, so keep reading
+    String input = header +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t100000\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr3\t1\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr3\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    String expected = header +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t100000\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    assertEquals(expected, filter(input, true));
+  }
+
+
+  @Test
+  public void testSortedLexicographically() throws Exception {
+
+    ImmutableList<VariantLocus> locations = ImmutableList.of(
+        new VariantLocus("chr1", 5, "g.5A>G"),
+        new VariantLocus("chr2", 5, "g.5A>G"),
+        new VariantLocus("chr10", 5, "g.5A>G"),
+        new VariantLocus("chr10", 9, "g.9A>G")
+    );
+    String header = "##fileformat=VCFv4.1\n" +
+        "##contig=<ID=chr1,assembly=hg38>\n" +
+        "##contig=<ID=chr2,assembly=hg38>\n" +
+        "##contig=<ID=chr10,assembly=hg38>\n" +
+        "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE1\n";
+    // sorted, but not in contig order
+    String input = header +
+        "chr1\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr10\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr10\t9\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        // never read
+        "chr3\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    String expected = header +
+        "chr1\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr10\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr10\t9\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    try (InputStream in = new PositionFilterInputStream(
+        new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), locations, true)) {
+      assertEquals(expected, IOUtils.toString(in, StandardCharsets.UTF_8));
+    }
+  }
+
+
+  @Test
+  public void testSortedFallback() throws Exception {
+
+    String header = "##fileformat=VCFv4.1\n" +
+        "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tSAMPLE1\n";
+    String input = header +
+        "chr1\t100000\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t8\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    String expected = header +
+        "chr1\t100000\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr1\t2\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n" +
+        "chr2\t5\t.\tA\tG\t.\tPASS\t.\tGT\t0/1\n";
+    assertEquals(expected, filter(input, true));
+    assertEquals(expected, filter(input, false));
+  }
+
+
+  private static String filter(String input, boolean assumeSorted) throws Exception {
+    try (InputStream in = new PositionFilterInputStream(
+        new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), sf_locations, assumeSorted)) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+}
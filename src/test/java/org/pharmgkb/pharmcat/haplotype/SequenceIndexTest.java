@@ -0,0 +1,51 @@
+package org.pharmgkb.pharmcat.haplotype;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.pharmgkb.pharmcat.definition.model.NamedAllele;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link SequenceIndex}.
+ *
+ * @author Mark Woon
+ */
+public class SequenceIndexTest {
+
+  @Test
+  public void testFind() {
+
+    VariantLocus var1 = new VariantLocus("chr1", 1, "g.1T>A");
+    VariantLocus var2 = new VariantLocus("chr1", 2, "g.2T>A");
+    VariantLocus[] variants = new VariantLocus[] { var1, var2 };
+
+    NamedAllele hap1 = new NamedAllele("*1", "*1", new String[] { "T", "T" });
+    NamedAllele hap2 = new NamedAllele("*2", "*2", new String[] { "A", "T" });
+    NamedAllele hap3 = new NamedAllele("*3", "*3", new String[] { "W", null });
+    NamedAllele hap4 = new NamedAllele("*4", "*4", new String[] { "T", "T" });
+    List<NamedAllele> haplotypes = Lists.newArrayList(hap4, hap3, hap2, hap1);
+    haplotypes.forEach(h -> h.initialize(variants));
+
+    SortedMap<String, SampleAllele> sampleAlleleMap = new TreeMap<>();
+    sampleAlleleMap.put("chr1:1", new SampleAllele("chr1", 1, "T", "A", true, Lists.newArrayList("T", "A")));
+    sampleAlleleMap.put("chr1:2", new SampleAllele("chr1", 2, "T", "T", true, Lists.newArrayList("T")));
+    MatchData dataset = new MatchData(sampleAlleleMap, variants, null, null);
+    dataset.marshallHaplotypes(haplotypes);
+
+    SequenceIndex index = dataset.getSequenceIndex();
+    assertSame(haplotypes, index.getHaplotypes());
+    assertEquals(Lists.newArrayList(hap1, hap2, hap3, hap4), index.getSortedHaplotypes());
+
+    BitsetMatcher matcher = new BitsetMatcher(dataset);
+    // 1:T;2:T; - *1, *3 (IUPAC), *4
+    assertArrayEquals(new long[] { 0b1101 }, index.find(matcher, new long[] { 0 }));
+    // 1:A;2:T; - *2, *3 (IUPAC)
+    assertArrayEquals(new long[] { 0b0110 }, index.find(matcher, new long[] { 1 }));
+  }
+}
@@ -1,5 +1,6 @@
 package org.pharmgkb.pharmcat.haplotype;
 
+import java.util.Arrays;
 import java.util.Map;
 import com.google.common.collect.ImmutableMap;
 import org.junit.Test;
@@ -34,4 +35,91 @@ public void testPhasing() throws Exception {
       }
     }
   }
+
+
+  @Test
+  public void testMultipleSamples() throws Exception {
+
+    ImmutableMap<String, VariantLocus> locationsOfInterest = ImmutableMap.of(
+        "chr1:1", new VariantLocus("chr1", 1, "g.1T>C"),
+        "chr1:2", new VariantLocus("chr1", 2, "g.2A>G")
+    );
+    VcfReader reader = new VcfReader(locationsOfInterest,
+        PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/VcfReaderTest-multisample.vcf"));
+    assertEquals(Arrays.asList("SAMPLE1", "SAMPLE2", "SAMPLE3"), reader.getSampleIds());
+
+    Map<String, SampleAllele> alleleMap = reader.getAlleleMap(0);
+    assertEquals(2, alleleMap.size());
+    assertEquals("T", alleleMap.get("chr1:1").getAllele1());
+    assertEquals("C", alleleMap.get("chr1:1").getAllele2());
+    assertFalse(alleleMap.get("chr1:1").isPhased());
+    assertEquals(alleleMap, reader.getAlleleMap());
+
+    alleleMap = reader.getAlleleMap(1);
+    assertEquals(2, alleleMap.size());
+    assertEquals("C", alleleMap.get("chr1:1").getAllele1());
+    assertEquals("G", alleleMap.get("chr1:2").getAllele2());
+    assertTrue(alleleMap.get("chr1:2").isPhased());
+
+    // no call in third sample
+    alleleMap = reader.getAlleleMap(2);
+    assertEquals(1, alleleMap.size());
+    assertFalse(alleleMap.containsKey("chr1:1"));
+    assertTrue(reader.getWarnings(2).containsKey("chr1:1"));
+    assertFalse(reader.getWarnings(0).containsKey("chr1:1"));
+  }
+
+
+  @Test
+  public void testCompressed() throws Exception {
+
+    ImmutableMap<String, VariantLocus> locationsOfInterest = ImmutableMap.of(
+        "chr1:1", new VariantLocus("chr1", 1, "g.1T>C"),
+        "chr1:2", new VariantLocus("chr1", 2, "g.2A>G")
+    );
+    VcfReader reader = new VcfReader(locationsOfInterest,
+        PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/VcfReaderTest-multisample.vcf"));
+
+    for (String file : new String[] { "VcfReaderTest-multisample.vcf.gz", "VcfReaderTest-multisample.vcf.bgz" }) {
+      VcfReader compressedReader = new VcfReader(locationsOfInterest,
+          PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/" + file));
+      assertEquals(reader.getSampleIds(), compressedReader.getSampleIds());
+      for (int x = 0; x < reader.getSampleIds().size(); x += 1) {
+        assertEquals(reader.getAlleleMap(x).keySet(), compressedReader.getAlleleMap(x).keySet());
+        for (String chrPos : reader.getAlleleMap(x).keySet()) {
+          assertEquals(reader.getAlleleMap(x).get(chrPos).toString(),
+              compressedReader.getAlleleMap(x).get(chrPos).toString());
+        }
+      }
+    }
+  }
+
+
+  /**
+   * The test file has invalid lines that are not near any position of interest.  These will cause a parsing error
+   * unless the index is used.
+   */
+  @Test
+  public void testIndexed() throws Exception {
+
+    ImmutableMap<String, VariantLocus> locationsOfInterest = ImmutableMap.of(
+        "chr1:2", new VariantLocus("chr1", 2, "g.2A>G"),
+        "chr1:100000", new VariantLocus("chr1", 100000, "g.100000G>A"),
+        "chr2:80000", new VariantLocus("chr2", 80000, "g.80000C>T")
+    );
+    VcfReader reader = new VcfReader(locationsOfInterest,
+        PathUtils.getPathToResource("org/pharmgkb/pharmcat/haplotype/VcfReaderTest-indexed.vcf.bgz"));
+    assertEquals(Arrays.asList("SAMPLE1", "SAMPLE2"), reader.getSampleIds());
+
+    Map<String, SampleAllele> alleleMap = reader.getAlleleMap(0);
+    assertEquals(3, alleleMap.size());
+    assertEquals("A", alleleMap.get("chr1:2").getAllele1());
+    assertEquals("A", alleleMap.get("chr1:100000").getAllele2());
+    assertEquals("T", alleleMap.get("chr2:80000").getAllele2());
+
+    alleleMap = reader.getAlleleMap(1);
+    assertEquals(3, alleleMap.size());
+    assertEquals("G", alleleMap.get("chr1:2").getAllele2());
+    assertEquals("C", alleleMap.get("chr2:80000").getAllele2());
+  }
 }
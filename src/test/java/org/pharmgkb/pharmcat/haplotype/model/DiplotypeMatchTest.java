@@ -1,5 +1,6 @@
 package org.pharmgkb.pharmcat.haplotype.model;
 
+import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -7,9 +8,13 @@
 import org.junit.Test;
 import org.pharmgkb.pharmcat.definition.model.NamedAllele;
 import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.haplotype.BitsetMatcher;
 import org.pharmgkb.pharmcat.haplotype.MatchData;
+import org.pharmgkb.pharmcat.haplotype.SampleAllele;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 
 /**
@@ -56,4 +61,37 @@ public void testCompareTo() {
     matches = new TreeSet<>(Lists.newArrayList(dm3, dm4));
     assertEquals(dm3, matches.first());
   }
+
+
+  @Test
+  public void testAddSequencePair() {
+
+    VariantLocus var1 = new VariantLocus("chr1", 1, "g.1T>A");
+    VariantLocus var2 = new VariantLocus("chr1", 2, "g.2T>A");
+    VariantLocus[] variants = new VariantLocus[] { var1, var2 };
+
+    NamedAllele hap1 = new NamedAllele("*1", "*1", new String[] { "T", "T" });
+    hap1.initialize(variants);
+    NamedAllele hap2 = new NamedAllele("*2", "*2", new String[] { null, null });
+    hap2.initialize(variants);
+
+    SortedMap<String, SampleAllele> sampleAlleleMap = new TreeMap<>();
+    sampleAlleleMap.put("chr1:1", new SampleAllele("chr1", 1, "T", "A", false, Lists.newArrayList("T", "A")));
+    sampleAlleleMap.put("chr1:2", new SampleAllele("chr1", 2, "T", "T", false, Lists.newArrayList("T")));
+    MatchData dataset = new MatchData(sampleAlleleMap, variants, null, null);
+    BitsetMatcher matcher = new BitsetMatcher(dataset);
+
+    DiplotypeMatch dm = new DiplotypeMatch(new HaplotypeMatch(hap1), new HaplotypeMatch(hap2), dataset);
+    dm.addSequencePair(new EncodedSequence(matcher, new long[] { 0 }), new EncodedSequence(matcher, new long[] { 1 }));
+    // same pair, different instances
+    dm.addSequencePair(new EncodedSequence(matcher, new long[] { 0 }), new EncodedSequence(matcher, new long[] { 1 }));
+    assertEquals(1, dm.getSequences().size());
+    assertArrayEquals(new String[] { "1:T;2:T;", "1:A;2:T;" }, dm.getSequences().get(0));
+    // decoded once
+    assertSame(dm.getSequences(), dm.getSequences());
+
+    dm.addSequencePair(new EncodedSequence(matcher, new long[] { 1 }), new EncodedSequence(matcher, new long[] { 0 }));
+    assertEquals(2, dm.getSequences().size());
+    assertArrayEquals(new String[] { "1:A;2:T;", "1:T;2:T;" }, dm.getSequences().get(1));
+  }
 }
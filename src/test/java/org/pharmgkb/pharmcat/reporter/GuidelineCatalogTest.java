@@ -0,0 +1,80 @@
+package org.pharmgkb.pharmcat.reporter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.pharmgkb.pharmcat.reporter.model.GuidelinePackage;
+import org.pharmgkb.pharmcat.reporter.model.result.GuidelineReport;
+import org.pharmgkb.pharmcat.util.DataManager;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link GuidelineCatalog}.
+ *
+ * @author Mark Woon
+ */
+public class GuidelineCatalogTest {
+
+  @Test
+  public void testLoad() throws Exception {
+
+    GuidelineCatalog catalog = GuidelineCatalog.load(DataManager.DEFAULT_GUIDELINE_DIR);
+    assertTrue(catalog.size() > 0);
+    assertEquals(catalog.size(), catalog.getGuidelines().size());
+    assertTrue(catalog.getGeneSymbols().contains("CYP2C19"));
+    for (GuidelinePackage guideline : catalog.getGuidelines()) {
+      guideline.getGuideline().getRelatedGenes()
+          .forEach(g -> assertTrue(catalog.getGeneSymbols().contains(g.getSymbol())));
+    }
+
+    // every report gets its own state
+    List<GuidelineReport> reports1 = catalog.newReports();
+    List<GuidelineReport> reports2 = catalog.newReports();
+    assertEquals(catalog.size(), reports1.size());
+    for (int x = 0; x < reports1.size(); x += 1) {
+      GuidelineReport report1 = reports1.get(x);
+      GuidelineReport report2 = reports2.get(x);
+      assertNotSame(report1, report2);
+      assertEquals(report1.getId(), report2.getId());
+      assertEquals(new GuidelineReport(catalog.getGuidelines().get(x)).getRelatedDrugs(), report1.getRelatedDrugs());
+      assertSame(report1.getRelatedGeneSymbols(), report1.getRelatedGeneSymbols());
+
+      report1.setReportable(true);
+      report1.addUncalledGene("FOO");
+      assertTrue(report2.getUncalledGenes().isEmpty());
+    }
+  }
+
+
+  @Test
+  public void testDataVersion() throws Exception {
+
+    GuidelineCatalog catalog = GuidelineCatalog.load(DataManager.DEFAULT_GUIDELINE_DIR);
+    assertNotNull(catalog.getDataVersion());
+    assertEquals(catalog.getDataVersion(), GuidelineCatalog.load(DataManager.DEFAULT_GUIDELINE_DIR).getDataVersion());
+    assertNull(new GuidelineCatalog(catalog.getGuidelines()).getDataVersion());
+
+    Path dir = Files.createTempDirectory("GuidelineCatalogTest");
+    List<Path> files;
+    try (Stream<Path> stream = Files.list(DataManager.DEFAULT_GUIDELINE_DIR)) {
+      files = stream
+          .filter(f -> f.getFileName().toString().endsWith(".json"))
+          .collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      Files.copy(file, dir.resolve(file.getFileName()));
+    }
+    assertEquals(catalog.getDataVersion(), GuidelineCatalog.load(dir).getDataVersion());
+
+    Path file = dir.resolve(files.get(0).getFileName());
+    Files.write(file, "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    assertNotEquals(catalog.getDataVersion(), GuidelineCatalog.load(dir).getDataVersion());
+  }
+}
@@ -0,0 +1,40 @@
+package org.pharmgkb.pharmcat.reporter;
+
+import org.junit.Test;
+import org.pharmgkb.pharmcat.definition.model.DefinitionFile;
+import org.pharmgkb.pharmcat.definition.model.VariantLocus;
+import org.pharmgkb.pharmcat.haplotype.DefinitionReader;
+import org.pharmgkb.pharmcat.reporter.model.VariantReport;
+import org.pharmgkb.pharmcat.util.DataManager;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link VariantReportFactory}.
+ *
+ * @author Mark Woon
+ */
+public class VariantReportFactoryTest {
+
+  @Test
+  public void testFromDefinitionReader() throws Exception {
+
+    DefinitionReader definitionReader = new DefinitionReader();
+    definitionReader.read(DataManager.DEFAULT_DEFINITION_DIR);
+
+    for (String gene : definitionReader.getGenes()) {
+      DefinitionFile definitionFile = definitionReader.getDefinitionFile(gene);
+      VariantReportFactory fromFile = new VariantReportFactory(gene, definitionFile.getChromosome());
+      VariantReportFactory fromReader = new VariantReportFactory(gene, definitionFile.getChromosome(), definitionFile);
+
+      for (VariantLocus locus : definitionFile.getVariants()) {
+        VariantReport expected = fromFile.make(locus);
+        VariantReport actual = fromReader.make(locus);
+        assertEquals(expected.getChr(), actual.getChr());
+        assertEquals(expected.getWildtypeAllele(), actual.getWildtypeAllele());
+        assertEquals(expected.getAlleles(), actual.getAlleles());
+      }
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package org.pharmgkb.pharmcat.util;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.pharmgkb.common.util.PathUtils;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link BgzfInputStream}.
+ *
+ * @author Mark Woon
+ */
+public class BgzfInputStreamTest {
+  private static final String sf_testDir = "org/pharmgkb/pharmcat/haplotype/";
+
+
+  @Test
+  public void testIsBgzf() throws Exception {
+
+    assertTrue(BgzfInputStream.isBgzf(PathUtils.getPathToResource(sf_testDir + "VcfReaderTest-multisample.vcf.bgz")));
+    assertFalse(BgzfInputStream.isBgzf(PathUtils.getPathToResource(sf_testDir + "VcfReaderTest-multisample.vcf.gz")));
+    assertFalse(BgzfInputStream.isBgzf(PathUtils.getPathToResource(sf_testDir + "VcfReaderTest-multisample.vcf")));
+  }
+
+
+  @Test
+  public void testRead() throws Exception {
+
+    byte[] expected = Files.readAllBytes(PathUtils.getPathToResource(sf_testDir + "VcfReaderTest-multisample.vcf"));
+    Path bgzfFile = PathUtils.getPathToResource(sf_testDir + "VcfReaderTest-multisample.vcf.bgz");
+
+    for (int numThreads : new int[] { 1, 4 }) {
+      try (InputStream in = new BgzfInputStream(Files.newByteChannel(bgzfFile), numThreads)) {
+        assertArrayEquals(expected, IOUtils.toByteArray(in));
+      }
+    }
+  }
+}
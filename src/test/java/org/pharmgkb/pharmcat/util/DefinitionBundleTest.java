@@ -0,0 +1,198 @@
+package org.pharmgkb.pharmcat.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.pharmgkb.pharmcat.definition.PhenotypeMap;
+import org.pharmgkb.pharmcat.definition.model.DefinitionExemption;
+import org.pharmgkb.pharmcat.definition.model.DiplotypePhenotype;
+import org.pharmgkb.pharmcat.definition.model.GenePhenotype;
+import org.pharmgkb.pharmcat.haplotype.DefinitionReader;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link DefinitionBundle}.
+ *
+ * @author Mark Woon
+ */
+public class DefinitionBundleTest {
+
+  @Test
+  public void testBundle() throws Exception {
+
+    Path definitionDir = Files.createTempDirectory("DefinitionBundleTest");
+    try {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(DataManager.DEFAULT_DEFINITION_DIR, "*.json")) {
+        for (Path file : files) {
+          Files.copy(file, definitionDir.resolve(file.getFileName()));
+        }
+      }
+      Path bundleFile = definitionDir.resolve(DefinitionBundle.FILE_NAME);
+      DefinitionBundle.write(definitionDir, bundleFile);
+
+      DefinitionBundle bundle = DefinitionBundle.forDirectory(definitionDir);
+      assertNotNull(bundle);
+      assertTrue(bundle.contains("CYP2C19_translation.json"));
+      assertTrue(bundle.contains(DataManager.EXEMPTIONS_JSON_FILE_NAME));
+      assertTrue(bundle.contains(DefinitionBundle.PHENOTYPES_JSON_FILE_NAME));
+      assertTrue(bundle.contains(DefinitionBundle.INCIDENTAL_JSON_FILE_NAME));
+
+      DefinitionReader expected = new DefinitionReader();
+      expected.read(DataManager.DEFAULT_DEFINITION_DIR);
+      DefinitionReader fromBundle = new DefinitionReader();
+      fromBundle.read(bundle);
+      assertEquals(expected.getGenes(), fromBundle.getGenes());
+      for (String gene : expected.getGenes()) {
+        assertEquals(expected.getDefinitionFile(gene), fromBundle.getDefinitionFile(gene));
+        DefinitionExemption exemption = expected.getExemption(gene);
+        if (exemption == null) {
+          assertNull(fromBundle.getExemption(gene));
+        } else {
+          assertNotNull(fromBundle.getExemption(gene));
+          assertEquals(exemption.getIgnoredAlleles(), fromBundle.getExemption(gene).getIgnoredAlleles());
+          assertEquals(exemption.isAllHits(), fromBundle.getExemption(gene).isAllHits());
+          assertEquals(exemption.isAssumeReference(), fromBundle.getExemption(gene).isAssumeReference());
+          assertEquals(exemption.getExtraPositions(), fromBundle.getExemption(gene).getExtraPositions());
+        }
+      }
+
+      // packaged data
+      List<GenePhenotype> genePhenotypes = Arrays.asList(new Gson().fromJson(
+          readPackaged(DefinitionBundle.PHENOTYPES_JSON_FILE_NAME), GenePhenotype[].class));
+      List<GenePhenotype> bundledPhenotypes = DefinitionBundleCodec.readGenePhenotypes(
+          bundle.getData(DefinitionBundle.PHENOTYPES_JSON_FILE_NAME));
+      assertEquals(genePhenotypes.size(), bundledPhenotypes.size());
+      for (int x = 0; x < genePhenotypes.size(); x += 1) {
+        GenePhenotype expectedPhenotype = genePhenotypes.get(x);
+        GenePhenotype bundledPhenotype = bundledPhenotypes.get(x);
+        assertEquals(expectedPhenotype.getGene(), bundledPhenotype.getGene());
+        assertEquals(expectedPhenotype.getHaplotypes(), bundledPhenotype.getHaplotypes());
+        assertEquals(expectedPhenotype.getDiplotypes().size(), bundledPhenotype.getDiplotypes().size());
+        for (int y = 0; y < expectedPhenotype.getDiplotypes().size(); y += 1) {
+          DiplotypePhenotype expectedDiplotype = expectedPhenotype.getDiplotypes().get(y);
+          DiplotypePhenotype bundledDiplotype = bundledPhenotype.getDiplotypes().get(y);
+          assertEquals(expectedDiplotype.getPhenotype(), bundledDiplotype.getPhenotype());
+          assertEquals(expectedDiplotype.getDiplotype(), bundledDiplotype.getDiplotype());
+        }
+      }
+      Map<String, List<String>> incidentalAlleles = new Gson().fromJson(
+          readPackaged(DefinitionBundle.INCIDENTAL_JSON_FILE_NAME),
+          new TypeToken<Map<String, List<String>>>(){}.getType());
+      assertEquals(incidentalAlleles, DefinitionBundleCodec.readIncidentalAlleles(
+          bundle.getData(DefinitionBundle.INCIDENTAL_JSON_FILE_NAME)));
+      assertEquals(incidentalAlleles, DefinitionBundle.readPackagedIncidentalAlleles());
+
+      // touching a file doesn't matter, only its content
+      Path defFile = definitionDir.resolve("CYP2C19_translation.json");
+      Files.setLastModifiedTime(defFile,
+          FileTime.fromMillis(Files.getLastModifiedTime(bundleFile).toMillis() + 60000));
+      assertNotNull(DefinitionBundle.forDirectory(definitionDir));
+
+      // out of date
+      Files.write(defFile, "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+      assertNull(DefinitionBundle.forDirectory(definitionDir));
+      DefinitionReader fromJson = new DefinitionReader();
+      fromJson.read(definitionDir);
+      assertEquals(expected.getGenes(), fromJson.getGenes());
+
+      // missing a file
+      DefinitionBundle.write(definitionDir, bundleFile);
+      assertNotNull(DefinitionBundle.forDirectory(definitionDir));
+      Files.delete(definitionDir.resolve("TPMT_translation.json"));
+      assertNull(DefinitionBundle.forDirectory(definitionDir));
+
+      // corrupt
+      try (RandomAccessFile raf = new RandomAccessFile(bundleFile.toFile(), "rw")) {
+        raf.seek(raf.length() - 2);
+        raf.write('!');
+      }
+      try {
+        DefinitionBundle.read(bundleFile);
+        fail("Should have failed checksum");
+      } catch (IOException ex) {
+        assertTrue(ex.getMessage().contains("checksum"));
+      }
+
+    } finally {
+      FileUtils.deleteQuietly(definitionDir.toFile());
+    }
+  }
+
+
+  /**
+   * Bundles inside a jar (i.e. on a zip file system) can't be memory-mapped, but must still be usable.
+   */
+  @Test
+  public void testJarFileSystem() throws Exception {
+
+    Path tmpDir = Files.createTempDirectory("DefinitionBundleTest");
+    try {
+      Path definitionDir = Files.createDirectory(tmpDir.resolve("alleles"));
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(DataManager.DEFAULT_DEFINITION_DIR, "*.json")) {
+        for (Path file : files) {
+          Files.copy(file, definitionDir.resolve(file.getFileName()));
+        }
+      }
+      DefinitionBundle.write(definitionDir, definitionDir.resolve(DefinitionBundle.FILE_NAME));
+
+      URI jarUri = URI.create("jar:" + tmpDir.resolve("test.jar").toUri());
+      try (FileSystem jarFs = FileSystems.newFileSystem(jarUri, Collections.singletonMap("create", "true"))) {
+        Path jarDir = Files.createDirectory(jarFs.getPath("/alleles"));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(definitionDir)) {
+          for (Path file : files) {
+            Files.copy(file, jarDir.resolve(file.getFileName().toString()));
+          }
+        }
+
+        DefinitionBundle bundle = DefinitionBundle.forDirectory(jarDir);
+        assertNotNull(bundle);
+        assertTrue(bundle.contains("CYP2C19_translation.json"));
+
+        DefinitionReader expected = new DefinitionReader();
+        expected.read(DataManager.DEFAULT_DEFINITION_DIR);
+        DefinitionReader fromJar = new DefinitionReader();
+        fromJar.read(jarDir);
+        assertEquals(expected.getGenes(), fromJar.getGenes());
+        assertEquals(expected.getDataVersion(), fromJar.getDataVersion());
+
+        // a bad bundle falls back to the JSON files
+        Path bundleFile = jarDir.resolve(DefinitionBundle.FILE_NAME);
+        Files.write(bundleFile, "not a bundle".getBytes(StandardCharsets.UTF_8));
+        assertNull(DefinitionBundle.forDirectory(jarDir));
+        DefinitionReader fromJson = new DefinitionReader();
+        fromJson.read(jarDir);
+        assertEquals(expected.getDataVersion(), fromJson.getDataVersion());
+      }
+
+    } finally {
+      FileUtils.deleteQuietly(tmpDir.toFile());
+    }
+  }
+
+
+  private static String readPackaged(String name) throws IOException {
+    try (InputStream in = PhenotypeMap.class.getResourceAsStream(name)) {
+      return IOUtils.toString(in, StandardCharsets.UTF_8);
+    }
+  }
+}
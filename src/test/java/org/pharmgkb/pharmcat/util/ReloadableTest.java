@@ -0,0 +1,57 @@
+package org.pharmgkb.pharmcat.util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * JUnit test for {@link Reloadable}.
+ *
+ * @author Mark Woon
+ */
+public class ReloadableTest {
+
+  @Test
+  public void testReload() throws Exception {
+
+    Path dir = Files.createTempDirectory("ReloadableTest");
+    try {
+      Path file = dir.resolve("data.txt");
+      Files.write(file, "1".getBytes());
+
+      try (Reloadable<String> reloadable = new Reloadable<>("test", "0", current -> {
+        String value = new String(Files.readAllBytes(file)).trim();
+        if (value.equals("bad")) {
+          throw new IllegalStateException("Bad data");
+        }
+        return value;
+      })) {
+        assertEquals("0", reloadable.get());
+
+        assertTrue(reloadable.reload());
+        assertEquals("1", reloadable.get());
+        assertEquals(1, reloadable.getReloadCount());
+
+        // keeps current value if reload fails
+        Files.write(file, "bad".getBytes());
+        assertFalse(reloadable.reload());
+        assertEquals("1", reloadable.get());
+        assertEquals(1, reloadable.getReloadCount());
+
+        reloadable.watch(dir);
+        Files.write(file, "2".getBytes());
+        long timeout = System.currentTimeMillis() + 30000;
+        while (!reloadable.get().equals("2") && System.currentTimeMillis() < timeout) {
+          Thread.sleep(100);
+        }
+        assertEquals("2", reloadable.get());
+      }
+    } finally {
+      FileUtils.deleteQuietly(dir.toFile());
+    }
+  }
+}